@@ -11,7 +11,14 @@ var circleLayer = new OpenLayers.Layer.Vector("Circles", {
 	}),
 	rendererOptions: {zIndexing: true}
 });
-var heatmap = new Heatmap.Layer("Heatmap", {visibility: false});
+// Heatmap als PNG-Kacheln vom Server (/rest/tiles/{z}/{x}/{y}.png), die URL wird in loadHeatmap gesetzt
+var heatmap = new OpenLayers.Layer.XYZ("Heatmap", null, {
+	isBaseLayer: false,
+	visibility: false,
+	sphericalMercator: true
+});
+// Layer fuer die aggregierten Kacheln (/rest/tiles), zeigt die Eventanzahl pro Rasterzelle
+var tileLayer = new OpenLayers.Layer.Vector("Event Tiles", {visibility: false});
 var box;
 var transform;
 var map;
@@ -22,6 +29,14 @@ var filter = {
 };
 // Variablen fuer die Kreisgroessen
 var size = 1, maxRadius, minRadius;
+// ID dieses Frontends, der Server bricht damit die vorherige Abfrage ab, sobald eine neue kommt
+var clientId = Math.random().toString(36).substr(2) + Date.now().toString(36);
+// Laufende Anfragen, werden bei einer neuen Anfrage abgebrochen
+var eventRequest, detailRequest;
+// Datenstrom mit neuen Events (Server-Sent Events)
+var liveSource;
+// Medientyp der spaltenweisen Antwort (ColumnarEvents)
+var columnarType = "application/vnd.osm.events.columnar+json";
 
 function endDrag(bbox) {
 	calcMinMaxRadius(bbox);
@@ -41,59 +56,208 @@ function endDrag(bbox) {
 function communicate() {
 	doUnselect();
 	OpenLayers.Util.getElement("results").innerHTML = "Searching...";
-	$.ajax({
+	loadHeatmap();
+	// Zoomstufe fuer die serverseitige Aggregation (/grid)
+	filter.zoom = map.getZoom();
+	if (eventRequest) {
+		eventRequest.abort();
+	}
+	eventRequest = $.ajax({
 		method: "POST",
-		url: rootURL,
+		// Uebersicht: nur Koordinaten und Anzahl, die Events eines Kreises werden erst bei der Auswahl geladen
+		url: rootURL + "/summary",
 		contentType: "application/json",
+		headers: {"X-Client-Id": clientId},
 		data: JSON.stringify(filter),
 		dataType: "json",
 		error: function(jqXHR, textStatus, errorThrown) {
-			OpenLayers.Util.getElement("results").innerHTML = textStatus;
+			// abgebrochene Anfragen wurden durch eine neuere ersetzt
+			if (textStatus != "abort") {
+				OpenLayers.Util.getElement("results").innerHTML = textStatus;
+			}
 		},
 		success: function(data) {
-			OpenLayers.Util.getElement("results").innerHTML = data.events.length > 0 ? data.events.length+" results" : "No results";
-			var points = {};
-			// leeren der Heatmap
-			heatmap.removeAllSources();
-			data.events.forEach(function(event) {
-				// Jedes Event wird einzeln der Heatmap hinzugefuegt
-				heatmap.addSource(new Heatmap.Source(new OpenLayers.LonLat(event.lon, event.lat).transform(
-						new OpenLayers.Projection("EPSG:4326"), // transform from WGS 1984
-						new OpenLayers.Projection("EPSG:900913") // to Spherical Mercator
-				)));
-				// Abspeichern der Events pro Koordinate fuer die Eventkreise
-				var key = event.lat+"&"+event.lon;
-				if (points.hasOwnProperty(key)) {
-					points[key].count += 1;
-					points[key].events.push(event);
-				} else {
-					points[key] = {count:1, lat:event.lat, lon:event.lon, events:[event]};
-				}
-			});
-			heatmap.redraw();
+			OpenLayers.Util.getElement("results").innerHTML =
+				data.count > 0 ? data.count+(data.truncated ? "+" : "")+" results" : "No results";
 			circleLayer.removeAllFeatures();
-			// Eventskreise berechnen und zeichnen
-			$.each(points, function(k, v) {				
-				var lonlat = new OpenLayers.LonLat(v.lon, v.lat).transform(
-						new OpenLayers.Projection("EPSG:4326"), // transform from WGS 1984
-						new OpenLayers.Projection("EPSG:900913") // to Spherical Mercator
-				);
+			// Eventskreise berechnen und zeichnen, ein Kreis pro Koordinate
+			for (var i = 0; i < data.lat.length; i++) {
+				circleLayer.addFeatures(createCircle(data.lat[i], data.lon[i], data.counts[i], data.count));
+			}
+		}
+	});
+	// neue Events zu diesen Filtern werden ueber den Datenstrom aus /live nachgeliefert
+	$.ajax({
+		method: "POST",
+		url: rootURL + "/live",
+		contentType: "application/json",
+		headers: {"X-Client-Id": clientId},
+		data: JSON.stringify(filter),
+		success: openLiveEvents
+	});
+}
+
+function createCircle(lat, lon, count, results) {
+	var lonlat = new OpenLayers.LonLat(lon, lat).transform(
+			new OpenLayers.Projection("EPSG:4326"), // transform from WGS 1984
+			new OpenLayers.Projection("EPSG:900913") // to Spherical Mercator
+	);
+
+	var radius = Math.max(minRadius, Math.min(maxRadius, count*1000*size));
+	var circle = OpenLayers.Geometry.Polygon.createRegularPolygon
+	(
+			new OpenLayers.Geometry.Point(lonlat.lon, lonlat.lat),
+			radius,
+			40,
+			0
+	);
+	// Abspeichern der Koordinate fuer das Laden der Events bei Auswahl
+	// count und results fuer die Sortierung nach Z-Index
+	return new OpenLayers.Feature.Vector(circle, {lat:lat, lon:lon, count:count, results:results});
+}
+
+// Neues Event aus dem Datenstrom: Kreis an derselben Koordinate vergroessern oder neu anlegen
+function addLiveEvent(event) {
+	var circles = circleLayer.features;
+	var results = circles.length > 0 ? circles[0].attributes.results + 1 : 1;
+	var count = 1;
+	for (var i = 0; i < circles.length; i++) {
+		var attributes = circles[i].attributes;
+		attributes.results = results;
+		if (attributes.lat == event.lat && attributes.lon == event.lon) {
+			count = attributes.count + 1;
+			circleLayer.removeFeatures([circles[i]]);
+			i--;
+		}
+	}
+	circleLayer.addFeatures(createCircle(event.lat, event.lon, count, results));
+	OpenLayers.Util.getElement("results").innerHTML = results+" results";
+}
+
+// Datenstrom mit neuen Events zu den zuletzt angemeldeten Filtern, wird nach der ersten
+// Anmeldung geoeffnet und danach vom Browser selbst wieder verbunden
+function openLiveEvents() {
+	if (liveSource || !window.EventSource) {
+		return;
+	}
+	var source = liveSource = new EventSource(rootURL + "/live?" + $.param({clientId: clientId}));
+	source.onmessage = function(message) {
+		addLiveEvent(JSON.parse(message.data));
+	};
+	// der Server hat Events verworfen, daher neu abfragen
+	source.addEventListener("overflow", function() {
+		if (filter.bounds) {
+			communicate();
+		}
+	});
+}
+
+// Laden der Events eines Eventkreises mit den aktuellen Filtern
+function loadDetail(feature) {
+	// die BBox hat keine Events
+	if (feature.layer != circleLayer) {
+		return;
+	}
+	if (detailRequest) {
+		detailRequest.abort();
+	}
+	OpenLayers.Util.getElement("eventInfo").innerHTML = "<p>Loading...</p>";
+	detailRequest = $.ajax({
+		method: "POST",
+		url: rootURL + "/detail?" + $.param({lat: feature.attributes.lat, lon: feature.attributes.lon}),
+		contentType: "application/json",
+		// spaltenweises Format mit Woerterbuechern, siehe decodeEvent
+		headers: {"X-Client-Id": clientId, "Accept": columnarType},
+		data: JSON.stringify(filter),
+		dataType: "json",
+		success: function(data) {
+			var events = [];
+			for (var i = 0; i < data.count; i++) {
+				events.push(decodeEvent(data, i));
+			}
+			showEvents(events);
+		}
+	});
+}
+
+// Event i aus der spaltenweisen Antwort (application/vnd.osm.events.columnar+json),
+// die Texte stehen in Woerterbuechern, -1 steht fuer NULL
+function decodeEvent(data, i) {
+	var event = {lat: data.lat[i], lon: data.lon[i]};
+	var lookup = function(key, dictionary, index) {
+		if (index >= 0) {
+			event[key] = dictionary[index];
+		}
+	};
+	lookup("eventCode", data.eventCodes, data.eventCode[i]);
+	lookup("sqlDate", data.dates, data.sqlDate[i]);
+	lookup("actor1Name", data.actorNames, data.actor1Name[i]);
+	lookup("actor2Name", data.actorNames, data.actor2Name[i]);
+	lookup("geoName", data.geoNames, data.geoName[i]);
+	lookup("sourceURL", data.sourceURLs, data.sourceURL[i]);
+	return event;
+}
+
+// Setzen der Kachel-URL der Heatmap mit den aktuellen Filtern, die Bilder rechnet der Server,
+// unveraenderte Kacheln liefert der Browser-Cache
+function loadHeatmap() {
+	if (!heatmap.getVisibility()) {
+		return;
+	}
+	var url = rootURL.replace("/jersey", "/tiles") + "/${z}/${x}/${y}.png?" + tileParams();
+	if (heatmap.url != url) {
+		heatmap.setUrl(url);
+		heatmap.redraw();
+	}
+}
 
-				var radius = Math.max(minRadius, Math.min(maxRadius, v.count*1000*size));			
-				var circle = OpenLayers.Geometry.Polygon.createRegularPolygon
-				(
-						new OpenLayers.Geometry.Point(lonlat.lon, lonlat.lat),
-						radius,
-						40,
-						0
-				);
-				// Abspeichern der enthaltenen Events fuer jeden Kreis fuer die Anzeige bei Auswahl
-				// count und results fuer die Sortierung nach Z-Index
-				var featurecircle = new OpenLayers.Feature.Vector(circle, {events:v.events, count:v.count, results:data.events.length});
-				circleLayer.addFeatures(featurecircle);
-			});
+// Filter als Query-Parameter fuer die GET-Anfragen an /rest/tiles
+function tileParams() {
+	return $.param({
+		from: $.datepicker.formatDate("yy-mm-dd", new Date(filter.dateFrom)),
+		to: $.datepicker.formatDate("yy-mm-dd", new Date(filter.dateTo)),
+		codes: (filter.eventIDs || []).join(","),
+		keywords: (filter.keywords || []).join(",")
+	});
+}
+
+// Laden der sichtbaren Kacheln ueber GET, bereits geladene Kacheln liefert der Browser-Cache
+function loadTiles() {
+	tileLayer.removeAllFeatures();
+	if (!tileLayer.getVisibility()) {
+		return;
+	}
+	var z = map.getZoom();
+	var n = Math.pow(2, z);
+	var extent = map.getExtent().transform("EPSG:900913", "EPSG:4326");
+	var x0 = Math.max(0, Math.floor((extent.left + 180) / 360 * n));
+	var x1 = Math.min(n - 1, Math.floor((extent.right + 180) / 360 * n));
+	var y0 = Math.max(0, tileRow(extent.top, n));
+	var y1 = Math.min(n - 1, tileRow(extent.bottom, n));
+	var params = tileParams();
+	for (var x = x0; x <= x1; x++) {
+		for (var y = y0; y <= y1; y++) {
+			$.getJSON(rootURL.replace("/jersey", "/tiles") + "/" + z + "/" + x + "/" + y + "?" + params, drawTile);
 		}
-	})
+	}
+}
+
+function tileRow(lat, n) {
+	var rad = lat * Math.PI / 180;
+	return Math.floor((1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * n);
+}
+
+function drawTile(grid) {
+	var from = new OpenLayers.Projection("EPSG:4326"); // WGS 1984
+	var to = new OpenLayers.Projection("EPSG:900913"); // Spherical Mercator
+	grid.cells.forEach(function(cell) {
+		var point = new OpenLayers.Geometry.Point(cell.lon, cell.lat).transform(from, to);
+		tileLayer.addFeatures(new OpenLayers.Feature.Vector(point, {count: cell.count}, {
+			pointRadius: Math.min(20, 3 + Math.log(cell.count) * 2),
+			fillColor: "#ff6600", fillOpacity: 0.6, strokeWidth: 0,
+			label: "" + cell.count, fontSize: "10px"
+		}));
+	});
 }
 
 // Berechnung der minimalen und maximalen Groesse der Kreise in Abhaengigkeit der Groesse der BBox
@@ -122,6 +286,11 @@ function init() {
 	map.addLayer(bboxLayer);
 	map.addLayer(circleLayer);
 	map.addLayer(heatmap);
+	// Heatmap-Kacheln erst laden, wenn die Heatmap eingeblendet wird
+	heatmap.events.register("visibilitychanged", heatmap, loadHeatmap);
+	map.addLayer(tileLayer);
+	tileLayer.events.register("visibilitychanged", tileLayer, loadTiles);
+	map.events.register("moveend", map, loadTiles);
 
 	// Control fuer das Zeichnen der BBox
 	box = new OpenLayers.Control.DrawFeature(bboxLayer, OpenLayers.Handler.RegularPolygon, {
@@ -152,35 +321,8 @@ function init() {
 	
 	// Control fuer die Auswahl eines Eventkreises
 	var select = new OpenLayers.Control.SelectFeature([bboxLayer, circleLayer], {
-		// Erstellen einer Tabelle zur Darstellung der enthaltenen Events
-		onSelect: function(feature) {
-			var events = feature.attributes.events;
-			var table = "<table><tr>";
-			for (var key in events[0]) {
-				table += "<th>"+key+"</th>";
-			}
-			table += "</tr>";
-			$.each(events, function(k, v) {
-				table += "<tr>";
-				for (var key in v) {
-					switch(key) {
-					case "sqlDate":
-						table += "<td>"+new Date(v[key]).toDateString()+"</td>";
-						break;
-					case "sourceURL":
-						table += "<td><a href="+v[key]+" target='_blank'>Source</a></td>";
-						break;
-					default:
-						table += "<td>"+v[key]+"</td>";
-					}					
-				}
-				table += "</tr>";
-			});
-			table += "</table>"
-			OpenLayers.Util.getElement("eventInfo").innerHTML = table;
-			// Accordion ausklappen
-			$("#accordion").accordion("option", "active", 0);
-		}, 
+		// Laden und Anzeigen der Events des ausgewaehlten Kreises
+		onSelect: loadDetail,
 		onUnselect: doUnselect
 	});
 	map.addControl(select);
@@ -252,6 +394,35 @@ function init() {
 	map.setCenter(lonlat, zoom);
 }
 
+// Erstellen einer Tabelle zur Darstellung der Events eines Kreises
+function showEvents(events) {
+	var table = "<table><tr>";
+	for (var key in events[0]) {
+		table += "<th>"+key+"</th>";
+	}
+	table += "</tr>";
+	$.each(events, function(k, v) {
+		table += "<tr>";
+		for (var key in v) {
+			switch(key) {
+			case "sqlDate":
+				table += "<td>"+new Date(v[key]).toDateString()+"</td>";
+				break;
+			case "sourceURL":
+				table += "<td><a href="+v[key]+" target='_blank'>Source</a></td>";
+				break;
+			default:
+				table += "<td>"+v[key]+"</td>";
+			}
+		}
+		table += "</tr>";
+	});
+	table += "</table>"
+	OpenLayers.Util.getElement("eventInfo").innerHTML = table;
+	// Accordion ausklappen
+	$("#accordion").accordion("option", "active", 0);
+}
+
 // Eventdaten leeren und Accordion einklappen
 function doUnselect() {
 	OpenLayers.Util.getElement("eventInfo").innerHTML = "<p>Nothing selected</p>"
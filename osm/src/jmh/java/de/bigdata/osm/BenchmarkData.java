@@ -0,0 +1,176 @@
+package de.bigdata.osm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Erzeugt GDELT-Features und Anfragen mit realistischen Werten fuer die Benchmarks.
+ * Die Daten werden mit festem Seed erzeugt, damit die Laeufe vergleichbar sind.
+ *
+ */
+final class BenchmarkData {
+
+	private static final long SEED = 42;
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	// 2016-01-01
+	private static final long START = 1451606400000L;
+
+	private static final String[] EVENT_CODES = {"010", "020", "036", "042", "043", "051", "0311", "112", "141", "1823", "190", "193"};
+	private static final String[] ACTORS = {"UNITED STATES", "POLICE", "GOVERNMENT", "UNITED NATIONS", "PROTESTER",
+		"EUROPEAN UNION", "GERMANY", "MILITARY", "PRESIDENT", "REBEL", "CHINA", "RUSSIA"};
+	private static final String[] PLACES = {"Berlin, Berlin, Germany", "Paris, Ile-de-France, France",
+		"Washington, District of Columbia, United States", "Kiev, Kyyiv, Misto, Ukraine", "Cairo, Al Qahirah, Egypt"};
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Anfrage ueber Europa fuer einen Monat
+	 * @param eventIDs EventCodes der Anfrage
+	 * @param keywords Keywords der Anfrage
+	 * @return {@link Events} wie vom Frontend geschickt
+	 */
+	static Events request(List<String> eventIDs, List<String> keywords) {
+		Bounds bounds = new Bounds();
+		bounds.setLeft(-10.5);
+		bounds.setBottom(35.2);
+		bounds.setRight(31.7);
+		bounds.setTop(61.0);
+		Events events = new Events();
+		events.setBounds(bounds);
+		events.setDateFrom(new Date(START));
+		events.setDateTo(new Date(START + 30 * DAY_MILLIS));
+		events.setEventIDs(new ArrayList<String>(eventIDs));
+		events.setKeywords(new ArrayList<String>(keywords));
+		events.setZoom(5);
+		return events;
+	}
+
+	static List<String> list(String... values) {
+		return Arrays.asList(values);
+	}
+
+	/**
+	 * Features mit allen Attributen aus {@link GdeltFeature#buildGdeltFeatureType(String)}
+	 * @param count Anzahl der Features
+	 * @return Features im Speicher
+	 * @throws SchemaException
+	 */
+	static List<SimpleFeature> features(int count) throws SchemaException {
+		Generator generator = new Generator();
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>(count);
+		for (int i = 0; i < count; i++) {
+			features.add(generator.next());
+		}
+		return features;
+	}
+
+	/**
+	 * Events wie in der Antwort an das Frontend. Die Features werden einzeln erzeugt und
+	 * nicht gesammelt, damit auch 1 Mio. Events in den Heap passen.
+	 * @param count Anzahl der Events
+	 * @return aus denselben Features wie {@link #features(int)} erzeugte Events
+	 * @throws SchemaException
+	 */
+	static List<Event> events(int count) throws SchemaException {
+		Generator generator = new Generator();
+		List<Event> events = new ArrayList<Event>(count);
+		for (int i = 0; i < count; i++) {
+			events.add(Event.fromFeature(generator.next()));
+		}
+		return events;
+	}
+
+	/**
+	 * GDELT-Export mit denselben Features wie {@link #features(int)} fuer {@link GdeltIngest}
+	 * @param count Anzahl der Zeilen
+	 * @return temporaere Datei, muss vom Aufrufer geloescht werden
+	 * @throws SchemaException
+	 * @throws IOException
+	 */
+	static File tsv(int count) throws SchemaException, IOException {
+		Generator generator = new Generator();
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
+		File file = Files.createTempFile("gdelt", ".tsv").toFile();
+		Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8);
+		try {
+			for (int i = 0; i < count; i++) {
+				SimpleFeature feature = generator.next();
+				StringBuilder line = new StringBuilder();
+				String separator = "";
+				for (GdeltFeature.Attributes attribute : GdeltFeature.Attributes.values()) {
+					// geom ist keine Spalte, der Ingest bildet sie aus ActionGeo_Lat und ActionGeo_Long
+					if (attribute == GdeltFeature.Attributes.geom) {
+						continue;
+					}
+					line.append(separator);
+					separator = "\t";
+					Object value = feature.getAttribute(attribute.getName());
+					if (value instanceof Date) {
+						line.append(dateFormat.format((Date) value));
+					} else if (value != null) {
+						line.append(value);
+					}
+				}
+				writer.write(line.append('\n').toString());
+			}
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private static class Generator {
+
+		private final SimpleFeatureBuilder builder;
+		private final GeometryFactory geometryFactory = new GeometryFactory();
+		private final Random random = new Random(SEED);
+		private int id = 0;
+
+		Generator() throws SchemaException {
+			SimpleFeatureType type = GdeltFeature.buildGdeltFeatureType("event");
+			builder = new SimpleFeatureBuilder(type);
+		}
+
+		SimpleFeature next() {
+			int i = id++;
+			String eventCode = EVENT_CODES[random.nextInt(EVENT_CODES.length)];
+			double lon = -180 + random.nextDouble() * 360;
+			double lat = -90 + random.nextDouble() * 180;
+			builder.set(GdeltFeature.Attributes.GLOBALEVENTID.getName(), 500000000 + i);
+			builder.set(GdeltFeature.Attributes.SQLDATE.getName(), new Date(START + random.nextInt(366) * DAY_MILLIS));
+			builder.set(GdeltFeature.Attributes.Actor1Name.getName(), ACTORS[random.nextInt(ACTORS.length)]);
+			// etwa ein Drittel der Events hat keinen zweiten Akteur
+			builder.set(GdeltFeature.Attributes.Actor2Name.getName(), random.nextInt(3) == 0 ? null : ACTORS[random.nextInt(ACTORS.length)]);
+			builder.set(GdeltFeature.Attributes.EventCode.getName(), eventCode);
+			builder.set(GdeltFeature.Attributes.EventBaseCode.getName(), eventCode.substring(0, 3));
+			builder.set(GdeltFeature.Attributes.EventRootCode.getName(), eventCode.substring(0, 2));
+			builder.set(GdeltFeature.Attributes.ActionGeo_FullName.getName(), PLACES[random.nextInt(PLACES.length)]);
+			builder.set(GdeltFeature.Attributes.ActionGeo_Lat.getName(), (float) lat);
+			builder.set(GdeltFeature.Attributes.ActionGeo_Long.getName(), (float) lon);
+			builder.set(GdeltFeature.Attributes.geom.getName(), geometryFactory.createPoint(new Coordinate(lon, lat)));
+			builder.set(GdeltFeature.Attributes.SOURCEURL.getName(), "http://www.example.com/news/" + (i % 100000) + ".html");
+			SimpleFeature feature = builder.buildFeature(Integer.toString(i));
+			GdeltFeature.setActorTokens(feature);
+			return feature;
+		}
+	}
+}
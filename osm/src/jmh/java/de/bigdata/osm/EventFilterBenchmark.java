@@ -0,0 +1,64 @@
+package de.bigdata.osm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.filter.text.cql2.CQLException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.filter.Filter;
+
+/**
+ * Aufbau des GeoTools-Filters aus einer Anfrage des Frontends ({@link EventFilter}),
+ * mit und ohne Token-Index fuer die Keywords
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EventFilterBenchmark {
+
+	@Param({"true", "false"})
+	boolean tokenIndex;
+
+	private Events plain;
+	private Events codes;
+	private Events full;
+
+	@Setup
+	public void setup() {
+		plain = BenchmarkData.request(BenchmarkData.list(), BenchmarkData.list());
+		codes = BenchmarkData.request(BenchmarkData.list("14", "190", "1823", "0311"), BenchmarkData.list());
+		full = BenchmarkData.request(BenchmarkData.list("14", "190", "1823", "0311"),
+				BenchmarkData.list("united nations", "police", "Merkel"));
+	}
+
+	// nur BBox und Zeitraum
+	@Benchmark
+	public Filter bboxAndDates() throws CQLException {
+		return EventFilter.create(plain, tokenIndex);
+	}
+
+	// EventCodes auf allen Ebenen der CAMEO-Hierarchie
+	@Benchmark
+	public Filter eventCodes() throws CQLException {
+		return EventFilter.create(codes, tokenIndex);
+	}
+
+	// EventCodes und Keywords mit mehreren Woertern
+	@Benchmark
+	public Filter eventCodesAndKeywords() throws CQLException {
+		return EventFilter.create(full, tokenIndex);
+	}
+}
@@ -0,0 +1,52 @@
+package de.bigdata.osm;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.feature.SchemaException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Umwandlung der Features in {@link Event} mit {@link Event#fromFeature(SimpleFeature)}. Die Features
+ * liegen im Speicher, gemessen wird nur der Zugriff auf die Attribute und der Aufbau der Events.
+ * Das verzoegerte Dekodieren der Kryo-Features von GeoMesa ist darin nicht enthalten.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EventMappingBenchmark {
+
+	private static final int FEATURES = 10000;
+
+	private List<SimpleFeature> features;
+
+	@Setup
+	public void setup() throws SchemaException {
+		features = BenchmarkData.features(FEATURES);
+	}
+
+	// Ergebnis pro Feature
+	@Benchmark
+	@OperationsPerInvocation(FEATURES)
+	public void fromFeature(Blackhole blackhole) {
+		for (SimpleFeature feature : features) {
+			blackhole.consume(Event.fromFeature(feature));
+		}
+	}
+}
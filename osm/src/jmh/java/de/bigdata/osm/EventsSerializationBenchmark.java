@@ -0,0 +1,88 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.feature.SchemaException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Schreiben der Antwort als JSON: {@link Events} wie in POST /rest/jersey und der
+ * {@link EventStream} wie in POST /rest/jersey/stream sowie das spaltenweise Format
+ * {@link ColumnarEvents}. Die Ausgabe wird nur gezaehlt, die Groesse ist das Ergebnis der Methoden.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class EventsSerializationBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	int size;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final ColumnarEventsWriter columnarWriter = new ColumnarEventsWriter();
+	private Events response;
+	private List<Event> events;
+
+	@Setup
+	public void setup() throws SchemaException {
+		events = BenchmarkData.events(size);
+		response = BenchmarkData.request(BenchmarkData.list("14"), BenchmarkData.list("police"));
+		response.setEvents(events);
+	}
+
+	@Benchmark
+	public long events() throws IOException {
+		CountingOutputStream output = new CountingOutputStream();
+		mapper.writeValue(output, response);
+		return output.count;
+	}
+
+	@Benchmark
+	public long eventStream() throws IOException {
+		CountingOutputStream output = new CountingOutputStream();
+		new EventStream(events, null, Integer.MAX_VALUE).write(output);
+		return output.count;
+	}
+
+	@Benchmark
+	public long columnar() throws IOException {
+		CountingOutputStream output = new CountingOutputStream();
+		columnarWriter.writeTo(response, Events.class, Events.class, null, null, null, output);
+		return output.count;
+	}
+
+	// Verwirft die Ausgabe, damit nur die Serialisierung gemessen wird
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
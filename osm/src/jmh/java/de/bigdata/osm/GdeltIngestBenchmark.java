@@ -0,0 +1,82 @@
+package de.bigdata.osm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.DataStore;
+import org.geotools.feature.SchemaException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Durchsatz von {@link GdeltIngest} mit 1, 4 und 16 Threads gegen einen lokalen MiniAccumuloCluster.
+ * Jeder Lauf schreibt in eine neue Tabelle, die FeatureTypes werden vorher angelegt. Das Ergebnis ist
+ * die Zeit pro Zeile in Mikrosekunden, Zeilen pro Sekunde = 1.000.000 / Score.
+ * Vergleichswert ist der bisherige Ingest mit einem Thread pro Datei in {@link GdeltSerialIngestBenchmark}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class GdeltIngestBenchmark {
+
+	static final int ROWS = 200000;
+
+	@Param({"1", "4", "16"})
+	int threads;
+
+	private IngestCluster cluster;
+	private File file;
+	private int run = 0;
+	private DataStoreManager manager;
+	private DataStore store;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, InterruptedException, SchemaException {
+		cluster = new IngestCluster();
+		file = BenchmarkData.tsv(ROWS);
+	}
+
+	@Setup(Level.Invocation)
+	public void createTables() throws IOException, SchemaException {
+		// mehrere Bereiche pro Datei, damit alle Threads zu tun haben
+		manager = cluster.manager("gdelt_" + threads + "_" + run++, 4);
+		store = IngestCluster.createStore(manager);
+	}
+
+	// Ergebnis pro Zeile
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public GdeltIngest.Result ingest() throws IOException, SchemaException, InterruptedException {
+		return new GdeltIngest(store, manager, threads).run(Collections.singletonList(file));
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeStore() {
+		store.dispose();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException, InterruptedException {
+		cluster.stop();
+		Files.delete(file.toPath());
+	}
+}
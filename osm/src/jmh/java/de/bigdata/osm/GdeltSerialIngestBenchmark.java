@@ -0,0 +1,108 @@
+package de.bigdata.osm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.factory.Hints;
+import org.geotools.feature.SchemaException;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergleichswert fuer {@link GdeltIngestBenchmark}: nachgebildeter bisheriger Ingest ueber den generischen
+ * Converter, ein Thread pro Datei liest jede Zeile, wandelt sie um und schreibt sie ueber einen einzigen FeatureWriter.
+ * Umgewandelt wird wie in {@link GdeltIngest}, damit nur das Lesen und Schreiben verglichen wird. Geschrieben
+ * wird wie frueher nur der vollstaendige FeatureType, ohne schmalen FeatureType und Tageswuerfel, der
+ * Vergleich faellt also eher zugunsten dieses Wegs aus. Dieselbe Datei und dasselbe Mass wie dort.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class GdeltSerialIngestBenchmark {
+
+	private IngestCluster cluster;
+	private File file;
+	private int run = 0;
+	private DataStoreManager manager;
+	private DataStore store;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, InterruptedException, SchemaException {
+		cluster = new IngestCluster();
+		file = BenchmarkData.tsv(GdeltIngestBenchmark.ROWS);
+	}
+
+	@Setup(Level.Invocation)
+	public void createTables() throws IOException, SchemaException {
+		manager = cluster.manager("gdelt_serial_" + run++, 64);
+		store = IngestCluster.createStore(manager);
+	}
+
+	// Ergebnis pro Zeile
+	@Benchmark
+	@OperationsPerInvocation(GdeltIngestBenchmark.ROWS)
+	public long ingest() throws IOException {
+		SimpleFeatureType featureType = store.getSchema(manager.getFeatureTypeName());
+		GdeltIngest.LineParser parser = new GdeltIngest.LineParser(featureType, true);
+		long rows = 0;
+		FeatureWriter<SimpleFeatureType, SimpleFeature> writer =
+				store.getFeatureWriterAppend(manager.getFeatureTypeName(), Transaction.AUTO_COMMIT);
+		try {
+			BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					SimpleFeature feature = parser.parse(line);
+					if (feature == null) {
+						continue;
+					}
+					SimpleFeature next = writer.next();
+					next.setAttributes(feature.getAttributes());
+					next.getUserData().put(Hints.PROVIDED_FID, feature.getID());
+					writer.write();
+					rows++;
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			writer.close();
+		}
+		return rows;
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeStore() {
+		store.dispose();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException, InterruptedException {
+		cluster.stop();
+		Files.delete(file.toPath());
+	}
+}
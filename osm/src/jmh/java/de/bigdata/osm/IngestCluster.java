@@ -0,0 +1,65 @@
+package de.bigdata.osm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.apache.accumulo.minicluster.MiniAccumuloCluster;
+import org.geotools.data.DataStore;
+import org.geotools.feature.SchemaException;
+
+/**
+ * Lokaler MiniAccumuloCluster fuer die Ingest-Benchmarks. Jeder Lauf bekommt eine neue Tabelle
+ * mit bereits angelegten FeatureTypes, damit das Anlegen nicht mitgemessen wird.
+ *
+ */
+final class IngestCluster {
+
+	private static final String PASSWORD = "secret";
+
+	private final File directory;
+	private final MiniAccumuloCluster cluster;
+
+	IngestCluster() throws IOException, InterruptedException {
+		directory = Files.createTempDirectory("accumulo").toFile();
+		cluster = new MiniAccumuloCluster(directory, PASSWORD);
+		cluster.start();
+	}
+
+	/**
+	 * Konfiguration fuer eine neue Tabelle
+	 * @param tableName Name der Tabelle, pro Lauf verschieden
+	 * @param splitMegabytes Groesse der Bereiche, in die {@link GdeltIngest} eine Datei teilt
+	 * @return {@link DataStoreManager} fuer die Tabelle
+	 */
+	DataStoreManager manager(String tableName, int splitMegabytes) {
+		Properties config = new Properties();
+		config.setProperty("instanceId", cluster.getInstanceName());
+		config.setProperty("zookeepers", cluster.getZooKeepers());
+		config.setProperty("user", "root");
+		config.setProperty("password", PASSWORD);
+		config.setProperty("tableName", tableName);
+		config.setProperty("osm.ingest.splitMegabytes", Integer.toString(splitMegabytes));
+		return new DataStoreManager(config);
+	}
+
+	/**
+	 * DataStore mit dem vollstaendigen und dem schmalen FeatureType und dem Tageswuerfel
+	 * @param manager Konfiguration aus {@link #manager(String, int)}
+	 * @return neuer DataStore, muss vom Aufrufer geschlossen werden
+	 * @throws IOException
+	 * @throws SchemaException
+	 */
+	static DataStore createStore(DataStoreManager manager) throws IOException, SchemaException {
+		DataStore store = manager.createDataStore();
+		store.createSchema(GdeltFeature.buildGdeltFeatureType(manager.getFeatureTypeName()));
+		store.createSchema(GdeltFeature.buildServingFeatureType(manager.getServingFeatureTypeName()));
+		store.createSchema(RollupCube.buildFeatureType(manager.getRollupTypeName()));
+		return store;
+	}
+
+	void stop() throws IOException, InterruptedException {
+		cluster.stop();
+	}
+}
@@ -0,0 +1,63 @@
+package de.bigdata.osm;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Containerklasse fuer die Kennzahlen des {@link QueryCache}
+ *
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CacheStats {
+
+	private int entries;
+	private long bytes;
+	private long maxBytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public CacheStats() {
+	}
+
+	public int getEntries() {
+		return entries;
+	}
+	public void setEntries(int entries) {
+		this.entries = entries;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+	public void setHits(long hits) {
+		this.hits = hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+	public void setMisses(long misses) {
+		this.misses = misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+	public void setEvictions(long evictions) {
+		this.evictions = evictions;
+	}
+}
@@ -0,0 +1,245 @@
+package de.bigdata.osm;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Spaltenweise Darstellung der Events fuer den Medientyp {@value #MEDIA_TYPE}. Statt eines Objekts
+ * pro Event enthaelt die Antwort ein Array pro Attribut. Die Texte und Daten wiederholen sich innerhalb
+ * einer Antwort stark und werden deshalb einmal in einem Woerterbuch abgelegt, die Spalten enthalten nur
+ * den Index in das Woerterbuch (-1 fuer NULL). Actor1Name und Actor2Name teilen sich ein Woerterbuch.
+ * Event i besteht aus <code>lat[i], lon[i], eventCodes[eventCode[i]], dates[sqlDate[i]], ...</code>
+ *
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(Include.NON_NULL)
+public class ColumnarEvents {
+
+	// Auswahl ueber den Accept-Header, sonst wird das zeilenweise JSON von Events geliefert
+	public static final String MEDIA_TYPE = "application/vnd.osm.events.columnar+json";
+
+	private int count;
+	private boolean truncated;
+	private String cursor;
+	private Long total;
+	private Double sampleRate;
+
+	private double[] lat;
+	private double[] lon;
+	private int[] eventCode;
+	private int[] sqlDate;
+	private int[] actor1Name;
+	private int[] actor2Name;
+	private int[] geoName;
+	private int[] sourceURL;
+
+	// Woerterbuecher, SQLDATE in Millisekunden seit 1970 wie in Event
+	private List<String> eventCodes;
+	private List<Long> dates;
+	private List<String> actorNames;
+	private List<String> geoNames;
+	private List<String> sourceURLs;
+
+	public ColumnarEvents() {
+	}
+
+	/**
+	 * Umwandlung einer Antwort in die spaltenweise Darstellung
+	 * @param events Antwort mit den Events und den Angaben zu Kuerzung, Cursor und Stichprobe
+	 * @return {@link ColumnarEvents} mit denselben Events in derselben Reihenfolge
+	 */
+	public static ColumnarEvents from(Events events) {
+		List<Event> list = events.getEvents();
+		int n = list.size();
+		ColumnarEvents columns = new ColumnarEvents();
+		columns.count = n;
+		columns.truncated = events.isTruncated();
+		columns.cursor = events.getCursor();
+		columns.total = events.getTotal();
+		columns.sampleRate = events.getSampleRate();
+		columns.lat = new double[n];
+		columns.lon = new double[n];
+		columns.eventCode = new int[n];
+		columns.sqlDate = new int[n];
+		columns.actor1Name = new int[n];
+		columns.actor2Name = new int[n];
+		columns.geoName = new int[n];
+		columns.sourceURL = new int[n];
+
+		Dictionary<String> eventCodes = new Dictionary<String>();
+		Dictionary<Long> dates = new Dictionary<Long>();
+		Dictionary<String> actorNames = new Dictionary<String>();
+		Dictionary<String> geoNames = new Dictionary<String>();
+		Dictionary<String> sourceURLs = new Dictionary<String>();
+		for (int i = 0; i < n; i++) {
+			Event event = list.get(i);
+			columns.lat[i] = event.getLat();
+			columns.lon[i] = event.getLon();
+			columns.eventCode[i] = eventCodes.index(event.getEventCode());
+			Date date = event.getSqlDate();
+			columns.sqlDate[i] = dates.index(date == null ? null : date.getTime());
+			columns.actor1Name[i] = actorNames.index(event.getActor1Name());
+			columns.actor2Name[i] = actorNames.index(event.getActor2Name());
+			columns.geoName[i] = geoNames.index(event.getGeoName());
+			columns.sourceURL[i] = sourceURLs.index(event.getSourceURL());
+		}
+		columns.eventCodes = eventCodes.values;
+		columns.dates = dates.values;
+		columns.actorNames = actorNames.values;
+		columns.geoNames = geoNames.values;
+		columns.sourceURLs = sourceURLs.values;
+		return columns;
+	}
+
+	public int getCount() {
+		return count;
+	}
+	public void setCount(int count) {
+		this.count = count;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	public Long getTotal() {
+		return total;
+	}
+	public void setTotal(Long total) {
+		this.total = total;
+	}
+
+	public Double getSampleRate() {
+		return sampleRate;
+	}
+	public void setSampleRate(Double sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	public double[] getLat() {
+		return lat;
+	}
+	public void setLat(double[] lat) {
+		this.lat = lat;
+	}
+
+	public double[] getLon() {
+		return lon;
+	}
+	public void setLon(double[] lon) {
+		this.lon = lon;
+	}
+
+	public int[] getEventCode() {
+		return eventCode;
+	}
+	public void setEventCode(int[] eventCode) {
+		this.eventCode = eventCode;
+	}
+
+	public int[] getSqlDate() {
+		return sqlDate;
+	}
+	public void setSqlDate(int[] sqlDate) {
+		this.sqlDate = sqlDate;
+	}
+
+	public int[] getActor1Name() {
+		return actor1Name;
+	}
+	public void setActor1Name(int[] actor1Name) {
+		this.actor1Name = actor1Name;
+	}
+
+	public int[] getActor2Name() {
+		return actor2Name;
+	}
+	public void setActor2Name(int[] actor2Name) {
+		this.actor2Name = actor2Name;
+	}
+
+	public int[] getGeoName() {
+		return geoName;
+	}
+	public void setGeoName(int[] geoName) {
+		this.geoName = geoName;
+	}
+
+	public int[] getSourceURL() {
+		return sourceURL;
+	}
+	public void setSourceURL(int[] sourceURL) {
+		this.sourceURL = sourceURL;
+	}
+
+	public List<String> getEventCodes() {
+		return eventCodes;
+	}
+	public void setEventCodes(List<String> eventCodes) {
+		this.eventCodes = eventCodes;
+	}
+
+	public List<Long> getDates() {
+		return dates;
+	}
+	public void setDates(List<Long> dates) {
+		this.dates = dates;
+	}
+
+	public List<String> getActorNames() {
+		return actorNames;
+	}
+	public void setActorNames(List<String> actorNames) {
+		this.actorNames = actorNames;
+	}
+
+	public List<String> getGeoNames() {
+		return geoNames;
+	}
+	public void setGeoNames(List<String> geoNames) {
+		this.geoNames = geoNames;
+	}
+
+	public List<String> getSourceURLs() {
+		return sourceURLs;
+	}
+	public void setSourceURLs(List<String> sourceURLs) {
+		this.sourceURLs = sourceURLs;
+	}
+
+	// Werte in der Reihenfolge des ersten Auftretens
+	private static class Dictionary<T> {
+		private final Map<T, Integer> indexes = new HashMap<T, Integer>();
+		private final List<T> values = new ArrayList<T>();
+
+		int index(T value) {
+			if (value == null) {
+				return -1;
+			}
+			Integer index = indexes.get(value);
+			if (index == null) {
+				index = values.size();
+				indexes.put(value, index);
+				values.add(value);
+			}
+			return index;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Schreibt {@link Events} als {@link ColumnarEvents}, wenn der Client im Accept-Header
+ * {@value ColumnarEvents#MEDIA_TYPE} anfordert. Wird ueber das Paket-Scanning von Jersey registriert.
+ *
+ */
+@Provider
+@Produces(ColumnarEvents.MEDIA_TYPE)
+public class ColumnarEventsWriter implements MessageBodyWriter<Events> {
+
+	// Den Stream von Jersey nicht schliessen
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		return Events.class.isAssignableFrom(type);
+	}
+
+	@Override
+	public long getSize(Events events, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+		// Laenge ist erst nach dem Schreiben bekannt
+		return -1;
+	}
+
+	@Override
+	public void writeTo(Events events, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+		MAPPER.writeValue(entityStream, ColumnarEvents.from(events));
+	}
+}
@@ -0,0 +1,470 @@
+package de.bigdata.osm;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.thrift.transport.TTransportException;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+
+/**
+ * Anwendungsweite Verwaltung der Verbindung zum GeoMesa DataStore.
+ * Die Verbindung wird beim Start der Webapp aufgebaut, von allen Requests
+ * gemeinsam genutzt, nach Verbindungsfehlern neu aufgebaut und beim Undeploy geschlossen.
+ * Eine verworfene Verbindung wird erst geschlossen, wenn alle Iteratoren darauf geschlossen sind.
+ *
+ */
+public class DataStoreManager {
+
+	private static final Logger LOG = Logger.getLogger(DataStoreManager.class.getName());
+
+	// Name des Attributs, unter dem der Manager im ServletContext abgelegt wird
+	public static final String CONTEXT_ATTRIBUTE = DataStoreManager.class.getName();
+	// Context-Parameter bzw. System-Property mit dem Pfad zu einer externen Konfiguration
+	public static final String CONFIG_PARAMETER = "osm.config";
+	// Standardkonfiguration im Classpath
+	private static final String DEFAULT_CONFIG = "/osm.properties";
+	// Prefix fuer Einstellungen, die nicht an den DataStore weitergegeben werden
+	private static final String OSM_PREFIX = "osm.";
+	// Option im UserData eines Attributs fuer den Attribut-Index von GeoMesa
+	private static final String INDEX_OPTION = "index";
+
+	private final Map<String, String> dsConf;
+	private final Properties config;
+	private final String featureTypeName;
+	private final String rollupTypeName;
+	// Erster Tag, fuer den der Tageswuerfel alle Events enthaelt, NULL wenn er nicht genutzt wird
+	private final Date rollupFrom;
+	private final String servingTypeName;
+	// Kartenabfragen auf dem schmalen FeatureType erst, wenn er nachweislich alle Events enthaelt
+	private final boolean servingEnabled;
+
+	// Aktuelle Verbindung, NULL vor dem ersten Zugriff und nach einem Verbindungsfehler
+	private Connection connection;
+	// Verworfene Verbindungen, auf denen noch Iteratoren offen sind
+	private final List<Connection> retired = new ArrayList<Connection>();
+	private boolean closed = false;
+
+	public DataStoreManager(Properties config) {
+		this.config = config;
+		this.dsConf = new HashMap<String, String>();
+		for (String key : config.stringPropertyNames()) {
+			if (!key.startsWith(OSM_PREFIX)) {
+				dsConf.put(key, config.getProperty(key));
+			}
+		}
+		this.featureTypeName = config.getProperty(OSM_PREFIX + "featureTypeName", "event");
+		this.rollupTypeName = config.getProperty(OSM_PREFIX + "rollup.featureTypeName", featureTypeName + "_daily");
+		this.servingTypeName = config.getProperty(OSM_PREFIX + "serving.featureTypeName", featureTypeName + "_serving");
+		this.servingEnabled = Boolean.parseBoolean(config.getProperty(OSM_PREFIX + "serving.enabled", "false"));
+		this.rollupFrom = parseDay(config.getProperty(OSM_PREFIX + "rollup.fromDate", ""));
+	}
+
+	// Tag im Format von SQLDATE (yyyyMMdd), leer oder ungueltig ergibt NULL
+	private static Date parseDay(String value) {
+		if (value.trim().isEmpty()) {
+			return null;
+		}
+		SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+		format.setLenient(false);
+		try {
+			return format.parse(value.trim());
+		} catch (ParseException e) {
+			LOG.warning("Ungueltiges Datum " + value + " in osm.rollup.fromDate, der Tageswuerfel wird nicht genutzt");
+			return null;
+		}
+	}
+
+	/**
+	 * Laden der Konfiguration: zuerst die Standardwerte aus dem Classpath,
+	 * danach optional eine externe Datei aus Context-Parameter oder System-Property
+	 * @param context ServletContext der Webapp
+	 * @return Konfiguration fuer den DataStore
+	 * @throws IOException
+	 */
+	public static Properties loadConfig(ServletContext context) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = DataStoreManager.class.getResourceAsStream(DEFAULT_CONFIG);
+		if (in != null) {
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		String external = System.getProperty(CONFIG_PARAMETER);
+		if (external == null && context != null) {
+			external = context.getInitParameter(CONFIG_PARAMETER);
+		}
+		if (external != null) {
+			InputStream file = new FileInputStream(external);
+			try {
+				properties.load(file);
+			} finally {
+				file.close();
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Liefert den im ServletContext abgelegten Manager
+	 * @param context ServletContext der Webapp
+	 * @return {@link DataStoreManager} der Anwendung
+	 */
+	public static DataStoreManager get(ServletContext context) {
+		DataStoreManager manager = (DataStoreManager) context.getAttribute(CONTEXT_ATTRIBUTE);
+		if (manager == null) {
+			throw new IllegalStateException("DataStoreManager wurde nicht initialisiert");
+		}
+		return manager;
+	}
+
+	public String getFeatureTypeName() {
+		return featureTypeName;
+	}
+
+	public String getRollupTypeName() {
+		return rollupTypeName;
+	}
+
+	/**
+	 * Name des schmalen FeatureTypes laut Konfiguration, unabhaengig davon, ob er angelegt ist
+	 * @return Wert von <code>osm.serving.featureTypeName</code>
+	 */
+	public String getServingFeatureTypeName() {
+		return servingTypeName;
+	}
+
+	/**
+	 * TypeName fuer Abfragen, die nur die Attribute aus {@link GdeltFeature#SERVING_TYPE_ATTRIBUTES}
+	 * benoetigen. Dass der schmale FeatureType existiert, genuegt nicht: Er enthaelt nur die Events,
+	 * die mit {@link GdeltIngest} geschrieben wurden. Seine Tabellen werden deshalb erst mit
+	 * <code>osm.serving.enabled=true</code> gelesen, sonst der vollstaendige Datensatz.
+	 * @return Name des schmalen FeatureTypes, falls eingeschaltet und vorhanden, sonst {@link #getFeatureTypeName()}
+	 * @throws IOException
+	 */
+	public synchronized String getServingTypeName() throws IOException {
+		return current().servingSource != null ? servingTypeName : featureTypeName;
+	}
+
+	/**
+	 * Liefert einen Konfigurationswert der Webapp (Schluessel mit Prefix "osm.")
+	 * @param name Name ohne Prefix
+	 * @param defaultValue Standardwert, falls nicht gesetzt
+	 * @return Konfigurationswert
+	 */
+	public String getSetting(String name, String defaultValue) {
+		return config.getProperty(OSM_PREFIX + name, defaultValue);
+	}
+
+	/**
+	 * Gemeinsam genutzte FeatureSource, bei Bedarf wird die Verbindung (neu) aufgebaut
+	 * @return FeatureSource fuer den konfigurierten FeatureType
+	 * @throws IOException
+	 */
+	public synchronized SimpleFeatureSource getFeatureSource() throws IOException {
+		return current().featureSource;
+	}
+
+	private synchronized Connection current() throws IOException {
+		if (closed) {
+			throw new IOException("DataStoreManager ist bereits geschlossen");
+		}
+		if (connection == null) {
+			connection = connect();
+		}
+		return connection;
+	}
+
+	/**
+	 * Pruefen, ob der Tageswuerfel eine Anfrage vollstaendig abdeckt. Dass der FeatureType existiert,
+	 * genuegt nicht: Er enthaelt nur die Tage, die {@link GdeltIngest} geschrieben oder neu aufgebaut hat.
+	 * Genutzt wird er deshalb erst ab dem Tag in <code>osm.rollup.fromDate</code>.
+	 * @param events Anfrage des Frontends
+	 * @return true, wenn Abfragen auf {@link #getRollupTypeName()} moeglich sind und der Zeitraum
+	 *         nicht vor <code>osm.rollup.fromDate</code> beginnt
+	 * @throws IOException
+	 */
+	public synchronized boolean hasRollup(Events events) throws IOException {
+		return current().rollupSource != null && rollupFrom != null && events.getDateFrom() != null
+				&& !PageCursor.startOfDay(events.getDateFrom()).before(rollupFrom);
+	}
+
+	/**
+	 * Pruefen, ob die Keyword-Suche den Token-Index verwenden soll. Das Attribut im Schema allein
+	 * genuegt nicht, da es nur von {@link GdeltIngest} gefuellt wird. Der Index wird deshalb erst
+	 * mit <code>osm.keywords.tokenIndex=true</code> genutzt, sonst wird weiterhin mit LIKE gesucht.
+	 * @return true, wenn der Index eingeschaltet und {@link GdeltFeature#ACTOR_TOKENS} im Schema vorhanden ist
+	 * @throws IOException
+	 */
+	public boolean hasActorTokens() throws IOException {
+		return Boolean.parseBoolean(getSetting("keywords.tokenIndex", "false"))
+				&& getSource(getServingTypeName()).getSchema().indexOf(GdeltFeature.ACTOR_TOKENS) >= 0;
+	}
+
+	/**
+	 * Pruefen, ob das Schema einen Attribut-Index auf einer Spalte besitzt. Tabellen, die vor
+	 * {@link GdeltFeature#INDEXED_ATTRIBUTES} angelegt wurden, haben keinen Index auf den Code-Spalten,
+	 * ein vorgegebener Attribut-Index wuerde dort mit einem Fehler abbrechen.
+	 * @param attribute Name der Spalte
+	 * @return true, wenn die Spalte mit <code>index=true</code> angelegt wurde
+	 * @throws IOException
+	 */
+	public boolean hasAttributeIndex(String attribute) throws IOException {
+		AttributeDescriptor descriptor = getSource(getServingTypeName()).getSchema().getDescriptor(attribute);
+		if (descriptor == null) {
+			return false;
+		}
+		Object index = descriptor.getUserData().get(INDEX_OPTION);
+		return index != null && !"false".equalsIgnoreCase(index.toString()) && !"none".equalsIgnoreCase(index.toString());
+	}
+
+	/**
+	 * Ausfuehren einer Query auf der gemeinsamen FeatureSource der Events, des schmalen FeatureTypes
+	 * bzw. des Tageswuerfels,
+	 * abhaengig vom TypeName der Query. Nur ein Verbindungsfehler verwirft die Verbindung, Fehler
+	 * der Anfrage selbst (z.B. ein ungueltiger Filter) betreffen die anderen Requests nicht.
+	 * @param query auszufuehrende Query
+	 * @return Iterator ueber die Ergebnisse, muss vom Aufrufer geschlossen werden
+	 * @throws IOException
+	 */
+	public SimpleFeatureIterator query(Query query) throws IOException {
+		Connection used;
+		SimpleFeatureSource source;
+		synchronized (this) {
+			used = current();
+			source = used.getSource(query.getTypeName());
+			used.iterators++;
+		}
+		try {
+			return new ConnectionIterator(source.getFeatures(query).features(), used);
+		} catch (IOException e) {
+			failed(used, e, true);
+			throw e;
+		} catch (RuntimeException e) {
+			failed(used, e, true);
+			throw e;
+		}
+	}
+
+	/**
+	 * Pruefen, ob ein Fehler von der Verbindung zu Accumulo stammt und nicht von der Anfrage
+	 * @param error Fehler beim Ausfuehren oder Lesen einer Query
+	 * @return true, wenn der Fehler oder eine seiner Ursachen ein Verbindungsfehler ist
+	 */
+	static boolean isConnectionError(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof AccumuloException || cause instanceof AccumuloSecurityException
+					|| cause instanceof TableNotFoundException || cause instanceof TTransportException
+					|| cause instanceof SocketException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Fehler auf einer Verbindung: Bei einem Verbindungsfehler wird sie verworfen, der naechste
+	 * Aufruf von {@link #getFeatureSource()} baut eine neue auf
+	 * @param used Verbindung, bei deren Nutzung der Fehler aufgetreten ist
+	 * @param error aufgetretener Fehler
+	 * @param release true, wenn der Iterator dabei nicht zustande kam und die Verbindung freigegeben werden muss
+	 */
+	private synchronized void failed(Connection used, Throwable error, boolean release) {
+		if (isConnectionError(error)) {
+			// Nur verwerfen, wenn nicht bereits ein anderer Request neu verbunden hat
+			if (used == connection) {
+				LOG.log(Level.WARNING, "Verbindung zum DataStore wird nach einem Fehler neu aufgebaut", error);
+				connection = null;
+				retired.add(used);
+			}
+		}
+		if (release) {
+			release(used);
+		}
+	}
+
+	// Iterator auf einer Verbindung geschlossen, eine verworfene Verbindung ohne Iteratoren wird geschlossen
+	private synchronized void release(Connection used) {
+		used.iterators--;
+		if (used.iterators == 0 && retired.contains(used)) {
+			dispose(used);
+		}
+	}
+
+	/**
+	 * Schliessen der Verbindung beim Undeploy der Webapp, auch verworfener Verbindungen mit
+	 * noch offenen Iteratoren
+	 */
+	public synchronized void close() {
+		closed = true;
+		if (connection != null) {
+			retired.add(connection);
+			connection = null;
+		}
+		for (Connection old : new ArrayList<Connection>(retired)) {
+			dispose(old);
+		}
+	}
+
+	private synchronized SimpleFeatureSource getSource(String typeName) throws IOException {
+		return current().getSource(typeName);
+	}
+
+	/**
+	 * Eigener DataStore zur Konfiguration, z.B. fuer den Ingest, der die FeatureTypes erst anlegt.
+	 * Er wird nicht mit den Abfragen geteilt und muss vom Aufrufer mit dispose() geschlossen werden.
+	 * @return neuer DataStore
+	 * @throws IOException
+	 */
+	public DataStore createDataStore() throws IOException {
+		DataStore store = DataStoreFinder.getDataStore(dsConf);
+		if (store == null) {
+			throw new IOException("Kein DataStore fuer die angegebene Konfiguration gefunden");
+		}
+		return store;
+	}
+
+	private Connection connect() throws IOException {
+		DataStore store = createDataStore();
+		try {
+			Connection created = new Connection(store);
+			created.featureSource = store.getFeatureSource(featureTypeName);
+			List<String> typeNames = Arrays.asList(store.getTypeNames());
+			if (typeNames.contains(rollupTypeName)) {
+				created.rollupSource = store.getFeatureSource(rollupTypeName);
+			}
+			if (servingEnabled) {
+				if (typeNames.contains(servingTypeName)) {
+					created.servingSource = store.getFeatureSource(servingTypeName);
+				} else {
+					LOG.warning("FeatureType " + servingTypeName + " ist nicht vorhanden, Kartenabfragen lesen "
+							+ featureTypeName);
+				}
+			}
+			return created;
+		} catch (IOException e) {
+			store.dispose();
+			throw e;
+		} catch (RuntimeException e) {
+			store.dispose();
+			throw e;
+		}
+	}
+
+	private void dispose(Connection old) {
+		retired.remove(old);
+		try {
+			old.store.dispose();
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Fehler beim Schliessen des DataStores", e);
+		}
+	}
+
+	/**
+	 * Ein DataStore mit seinen FeatureSources und der Anzahl der darauf offenen Iteratoren
+	 *
+	 */
+	private class Connection {
+
+		private final DataStore store;
+		private SimpleFeatureSource featureSource;
+		// Tageswuerfel (RollupCube), NULL wenn der FeatureType nicht angelegt ist
+		private SimpleFeatureSource rollupSource;
+		// Schmaler FeatureType mit den Attributen der Kartenabfragen, NULL wenn er nicht angelegt ist
+		private SimpleFeatureSource servingSource;
+		private int iterators = 0;
+
+		Connection(DataStore store) {
+			this.store = store;
+		}
+
+		SimpleFeatureSource getSource(String typeName) throws IOException {
+			if (rollupTypeName.equals(typeName)) {
+				if (rollupSource == null) {
+					throw new IOException("FeatureType " + rollupTypeName + " ist nicht vorhanden");
+				}
+				return rollupSource;
+			}
+			if (servingSource != null && servingTypeName.equals(typeName)) {
+				return servingSource;
+			}
+			return featureSource;
+		}
+	}
+
+	/**
+	 * Iterator, der seine Verbindung beim Schliessen freigibt. Verbindungsfehler beim Lesen
+	 * verwerfen die Verbindung wie in {@link DataStoreManager#query(Query)}.
+	 *
+	 */
+	private class ConnectionIterator implements SimpleFeatureIterator {
+
+		private final SimpleFeatureIterator iterator;
+		private final Connection used;
+		private boolean released = false;
+
+		ConnectionIterator(SimpleFeatureIterator iterator, Connection used) {
+			this.iterator = iterator;
+			this.used = used;
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				return iterator.hasNext();
+			} catch (RuntimeException e) {
+				failed(used, e, false);
+				throw e;
+			}
+		}
+
+		@Override
+		public SimpleFeature next() {
+			try {
+				return iterator.next();
+			} catch (RuntimeException e) {
+				failed(used, e, false);
+				throw e;
+			}
+		}
+
+		@Override
+		public void close() {
+			if (released) {
+				return;
+			}
+			released = true;
+			try {
+				iterator.close();
+			} finally {
+				release(used);
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package de.bigdata.osm;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.geomesa.accumulo.iterators.Z3DensityIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+
+import com.vividsolutions.jts.geom.Point;
+
+import scala.Function1;
+import scala.Tuple3;
+
+/**
+ * Aggregation der Events auf ein Raster. Die Zaehlung pro Zelle findet ueber die Density-QueryHints
+ * im Z3DensityIterator auf den Tablet Servern statt, an die Webapp werden nur die Zellen uebertragen.
+ *
+ */
+public class DensityGrid {
+
+	// Kantenlaenge der Kacheln von OpenLayers in Pixeln
+	private static final int TILE_SIZE = 256;
+	// Gewuenschte Groesse einer Rasterzelle auf dem Bildschirm in Pixeln
+	private static final int CELL_PIXELS = 32;
+	// Rastergroesse, wenn das Frontend keine Zoomstufe mitschickt
+	private static final int DEFAULT_CELLS = 64;
+	private static final int MIN_CELLS = 2;
+	private static final int MAX_CELLS = 256;
+	// Grenze der Spherical Mercator Projektion
+	private static final double MAX_LAT = 85.0511;
+
+	private final ReferencedEnvelope envelope;
+	private final int width;
+	private final int height;
+
+	/**
+	 * Bestimmen der Rastergroesse aus der BBox und der Zoomstufe der Karte
+	 * @param bounds ausgewaehlter Koordinatenbereich
+	 * @param zoom Zoomstufe der Karte, NULL fuer eine feste Rastergroesse
+	 */
+	public DensityGrid(Bounds bounds, Integer zoom) {
+		this.envelope = new ReferencedEnvelope(bounds.getLeft(), bounds.getRight(),
+				bounds.getBottom(), bounds.getTop(), DefaultGeographicCRS.WGS84);
+		if (zoom == null) {
+			width = DEFAULT_CELLS;
+			height = DEFAULT_CELLS;
+		} else {
+			// Breite der Welt in Pixeln bei der angegebenen Zoomstufe
+			double worldPixels = TILE_SIZE * Math.pow(2, zoom);
+			double xPixels = (bounds.getRight() - bounds.getLeft()) / 360.0 * worldPixels;
+			double yPixels = (mercatorY(bounds.getTop()) - mercatorY(bounds.getBottom())) / (2 * Math.PI) * worldPixels;
+			width = cells(xPixels);
+			height = cells(yPixels);
+		}
+	}
+
+	/**
+	 * Raster mit vorgegebener Groesse, z.B. ein Pixel pro Zelle fuer {@link HeatmapRenderer}
+	 * @param bounds Koordinatenbereich des Rasters
+	 * @param width Anzahl der Zellen in x-Richtung
+	 * @param height Anzahl der Zellen in y-Richtung
+	 */
+	public DensityGrid(Bounds bounds, int width, int height) {
+		this.envelope = new ReferencedEnvelope(bounds.getLeft(), bounds.getRight(),
+				bounds.getBottom(), bounds.getTop(), DefaultGeographicCRS.WGS84);
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Erstellen der Query mit den Density-Hints fuer GeoMesa
+	 * @param typeName FeatureTypeName der Events
+	 * @param filter Filter aus der Anfrage des Frontends
+	 * @return Query, deren Ergebnisse mit {@link #aggregate(SimpleFeatureIterator)} ausgewertet werden
+	 */
+	public Query createQuery(String typeName, Filter filter) {
+		Query query = new Query(typeName, filter);
+		query.getHints().put(GeoMesaHints.DENSITY_BBOX, envelope);
+		query.getHints().put(GeoMesaHints.DENSITY_WIDTH, width);
+		query.getHints().put(GeoMesaHints.DENSITY_HEIGHT, height);
+		return query;
+	}
+
+	/**
+	 * Zusammenfassen der Teilergebnisse der einzelnen Tablet Server
+	 * @param iterator Ergebnisse der Query aus {@link #createQuery(String, Filter)}
+	 * @return {@link Grid} mit allen Zellen, die mindestens ein Event enthalten
+	 */
+	public Grid aggregate(SimpleFeatureIterator iterator) {
+		Counts counts = new Counts();
+		collect(iterator, counts);
+		return toGrid(counts.values);
+	}
+
+	/**
+	 * Uebergabe der einzelnen Zellen aus den Teilergebnissen der Tablet Server
+	 * @param iterator Ergebnisse der Query aus {@link #createQuery(String, Filter)}
+	 * @param cells Empfaenger der Zellen, eine Zelle kann mehrfach vorkommen
+	 */
+	public void collect(SimpleFeatureIterator iterator, Cells cells) {
+		Function1<SimpleFeature, scala.collection.Iterator<Tuple3<Object, Object, Object>>> decode =
+				Z3DensityIterator.decodeResult(envelope, width, height);
+		while (iterator.hasNext()) {
+			scala.collection.Iterator<Tuple3<Object, Object, Object>> points = decode.apply(iterator.next());
+			while (points.hasNext()) {
+				Tuple3<Object, Object, Object> point = points.next();
+				cells.add((Double) point._1(), (Double) point._2(), (Double) point._3());
+			}
+		}
+	}
+
+	/**
+	 * Zusammenfassen der Zellen des Tageswuerfels auf das Raster
+	 * @param iterator Ergebnisse von {@link RollupCube#createQuery(String, Events)}
+	 * @return {@link Grid} mit allen Zellen, die mindestens ein Event enthalten
+	 */
+	public Grid aggregateRollup(SimpleFeatureIterator iterator) {
+		Counts counts = new Counts();
+		collectRollup(iterator, counts);
+		return toGrid(counts.values);
+	}
+
+	/**
+	 * Uebergabe der Zellen des Tageswuerfels mit ihrem Mittelpunkt
+	 * @param iterator Ergebnisse von {@link RollupCube#createQuery(String, Events)}
+	 * @param cells Empfaenger der Zellen, eine Zelle kommt einmal pro Tag und Kategorie vor
+	 */
+	public void collectRollup(SimpleFeatureIterator iterator, Cells cells) {
+		while (iterator.hasNext()) {
+			SimpleFeature cell = iterator.next();
+			Point point = (Point) cell.getDefaultGeometry();
+			cells.add(point.getX(), point.getY(), ((Number) cell.getAttribute(RollupCube.COUNT)).doubleValue());
+		}
+	}
+
+	/**
+	 * Pruefen, ob die Rasterzellen mindestens so gross sind wie die Zellen des Tageswuerfels,
+	 * sodass dieser die Anfrage ohne sichtbaren Genauigkeitsverlust beantworten kann
+	 * @return true, wenn das Raster aus dem Tageswuerfel berechnet werden kann
+	 */
+	public boolean isCoarserThanRollup() {
+		return envelope.getWidth() / width >= RollupCube.CELL_WIDTH
+				&& envelope.getHeight() / height >= RollupCube.CELL_HEIGHT;
+	}
+
+	/**
+	 * Empfaenger der aggregierten Zellen
+	 *
+	 */
+	public interface Cells {
+		/**
+		 * @param lon Laengengrad der Zelle
+		 * @param lat Breitengrad der Zelle
+		 * @param count Anzahl der Events
+		 */
+		void add(double lon, double lat, double count);
+	}
+
+	// Summe pro Zelle des Rasters, Index i * height + j
+	private class Counts implements Cells {
+		private final double[] values = new double[width * height];
+
+		@Override
+		public void add(double x, double y, double count) {
+			double dx = envelope.getWidth() / (width - 1);
+			double dy = envelope.getHeight() / (height - 1);
+			int i = (int) Math.round((x - envelope.getMinX()) / dx);
+			int j = (int) Math.round((y - envelope.getMinY()) / dy);
+			if (i >= 0 && i < width && j >= 0 && j < height) {
+				values[i * height + j] += count;
+			}
+		}
+	}
+
+	private Grid toGrid(double[] counts) {
+		double dx = envelope.getWidth() / (width - 1);
+		double dy = envelope.getHeight() / (height - 1);
+		Grid grid = new Grid(width, height);
+		for (int i = 0; i < width; i++) {
+			for (int j = 0; j < height; j++) {
+				long count = Math.round(counts[i * height + j]);
+				if (count > 0) {
+					grid.addCell(new GridCell(envelope.getMinY() + j * dy, envelope.getMinX() + i * dx, count));
+				}
+			}
+		}
+		return grid;
+	}
+
+	private static int cells(double pixels) {
+		int cells = (int) Math.ceil(pixels / CELL_PIXELS);
+		return Math.max(MIN_CELLS, Math.min(MAX_CELLS, cells));
+	}
+
+	private static double mercatorY(double lat) {
+		double clamped = Math.max(-MAX_LAT, Math.min(MAX_LAT, lat));
+		return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(clamped) / 2));
+	}
+}
@@ -2,9 +2,12 @@ package de.bigdata.osm;
 
 import java.util.Date;
 
+import org.opengis.feature.simple.SimpleFeature;
+
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.vividsolutions.jts.geom.Point;
 
 /**
  * Containerklasse fuer ein einzelnes Event
@@ -31,6 +34,33 @@ public class Event {
 		this.lon = lon;
 	}
 	
+	/**
+	 * Erstellen eines Events aus einem GDELT-Feature der Datenbank
+	 * @param feature Feature mit den Attributen aus {@link GdeltFeature}
+	 * @return {@link Event} mit den fuer das Frontend benoetigten Daten
+	 */
+	public static Event fromFeature(SimpleFeature feature) {
+		Point geom = (Point) feature.getAttribute(GdeltFeature.Attributes.geom.getName());
+		Event event = new Event(geom.getY(), geom.getX());
+		event.setEventCode(toString(feature.getAttribute(GdeltFeature.Attributes.EventCode.getName())));
+		event.setSqlDate((Date) feature.getAttribute(GdeltFeature.Attributes.SQLDATE.getName()));
+		event.setActor1Name(toString(feature.getAttribute(GdeltFeature.Attributes.Actor1Name.getName())));
+		event.setActor2Name(toString(feature.getAttribute(GdeltFeature.Attributes.Actor2Name.getName())));
+		event.setGeoName(toString(feature.getAttribute(GdeltFeature.Attributes.ActionGeo_FullName.getName())));
+		// SourceURL bleibt NULL, wenn sie nicht vorhanden ist
+		event.setSourceURL(toString(feature.getAttribute(GdeltFeature.Attributes.SOURCEURL.getName())));
+		return event;
+	}
+	
+	// Leere Texte wie fehlende behandeln, die Zeilen aus LiveSource kennen kein NULL
+	private static String toString(Object value) {
+		if (value == null) {
+			return null;
+		}
+		String text = value.toString();
+		return text.isEmpty() ? null : text;
+	}
+	
 	public double getLat() {
 		return lat;
 	}
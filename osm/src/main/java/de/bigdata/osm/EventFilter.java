@@ -0,0 +1,345 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.filter.text.cql2.CQLException;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+/**
+ * Erstellen der GeoTools-Filter aus den Filtern des Frontends. Wird von den Endpunkten in
+ * {@link Jersey} und {@link Tiles} gemeinsam genutzt.
+ *
+ */
+public final class EventFilter {
+
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	// Anteil der Weltkarte, ab dem der Attribut-Index fuer seltene EventCodes vorgegeben wird
+	private static final double MIN_ATTRIBUTE_BBOX_SHARE = 0.01;
+
+	private EventFilter() {
+	}
+
+	/**
+	 * Filter fuer alle EventCodes, die mit der angegebenen ID beginnen. Die CAMEO-Codes sind hierarchisch
+	 * (2 Stellen EventRootCode, 3 Stellen EventBaseCode, 4 Stellen EventCode), ein Praefix auf einer
+	 * dieser Ebenen wird deshalb als Gleichheit auf der passenden Spalte abgefragt. GeoMesa kann diese
+	 * im Attribut-Index auf den Zeitraum der Anfrage begrenzen, ein LIKE dagegen nur als Praefix ueber
+	 * alle Tage.
+	 * @param ff FilterFactory
+	 * @param eventID vom Frontend angegebener (Teil-)Code
+	 * @return Filter fuer die EventCodes
+	 */
+	private static Filter createEventCodeFilter(FilterFactory2 ff, String eventID) {
+		GdeltFeature.Attributes column = eventCodeColumn(eventID);
+		if (eventID.length() < 2 || eventID.length() > 4) {
+			// LIKE mit Praefix, den GeoMesa als Bereich im Attribut-Index abfragt
+			return like(ff, column.getName(), eventID+"%");
+		}
+		return ff.equals(ff.property(column.getName()), ff.literal(eventID));
+	}
+
+	/**
+	 * LIKE mit den Platzhaltern aus CQL (% und _), ohne Angabe nimmt die FilterFactory * und ? an
+	 * @param ff FilterFactory
+	 * @param property Name der Spalte
+	 * @param pattern Muster mit %
+	 * @return Filter fuer das Muster
+	 */
+	private static Filter like(FilterFactory2 ff, String property, String pattern) {
+		return ff.like(ff.property(property), pattern, "%", "_", "\\");
+	}
+
+	/**
+	 * Spalte, auf der ein (Teil-)Code abgefragt wird
+	 * @param eventID vom Frontend angegebener (Teil-)Code
+	 * @return EventRootCode, EventBaseCode oder EventCode
+	 */
+	private static GdeltFeature.Attributes eventCodeColumn(String eventID) {
+		switch (eventID.length()) {
+		case 2:
+			return GdeltFeature.Attributes.EventRootCode;
+		case 3:
+			return GdeltFeature.Attributes.EventBaseCode;
+		default:
+			return GdeltFeature.Attributes.EventCode;
+		}
+	}
+	
+	/**
+	 * Pruefen, ob die EventCodes selektiver sind als BBox und Zeitraum. Der QueryStrategyDecider
+	 * von GeoMesa waehlt ohne Statistik immer den Z3-Index, der aber jeden Tag des Zeitraums in der
+	 * BBox vollstaendig liest. Bei seltenen Codes (z.B. CAMEO 19x ueber ein Jahr) ist der Attribut-Index
+	 * guenstiger, da er nur die Events dieser Codes liest. Tabellen aus der Zeit vor dem Index auf den
+	 * Code-Spalten werden nie auf den Attribut-Index gezwungen, dort entscheidet GeoMesa selbst.
+	 * @param manager Verbindung zur Datenbank, fuer die Einstellungen und das Schema
+	 * @param events Anfrage des Frontends
+	 * @return true, wenn der Attribut-Index verwendet werden soll
+	 * @throws IOException
+	 */
+	public static boolean preferAttributeIndex(DataStoreManager manager, Events events) throws IOException {
+		if (events.getEventIDs().isEmpty()) {
+			return false;
+		}
+		long days = (PageCursor.startOfDay(events.getDateTo()).getTime()
+				- PageCursor.startOfDay(events.getDateFrom()).getTime()) / DAY_MILLIS + 1;
+		if (days < Integer.parseInt(manager.getSetting("index.attributeMinDays", "30"))) {
+			return false;
+		}
+		// Bei kleinen BBoxen liest auch der Z3-Index nur wenige Events pro Tag
+		Bounds b = events.getBounds();
+		double bboxShare = (b.getRight() - b.getLeft()) * (b.getTop() - b.getBottom()) / (360.0 * 180.0);
+		if (bboxShare < MIN_ATTRIBUTE_BBOX_SHARE) {
+			return false;
+		}
+		List<String> selective = Arrays.asList(manager.getSetting("index.selectiveRootCodes", "").split("\\s*,\\s*"));
+		for (String eventID : events.getEventIDs()) {
+			if (eventID.length() < 2 || !selective.contains(eventID.substring(0, 2))) {
+				return false;
+			}
+			if (!manager.hasAttributeIndex(eventCodeColumn(eventID).getName())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Erstellen eines Filters zum Einschraenken der Ergebnisse. Ohne Token-Index trifft ein Keyword
+	 * als Teilstring von Actor1Name oder Actor2Name. Mit Token-Index (<code>osm.keywords.tokenIndex</code>)
+	 * muss jedes Wort des Keywords ein Wortanfang in demselben ActorName sein, "unit stat" findet also
+	 * "UNITED STATES", "nited" dagegen nichts.
+	 * @param manager Verbindung zur Datenbank, fuer die Pruefung auf den Token-Index
+	 * @param events Anfrage des Frontends mit BBox, Zeitraum, EventCodes und Keywords
+	 * @return Filter zur Einschraenkung der Ergebnisse
+	 * @throws CQLException
+	 * @throws IOException
+	 */
+	public static Filter create(DataStoreManager manager, Events events) throws CQLException, IOException {
+		return create(events, !events.getKeywords().isEmpty() && manager.hasActorTokens());
+	}
+
+	/**
+	 * Erstellen des Filters ohne Zugriff auf die Datenbank, z.B. fuer die Benchmarks
+	 * @param events Anfrage des Frontends mit BBox, Zeitraum, EventCodes und Keywords
+	 * @param tokenIndex true, wenn das Schema {@link GdeltFeature#ACTOR_TOKENS} enthaelt
+	 * @return Filter zur Einschraenkung der Ergebnisse
+	 * @throws CQLException
+	 */
+	static Filter create(Events events, boolean tokenIndex) throws CQLException {
+
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        List<Filter> filterList = new ArrayList<Filter>();
+        // Einschraenkung des Zeitintervalls
+        Filter timeFilter =
+                ff.between(ff.property(GdeltFeature.Attributes.SQLDATE.getName()),
+                           ff.literal(timeFrom(events)),
+                           ff.literal(timeTo(events)));
+        filterList.add(timeFilter);
+        
+        // Einschraenkung der Koordinaten
+        Filter spatialFilter =
+                ff.bbox(GdeltFeature.Attributes.geom.getName(),
+                        events.getBounds().getLeft(),
+                        events.getBounds().getBottom(),
+                        events.getBounds().getRight(),
+                        events.getBounds().getTop(),
+                        "EPSG:4326");
+        filterList.add(spatialFilter);
+        
+        // Einschraenken der EventCodes, z.B. 19 fuer EventCodes wie 190, 191 usw.
+        List<Filter> eventsFilter = new ArrayList<Filter>();
+        for (String eventID : events.getEventIDs()) {
+        	eventsFilter.add(createEventCodeFilter(ff, eventID));
+        }
+        // Verknuepfen mehrerer EventCode-Filter mit OR
+        if (!eventsFilter.isEmpty()) {
+        	Filter orEvents = ff.or(eventsFilter);
+        	filterList.add(orEvents);
+        }
+        
+        // Einschraenken der Ergebnisse mit Keywords, die in den ActorNames gesucht werden
+        List<Filter> keywordsFilter = new ArrayList<Filter>();
+        for (String keyword : events.getKeywords()) {
+        	List<String> tokens = GdeltFeature.tokenize(keyword);
+        	if (tokenIndex && !tokens.isEmpty()) {
+        		// Token-Index: jedes Wort des Keywords muss als Wortanfang in demselben ActorName vorkommen,
+        		// GeoMesa fragt dafuer einen Bereich im Attribut-Index ab
+        		List<Filter> actorFilter = new ArrayList<Filter>();
+        		for (int actor = 1; actor <= 2; actor++) {
+        			List<Filter> tokenFilter = new ArrayList<Filter>();
+        			for (String token : tokens) {
+        				tokenFilter.add(like(ff, GdeltFeature.ACTOR_TOKENS, GdeltFeature.actorTokenPrefix(actor)+token+"%"));
+        			}
+        			actorFilter.add(tokenFilter.size() == 1 ? tokenFilter.get(0) : ff.and(tokenFilter));
+        		}
+        		keywordsFilter.add(ff.or(actorFilter));
+        		continue;
+        	}
+        	// ohne Token-Index: Teilstring in beiden Spalten, Verknuepfen der Spalten mit OR
+        	List<Filter> columnFilter = new ArrayList<Filter>();
+        	columnFilter.add(like(ff, GdeltFeature.Attributes.Actor1Name.getName(), "%"+keyword+"%"));
+        	columnFilter.add(like(ff, GdeltFeature.Attributes.Actor2Name.getName(), "%"+keyword+"%"));
+        	keywordsFilter.add(ff.or(columnFilter));
+        }
+        // Verknuepfen mehrerer Keyword-Filter mit OR
+        if (!keywordsFilter.isEmpty()) {
+        	Filter orKeywords = ff.or(keywordsFilter);
+        	filterList.add(orKeywords);
+        }
+        
+        // Verknuepfen aller erstellten Filter mit AND
+        Filter conjunction = ff.and(filterList);
+
+        return conjunction;
+    }
+
+	/**
+	 * Beginn des Zeitraums im Filter, einschliesslich
+	 * @param events Anfrage des Frontends
+	 * @return Anfangsdatum mit der Stunde 0
+	 */
+	static Date timeFrom(Events events) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.setTime(events.getDateFrom());
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		return calendar.getTime();
+	}
+
+	/**
+	 * Ende des Zeitraums im Filter, einschliesslich
+	 * @param events Anfrage des Frontends
+	 * @return Enddatum mit der Stunde 23
+	 */
+	static Date timeTo(Events events) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.setTime(events.getDateTo());
+		calendar.set(Calendar.HOUR_OF_DAY, 23);
+		return calendar.getTime();
+	}
+
+	/**
+	 * Pruefen von Events im Speicher mit derselben Bedeutung wie {@link #create(Events, boolean)},
+	 * z.B. fuer den {@link HotTier}
+	 * @param events Anfrage des Frontends mit BBox, Zeitraum, EventCodes und Keywords
+	 * @param tokenIndex true, wenn die Keywords wie im Token-Index als Wortanfaenge gesucht werden
+	 * @return {@link Matcher} fuer die Anfrage
+	 */
+	static Matcher matcher(Events events, boolean tokenIndex) {
+		return new Matcher(events, tokenIndex);
+	}
+
+	/**
+	 * Filter der Anfrage fuer einzelne {@link Event}s. EventRootCode und EventBaseCode sind die ersten
+	 * Stellen des EventCodes, alle Codes werden daher als Praefix des EventCodes verglichen.
+	 *
+	 */
+	static final class Matcher {
+
+		private final Bounds bounds;
+		private final long from;
+		private final long to;
+		private final List<String> eventIDs;
+		private final List<String> keywords;
+		// Woerter pro Keyword beim Token-Index, sonst NULL
+		private final List<List<String>> keywordTokens;
+
+		private Matcher(Events events, boolean tokenIndex) {
+			this.bounds = events.getBounds();
+			// dieselben Grenzen wie im Filter fuer Accumulo
+			this.from = timeFrom(events).getTime();
+			this.to = timeTo(events).getTime();
+			this.eventIDs = events.getEventIDs();
+			this.keywords = events.getKeywords();
+			if (tokenIndex) {
+				keywordTokens = new ArrayList<List<String>>();
+				for (String keyword : keywords) {
+					keywordTokens.add(GdeltFeature.tokenize(keyword));
+				}
+			} else {
+				keywordTokens = null;
+			}
+		}
+
+		boolean matches(Event event) {
+			if (event.getLon() < bounds.getLeft() || event.getLon() > bounds.getRight()
+					|| event.getLat() < bounds.getBottom() || event.getLat() > bounds.getTop()) {
+				return false;
+			}
+			if (event.getSqlDate() == null || event.getSqlDate().getTime() < from || event.getSqlDate().getTime() > to) {
+				return false;
+			}
+			return matchesEventCode(event) && matchesKeywords(event);
+		}
+
+		private boolean matchesEventCode(Event event) {
+			if (eventIDs.isEmpty()) {
+				return true;
+			}
+			if (event.getEventCode() == null) {
+				return false;
+			}
+			for (String eventID : eventIDs) {
+				if (event.getEventCode().startsWith(eventID)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean matchesKeywords(Event event) {
+			if (keywords.isEmpty()) {
+				return true;
+			}
+			List<String> actor1Tokens = null;
+			List<String> actor2Tokens = null;
+			for (int i = 0; i < keywords.size(); i++) {
+				List<String> tokens = keywordTokens == null ? null : keywordTokens.get(i);
+				if (tokens == null || tokens.isEmpty()) {
+					// wie LIKE '%keyword%' auf Actor1Name oder Actor2Name
+					if (contains(event.getActor1Name(), keywords.get(i)) || contains(event.getActor2Name(), keywords.get(i))) {
+						return true;
+					}
+					continue;
+				}
+				if (actor1Tokens == null) {
+					actor1Tokens = GdeltFeature.tokenize(event.getActor1Name());
+					actor2Tokens = GdeltFeature.tokenize(event.getActor2Name());
+				}
+				if (startsAll(actor1Tokens, tokens) || startsAll(actor2Tokens, tokens)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean contains(String name, String keyword) {
+			return name != null && name.contains(keyword);
+		}
+
+		// jedes Wort des Keywords ist Anfang eines Worts desselben ActorNames
+		private static boolean startsAll(List<String> actorTokens, List<String> tokens) {
+			for (String token : tokens) {
+				boolean found = false;
+				for (String actorToken : actorTokens) {
+					if (actorToken.startsWith(token)) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Schreibt die Ergebnisse einer Query direkt waehrend des Scans als JSON in die Antwort.
+ * Die Events werden nicht gesammelt, der Speicherbedarf ist daher unabhaengig von der Ergebnismenge.
+ * Das Format entspricht dem von {@link Events}: <code>{"events":[...],"truncated":false}</code>,
+ * bei einer Stichprobe folgen "total" und "sampleRate". Wurde der Scan durch eine neuere Abfrage
+ * desselben Clients abgebrochen, folgt <code>"cancelled":true</code> und das Ergebnis ist unvollstaendig.
+ * Ein Abbruch der Verbindung wird erst beim naechsten Schreiben bemerkt.
+ *
+ */
+public class EventStream implements StreamingOutput {
+
+	// Anzahl der Events, nach denen die Antwort an den Client geschickt wird
+	private static final int FLUSH_INTERVAL = 1000;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+	private static final ObjectWriter EVENT_WRITER = MAPPER.writerFor(Event.class);
+
+	private final DataStoreManager manager;
+	private final Query query;
+	// Serverseitige Obergrenze fuer die Anzahl der Events
+	private final int limit;
+	// Angefragte BBox, falls die Query eine vergroesserte BBox abfragt
+	private final Bounds bounds;
+	private final QueryCache cache;
+	private final String cacheKey;
+	private final List<Event> cached;
+	// Abbruch durch eine neuere Abfrage desselben Clients
+	private final RunningQueries.Ticket ticket;
+	// Stichprobe der Anfrage oder NULL
+	private Sampling sampling;
+	// Zeiten fuer Planung, Scan und Dekodieren, siehe MetricsFilter
+	private RequestTimings timings = new RequestTimings();
+	private boolean truncated = false;
+	private boolean cancelled = false;
+
+	public EventStream(DataStoreManager manager, Query query, int limit, RunningQueries.Ticket ticket) {
+		this(manager, query, limit, ticket, null, null, null);
+	}
+
+	/**
+	 * Stream fuer eine Anfrage, die nicht im Cache gefunden wurde. Kleine Ergebnisse
+	 * werden waehrend des Schreibens gesammelt und anschliessend in den Cache aufgenommen.
+	 * @param manager Verbindung zur Datenbank
+	 * @param query Query mit der normalisierten BBox
+	 * @param limit Hoechstzahl der Events in der Antwort
+	 * @param ticket Ticket der Abfrage aus {@link RunningQueries}
+	 * @param bounds angefragte BBox
+	 * @param cache Cache fuer das Ergebnis
+	 * @param cacheKey Schluessel der normalisierten Anfrage
+	 */
+	public EventStream(DataStoreManager manager, Query query, int limit, RunningQueries.Ticket ticket,
+			Bounds bounds, QueryCache cache, String cacheKey) {
+		this.manager = manager;
+		this.query = query;
+		this.limit = limit;
+		this.ticket = ticket;
+		this.bounds = bounds;
+		this.cache = cache;
+		this.cacheKey = cacheKey;
+		this.cached = null;
+	}
+
+	/**
+	 * Stream fuer ein Ergebnis aus dem Cache
+	 * @param cached Events der normalisierten Anfrage
+	 * @param bounds angefragte BBox
+	 * @param limit Hoechstzahl der Events in der Antwort
+	 */
+	public EventStream(List<Event> cached, Bounds bounds, int limit) {
+		this.manager = null;
+		this.query = null;
+		this.limit = limit;
+		this.ticket = null;
+		this.bounds = bounds;
+		this.cache = null;
+		this.cacheKey = null;
+		this.cached = cached;
+	}
+
+	/**
+	 * Angabe der Stichprobe, deren Gesamtzahl und Rate nach den Events geschrieben werden
+	 * @param sampling Stichprobe, mit der die Query erstellt wurde
+	 * @return dieser Stream
+	 */
+	public EventStream withSampling(Sampling sampling) {
+		this.sampling = sampling;
+		return this;
+	}
+
+	/**
+	 * @return true, wenn der Stream eine Query ausfuehrt und ihr Ticket beim Schreiben abmeldet
+	 */
+	public boolean hasTicket() {
+		return ticket != null;
+	}
+
+	/**
+	 * Angabe der Zeiten des Requests, in die Planung, Scan und Dekodieren eingetragen werden
+	 * @param timings Zeiten aus {@link RequestTimings#get(com.sun.jersey.api.core.HttpContext)}
+	 * @return dieser Stream
+	 */
+	public EventStream withTimings(RequestTimings timings) {
+		this.timings = timings;
+		return this;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		try {
+			writeResponse(output);
+		} finally {
+			// Abmelden bei jedem Ausgang, auch wenn die Query nicht geplant werden konnte
+			if (ticket != null) {
+				ticket.finish();
+			}
+		}
+	}
+
+	private void writeResponse(OutputStream output) throws IOException {
+		JsonGenerator generator = MAPPER.getFactory().createGenerator(output, JsonEncoding.UTF8);
+		generator.writeStartObject();
+		generator.writeArrayFieldStart("events");
+		if (cached != null) {
+			int n = 0;
+			for (Event event : cached) {
+				n = writeEvent(generator, event, n);
+				if (truncated) {
+					break;
+				}
+			}
+		} else {
+			writeQuery(generator);
+		}
+		generator.writeEndArray();
+		generator.writeBooleanField("truncated", truncated);
+		if (cancelled) {
+			generator.writeBooleanField("cancelled", true);
+		}
+		if (sampling != null) {
+			generator.writeNumberField("total", sampling.getTotal());
+			generator.writeNumberField("sampleRate", sampling.getRate());
+		}
+		generator.writeEndObject();
+		generator.flush();
+	}
+
+	private void writeQuery(JsonGenerator generator) throws IOException {
+		List<Event> collected = cache == null ? null : new ArrayList<Event>();
+		long collectedBytes = 0;
+		// Die Query wird erst ausgefuehrt, wenn Jersey die Antwort schreibt
+		SimpleFeatureIterator iterator = null;
+		long start = timings.start();
+		try {
+			iterator = manager.query(query);
+			timings.stop(RequestTimings.PLANNING, start);
+			ticket.attach(iterator);
+			int n = 0;
+			while (!ticket.isCancelled()) {
+				start = timings.start();
+				if (!iterator.hasNext()) {
+					break;
+				}
+				SimpleFeature feature = iterator.next();
+				timings.stop(RequestTimings.SCAN, start);
+				start = timings.start();
+				Event event = Event.fromFeature(feature);
+				timings.stop(RequestTimings.DECODE, start);
+				if (collected != null) {
+					collected.add(event);
+					collectedBytes += QueryCache.estimateSize(event);
+					if (collectedBytes > cache.getMaxEntryBytes()) {
+						// zu gross fuer den Cache, nicht weiter sammeln
+						collected = null;
+					}
+				}
+				n = writeEvent(generator, event, n);
+				if (truncated) {
+					// gekuerzte Ergebnisse werden nicht zwischengespeichert
+					collected = null;
+					break;
+				}
+			}
+		} finally {
+			// Schliessen auch bei Abbruch der Verbindung durch den Client
+			cancelled = ticket.isCancelled();
+			ticket.detach();
+			if (iterator != null) {
+				iterator.close();
+			}
+		}
+		if (collected != null && !cancelled) {
+			cache.put(cacheKey, collected, collectedBytes);
+		}
+	}
+
+	private int writeEvent(JsonGenerator generator, Event event, int n) throws IOException {
+		if (bounds != null && !QueryCache.contains(bounds, event)) {
+			return n;
+		}
+		if (n >= limit) {
+			truncated = true;
+			return n;
+		}
+		EVENT_WRITER.writeValue(generator, event);
+		if (++n % FLUSH_INTERVAL == 0) {
+			generator.flush();
+		}
+		return n;
+	}
+}
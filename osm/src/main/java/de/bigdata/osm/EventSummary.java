@@ -0,0 +1,139 @@
+package de.bigdata.osm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Uebersicht der Events fuer die Eventkreise: jede Koordinate einmal mit der Anzahl ihrer Events,
+ * spaltenweise wie {@link ColumnarEvents}. Koordinate i besteht aus <code>lat[i], lon[i], counts[i]</code>.
+ * Die Events einer Koordinate werden erst bei der Auswahl eines Kreises ueber
+ * <code>POST /rest/jersey/detail</code> geladen.
+ *
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(Include.NON_NULL)
+public class EventSummary {
+
+	// Anzahl aller Events ueber alle Koordinaten
+	private int count;
+	private boolean truncated;
+
+	private double[] lat;
+	private double[] lon;
+	private int[] counts;
+
+	public EventSummary() {
+	}
+
+	public int getCount() {
+		return count;
+	}
+	public void setCount(int count) {
+		this.count = count;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+
+	public double[] getLat() {
+		return lat;
+	}
+	public void setLat(double[] lat) {
+		this.lat = lat;
+	}
+
+	public double[] getLon() {
+		return lon;
+	}
+	public void setLon(double[] lon) {
+		this.lon = lon;
+	}
+
+	public int[] getCounts() {
+		return counts;
+	}
+	public void setCounts(int[] counts) {
+		this.counts = counts;
+	}
+
+	/**
+	 * Zaehlen der Events pro Koordinate waehrend des Scans
+	 *
+	 */
+	public static class Collector {
+
+		private final Map<Coordinate, int[]> counts = new HashMap<Coordinate, int[]>();
+		private int count = 0;
+
+		public void add(double lat, double lon) {
+			Coordinate coordinate = new Coordinate(lat, lon);
+			int[] value = counts.get(coordinate);
+			if (value == null) {
+				counts.put(coordinate, new int[] {1});
+			} else {
+				value[0]++;
+			}
+			count++;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @param truncated true, wenn der Scan an der Obergrenze abgebrochen wurde
+		 * @return {@link EventSummary} mit einem Eintrag pro Koordinate
+		 */
+		public EventSummary build(boolean truncated) {
+			EventSummary summary = new EventSummary();
+			int n = counts.size();
+			summary.count = count;
+			summary.truncated = truncated;
+			summary.lat = new double[n];
+			summary.lon = new double[n];
+			summary.counts = new int[n];
+			int i = 0;
+			for (Map.Entry<Coordinate, int[]> entry : counts.entrySet()) {
+				summary.lat[i] = entry.getKey().lat;
+				summary.lon[i] = entry.getKey().lon;
+				summary.counts[i] = entry.getValue()[0];
+				i++;
+			}
+			return summary;
+		}
+	}
+
+	private static class Coordinate {
+
+		private final double lat;
+		private final double lon;
+
+		Coordinate(double lat, double lon) {
+			this.lat = lat;
+			this.lon = lon;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Coordinate)) {
+				return false;
+			}
+			Coordinate coordinate = (Coordinate) other;
+			return Double.compare(lat, coordinate.lat) == 0 && Double.compare(lon, coordinate.lon) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(lat) * 31 + Double.doubleToLongBits(lon);
+			return (int) (bits ^ (bits >>> 32));
+		}
+	}
+}
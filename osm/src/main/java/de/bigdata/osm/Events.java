@@ -25,10 +25,37 @@ public class Events {
 	private List<Event> events = new ArrayList<Event>();
 	private List<String> eventIDs = new ArrayList<String>();
 	private List<String> keywords = new ArrayList<String>();
+	// Zoomstufe der Karte, bestimmt die Rastergroesse der Aggregation
+	private Integer zoom;
+	// Seitenweises Laden: Seitengroesse und Cursor der Anfrage bzw. der naechsten Seite
+	private Integer pageSize;
+	private String cursor;
+	// Gesetzt, wenn das Ergebnis wegen der serverseitigen Obergrenze gekuerzt wurde
+	private boolean truncated;
+	// Stichprobe: Zielgroesse oder Anteil in der Anfrage, in der Antwort der verwendete Anteil
+	private Integer sampleSize;
+	private Double sampleRate;
+	// Anzahl der Events ohne Stichprobe, nur bei Stichproben gesetzt
+	private Long total;
 
 	public Events() {
 	}
 	
+	/**
+	 * Kopie der Filter einer Anfrage ohne die Events
+	 * @param other Anfrage des Frontends
+	 */
+	public Events(Events other) {
+		this.bounds = other.bounds;
+		this.dateFrom = other.dateFrom;
+		this.dateTo = other.dateTo;
+		this.eventIDs = other.eventIDs;
+		this.keywords = other.keywords;
+		this.zoom = other.zoom;
+		this.sampleSize = other.sampleSize;
+		this.sampleRate = other.sampleRate;
+	}
+	
 	public Bounds getBounds() {
 		return bounds;
 	}
@@ -73,4 +100,53 @@ public class Events {
 	public void setKeywords(List<String> keywords) {
 		this.keywords = keywords;
 	}
+
+	public Integer getZoom() {
+		return zoom;
+	}
+	public void setZoom(Integer zoom) {
+		this.zoom = zoom;
+	}
+
+	public Integer getPageSize() {
+		return pageSize;
+	}
+	public void setPageSize(Integer pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+
+	public Integer getSampleSize() {
+		return sampleSize;
+	}
+	public void setSampleSize(Integer sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	public Double getSampleRate() {
+		return sampleRate;
+	}
+	public void setSampleRate(Double sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	public Long getTotal() {
+		return total;
+	}
+	public void setTotal(Long total) {
+		this.total = total;
+	}
 }
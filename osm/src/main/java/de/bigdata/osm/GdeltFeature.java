@@ -2,11 +2,19 @@ package de.bigdata.osm;
 import com.google.common.base.Joiner;
 import org.geotools.data.DataUtilities;
 import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.locationtech.geomesa.accumulo.index.Constants;
+import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Copyright 2014 Commonwealth Computer Research, Inc.
@@ -102,6 +110,55 @@ public class GdeltFeature {
         }
     }
 
+    /**
+     * CAMEO code levels that get a GeoMesa attribute index (root 2 digits, base 3 digits, full code).
+     * Together they turn any event-type prefix into an equality lookup bounded by the query dates.
+     */
+    public static final Set<Attributes> INDEXED_ATTRIBUTES = Collections.unmodifiableSet(
+            EnumSet.of(Attributes.EventRootCode, Attributes.EventBaseCode, Attributes.EventCode));
+
+    /**
+     * Derived attribute holding the upper-case word tokens of Actor1Name and Actor2Name, each
+     * prefixed with the actor it was taken from (see {@link #actorTokenPrefix(int)}).
+     * It is not a GDELT column and is filled at ingest time via {@link #setActorTokens(SimpleFeature)}.
+     * GeoMesa writes one attribute index row per list entry, so a keyword becomes a prefix range
+     * lookup instead of a LIKE '%keyword%' evaluated against every feature in the Z3 range.
+     * Note that this matches word prefixes, not arbitrary substrings of the actor names.
+     */
+    public static final String ACTOR_TOKENS = "ActorTokens";
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Attributes needed to build a de.bigdata.osm.Event - used as query projection
+     * so that the remaining attributes are never decoded
+     */
+    public static final String[] SERVING_ATTRIBUTES = new String[] {
+        Attributes.geom.getName(),
+        Attributes.EventCode.getName(),
+        Attributes.SQLDATE.getName(),
+        Attributes.Actor1Name.getName(),
+        Attributes.Actor2Name.getName(),
+        Attributes.ActionGeo_FullName.getName(),
+        Attributes.SOURCEURL.getName()
+    };
+
+    /**
+     * Columns stored in the serving feature type, see {@link #buildServingFeatureType(String)}:
+     * everything read by {@link #SERVING_ATTRIBUTES}, the event filters, sampling and the BIN output
+     */
+    public static final Set<Attributes> SERVING_TYPE_ATTRIBUTES = Collections.unmodifiableSet(EnumSet.of(
+            Attributes.GLOBALEVENTID, Attributes.SQLDATE, Attributes.Actor1Name, Attributes.Actor2Name,
+            Attributes.EventCode, Attributes.EventBaseCode, Attributes.EventRootCode,
+            Attributes.ActionGeo_FullName, Attributes.geom, Attributes.SOURCEURL));
+
+    /**
+     * Attributes needed for the per-coordinate summary of the event circles
+     */
+    public static final String[] SUMMARY_ATTRIBUTES = new String[] {
+        Attributes.geom.getName()
+    };
+
     /**
      * Builds the feature type for the GDELT data set
      *
@@ -110,17 +167,54 @@ public class GdeltFeature {
      * @throws SchemaException
      */
     public static SimpleFeatureType buildGdeltFeatureType(String featureName) throws SchemaException {
+        return buildFeatureType(featureName, EnumSet.allOf(Attributes.class));
+    }
+
+    /**
+     * Builds the narrow feature type holding only {@link #SERVING_TYPE_ATTRIBUTES} and the actor tokens.
+     * GeoMesa creates separate Z3, record and attribute tables per feature type, so map queries
+     * against this type never read or decode the remaining GDELT columns of the full record.
+     *
+     * @param featureName name of the serving type, e.g. "event_serving"
+     * @return feature type with the same indexes and start time as the full type
+     * @throws SchemaException
+     */
+    public static SimpleFeatureType buildServingFeatureType(String featureName) throws SchemaException {
+        return buildFeatureType(featureName, SERVING_TYPE_ATTRIBUTES);
+    }
+
+    /**
+     * Copies the serving attributes of a full GDELT feature - to be called by the ingest
+     * after {@link #setActorTokens(SimpleFeature)}, the feature id is kept
+     *
+     * @param feature feature of the type built by {@link #buildGdeltFeatureType(String)}
+     * @param servingType type built by {@link #buildServingFeatureType(String)}
+     * @return feature of the serving type
+     */
+    public static SimpleFeature toServingFeature(SimpleFeature feature, SimpleFeatureType servingType) {
+        return SimpleFeatureBuilder.retype(feature, servingType);
+    }
+
+    private static SimpleFeatureType buildFeatureType(String featureName, Set<Attributes> included)
+            throws SchemaException {
 
         List<String> attributes = new ArrayList<String>();
         for (Attributes attribute : Attributes.values()) {
+            if (!included.contains(attribute)) {
+                continue;
+            }
             if (attribute == Attributes.geom) {
                 // set geom to be the default geometry for geomesa by adding a *
                 attributes.add("*geom:Point:srid=4326");
+            } else if (INDEXED_ATTRIBUTES.contains(attribute)) {
+                attributes.add(attribute.name() + ":" + attribute.getType() + ":index=true");
             } else {
                 attributes.add(attribute.name() + ":" + attribute.getType());
             }
         }
 
+        attributes.add(ACTOR_TOKENS + ":List[String]:index=true");
+
         String spec = Joiner.on(",").join(attributes);
 
         SimpleFeatureType featureType = DataUtilities.createType(featureName, spec);
@@ -128,4 +222,50 @@ public class GdeltFeature {
         featureType.getUserData().put(Constants.SF_PROPERTY_START_TIME, Attributes.SQLDATE.name());
         return featureType;
     }
+
+    /**
+     * Splits free text into the tokens stored in {@link #ACTOR_TOKENS}
+     *
+     * @param text actor name or search keyword, may be null
+     * @return distinct upper-case tokens in order of appearance
+     */
+    public static List<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<String>();
+        if (text != null) {
+            for (String token : TOKEN_SEPARATOR.split(text.toUpperCase(Locale.ROOT))) {
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return new ArrayList<String>(tokens);
+    }
+
+    /**
+     * Prefix of the tokens taken from one actor, so that all words of a multi-word keyword
+     * have to match the same actor name
+     *
+     * @param actor 1 for Actor1Name, 2 for Actor2Name
+     * @return prefix such as "1:"
+     */
+    public static String actorTokenPrefix(int actor) {
+        return actor + ":";
+    }
+
+    /**
+     * Fills the derived token attribute from both actor names - to be called by the ingest
+     * after all GDELT columns have been set
+     *
+     * @param feature feature of the type built by {@link #buildGdeltFeatureType(String)}
+     */
+    public static void setActorTokens(SimpleFeature feature) {
+        List<String> tokens = new ArrayList<String>();
+        for (String token : tokenize((String) feature.getAttribute(Attributes.Actor1Name.getName()))) {
+            tokens.add(actorTokenPrefix(1) + token);
+        }
+        for (String token : tokenize((String) feature.getAttribute(Attributes.Actor2Name.getName()))) {
+            tokens.add(actorTokenPrefix(2) + token);
+        }
+        feature.setAttribute(ACTOR_TOKENS, tokens);
+    }
 }
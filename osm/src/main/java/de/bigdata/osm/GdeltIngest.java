@@ -0,0 +1,732 @@
+package de.bigdata.osm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.factory.Hints;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Ingest der GDELT-Exporte (Tab-getrennt, eine Zeile pro Event, ungepackt) in den vollstaendigen
+ * FeatureType, den schmalen FeatureType der Kartenabfragen und den Tageswuerfel.
+ * Grosse Dateien werden in Byte-Bereiche geteilt, die ein Pool von Threads parallel liest und in
+ * Features umwandelt. Die Features gehen in Paketen an wenige Writer-Threads, die jeweils einen
+ * FeatureWriter pro FeatureType offen halten, so dass die BatchWriter von GeoMesa gut gefuellt werden.
+ * <p>
+ * Aufruf: <code>java de.bigdata.osm.GdeltIngest [-threads N] datei...</code>, die Verbindung wird
+ * wie in der Webapp aus <code>osm.properties</code> bzw. der System-Property <code>osm.config</code> gelesen.
+ * Mit <code>-rollup yyyyMMdd yyyyMMdd</code> wird nur der Tageswuerfel fuer die Tage des Zeitraums aus den
+ * vorhandenen Events neu aufgebaut, z.B. bevor <code>osm.rollup.fromDate</code> vorverlegt wird.
+ * Die Webapp liest den schmalen FeatureType erst mit <code>osm.serving.enabled=true</code>, da er nur
+ * die Events enthaelt, die ueber diesen Ingest geschrieben wurden.
+ * Ist <code>osm.live.streamAddress</code> gesetzt, gehen die geschriebenen Events zusaetzlich ueber
+ * {@link LiveSource} an die Webapp, die sie an die Frontends und den HotTier verteilt.
+ *
+ */
+public class GdeltIngest {
+
+	private static final Logger LOG = Logger.getLogger(GdeltIngest.class.getName());
+
+	// Spalten der Exporte in der Reihenfolge von GdeltFeature.Attributes, geom ist keine Spalte.
+	// SOURCEURL fehlt in den historischen Dateien vor April 2013.
+	private static final List<GdeltFeature.Attributes> COLUMNS = columns();
+	private static final int ID_COLUMN = COLUMNS.indexOf(GdeltFeature.Attributes.GLOBALEVENTID);
+	private static final int DATE_COLUMN = COLUMNS.indexOf(GdeltFeature.Attributes.SQLDATE);
+	private static final int LAT_COLUMN = COLUMNS.indexOf(GdeltFeature.Attributes.ActionGeo_Lat);
+	private static final int LON_COLUMN = COLUMNS.indexOf(GdeltFeature.Attributes.ActionGeo_Long);
+	private static final long MEGABYTE = 1024L * 1024;
+	// Wartezeit beim Einreihen eines Pakets, danach wird auf einen Fehler der Writer geprueft
+	private static final long OFFER_MILLIS = 1000;
+
+	private final DataStore store;
+	private final String featureTypeName;
+	private final String servingTypeName;
+	private final String rollupTypeName;
+	private final int threads;
+	private final int writers;
+	private final int batchSize;
+	private final long splitBytes;
+	private final String liveAddress;
+	// Verbindung zur Quelle der Webapp waehrend eines Ingests, NULL ohne Quelle oder nach einem Fehler
+	private volatile LiveSource live;
+
+	/**
+	 * @param store DataStore aus {@link DataStoreManager#createDataStore()}
+	 * @param manager Konfiguration mit den Namen der FeatureTypes und den Einstellungen <code>osm.ingest.*</code>
+	 * @param threads Anzahl der Threads, die Zeilen lesen und umwandeln
+	 */
+	public GdeltIngest(DataStore store, DataStoreManager manager, int threads) {
+		this.store = store;
+		this.featureTypeName = manager.getFeatureTypeName();
+		this.servingTypeName = manager.getServingFeatureTypeName();
+		this.rollupTypeName = manager.getRollupTypeName();
+		this.threads = Math.max(1, threads);
+		this.writers = Math.max(1, Integer.parseInt(manager.getSetting("ingest.writers", "4")));
+		this.batchSize = Math.max(1, Integer.parseInt(manager.getSetting("ingest.batchSize", "1000")));
+		this.splitBytes = Math.max(1, Long.parseLong(manager.getSetting("ingest.splitMegabytes", "64"))) * MEGABYTE;
+		this.liveAddress = manager.getSetting("live.streamAddress", "");
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<File> files = new ArrayList<File>();
+		Date rollupFrom = null;
+		Date rollupTo = null;
+		for (int i = 0; i < args.length; i++) {
+			if ("-threads".equals(args[i]) && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if ("-rollup".equals(args[i]) && i + 2 < args.length) {
+				SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+				format.setLenient(false);
+				rollupFrom = format.parse(args[++i]);
+				rollupTo = format.parse(args[++i]);
+			} else {
+				files.add(new File(args[i]));
+			}
+		}
+		if (files.isEmpty() && rollupFrom == null) {
+			System.err.println("Aufruf: java " + GdeltIngest.class.getName() + " [-threads N] datei...");
+			System.err.println("        java " + GdeltIngest.class.getName() + " -rollup yyyyMMdd yyyyMMdd");
+			System.exit(1);
+		}
+
+		Properties config = DataStoreManager.loadConfig(null);
+		DataStoreManager manager = new DataStoreManager(config);
+		DataStore store = manager.createDataStore();
+		try {
+			GdeltIngest ingest = new GdeltIngest(store, manager, threads);
+			if (rollupFrom != null) {
+				System.out.println(ingest.rebuildRollup(rollupFrom, rollupTo) + " Zellen des Tageswuerfels geschrieben");
+			}
+			if (files.isEmpty()) {
+				return;
+			}
+			Result result = ingest.run(files);
+			System.out.println(result.getRows() + " Events in " + result.getMillis() + " ms ("
+					+ Math.round(result.getRowsPerSecond()) + " Events/s, " + threads + " Threads), "
+					+ result.getSkipped() + " Zeilen uebersprungen");
+		} finally {
+			store.dispose();
+		}
+	}
+
+	/**
+	 * Einlesen der Dateien. Fehlende FeatureTypes werden angelegt und bereits vorhandene Events mit
+	 * derselben GLOBALEVENTID ueberschrieben. Danach wird der Tageswuerfel fuer alle Tage der Dateien
+	 * aus den Events neu aufgebaut, ein erneuter Ingest zaehlt die Events daher nicht doppelt.
+	 * @param files GDELT-Exporte als Textdateien
+	 * @return Anzahl der geschriebenen und uebersprungenen Zeilen
+	 * @throws IOException wenn eine Datei nicht gelesen oder ein Paket nicht geschrieben werden kann
+	 * @throws SchemaException
+	 * @throws InterruptedException
+	 */
+	public Result run(List<File> files) throws IOException, SchemaException, InterruptedException {
+		long start = System.currentTimeMillis();
+		createSchemas();
+		SimpleFeatureType featureType = store.getSchema(featureTypeName);
+		SimpleFeatureType servingType = store.getSchema(servingTypeName);
+		// Tabellen aelterer Ingests haben kein ActorTokens, dort bleibt es bei der Suche mit LIKE
+		boolean actorTokens = featureType.indexOf(GdeltFeature.ACTOR_TOKENS) >= 0;
+		if (!actorTokens) {
+			LOG.warning("FeatureType " + featureTypeName + " hat kein Attribut " + GdeltFeature.ACTOR_TOKENS
+					+ ", osm.keywords.tokenIndex darf fuer diese Tabellen nicht eingeschaltet werden");
+		}
+
+		// begrenzte Warteschlange, damit die Parser nicht beliebig weit vor den Writern liegen
+		BlockingQueue<List<SimpleFeature>> batches = new ArrayBlockingQueue<List<SimpleFeature>>(writers * 4);
+		AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		AtomicLong rows = new AtomicLong();
+		AtomicLong skipped = new AtomicLong();
+
+		live = connectLive();
+		ExecutorService writerPool = Executors.newFixedThreadPool(writers);
+		ExecutorService parserPool = Executors.newFixedThreadPool(threads);
+		List<Writer> writerTasks = new ArrayList<Writer>(writers);
+		List<Future<?>> writerFutures = new ArrayList<Future<?>>(writers);
+		try {
+			for (int i = 0; i < writers; i++) {
+				Writer writer = new Writer(batches, servingType, failure, rows);
+				writerTasks.add(writer);
+				writerFutures.add(writerPool.submit(writer));
+			}
+			List<Future<?>> parserFutures = new ArrayList<Future<?>>();
+			for (Range range : split(files)) {
+				Parser parser = new Parser(range, featureType, actorTokens, batches, failure, skipped);
+				parserFutures.add(parserPool.submit(parser));
+			}
+			for (Future<?> future : parserFutures) {
+				await(future, failure);
+			}
+		} finally {
+			parserPool.shutdownNow();
+			// ein leeres Paket beendet jeden Writer
+			for (int i = 0; i < writers; i++) {
+				batches.put(Collections.<SimpleFeature>emptyList());
+			}
+			for (Future<?> future : writerFutures) {
+				await(future, failure);
+			}
+			writerPool.shutdown();
+			LiveSource source = live;
+			live = null;
+			if (source != null) {
+				source.close();
+			}
+		}
+		if (failure.get() != null) {
+			throw new IOException("Ingest abgebrochen", failure.get());
+		}
+
+		Set<Date> days = new HashSet<Date>();
+		for (Writer writer : writerTasks) {
+			days.addAll(writer.days);
+		}
+		int cells = RollupCube.rebuild(store, featureTypeName, rollupTypeName, days);
+		long millis = System.currentTimeMillis() - start;
+		LOG.info(rows.get() + " Events und " + cells + " Zellen des Tageswuerfels geschrieben");
+		return new Result(rows.get(), skipped.get(), millis);
+	}
+
+	/**
+	 * Neuaufbau des Tageswuerfels aus den vorhandenen Events, z.B. fuer Tage aus einem frueheren Ingest
+	 * @param from erster Tag
+	 * @param to letzter Tag (einschliesslich)
+	 * @return Anzahl der geschriebenen Zellen
+	 * @throws IOException
+	 * @throws SchemaException
+	 */
+	public int rebuildRollup(Date from, Date to) throws IOException, SchemaException {
+		createSchemas();
+		List<Date> days = new ArrayList<Date>();
+		for (Date day = PageCursor.startOfDay(from); !day.after(to); day = PageCursor.nextDay(day)) {
+			days.add(day);
+		}
+		return RollupCube.rebuild(store, featureTypeName, rollupTypeName, days);
+	}
+
+	/**
+	 * Verbinden mit der Quelle der Webapp. Ist sie nicht erreichbar, laeuft der Ingest ohne Weitergabe,
+	 * die Webapp liest die Events dann beim naechsten Neuladen des HotTiers aus Accumulo.
+	 * @return Verbindung oder NULL
+	 */
+	private LiveSource connectLive() {
+		if (liveAddress.isEmpty()) {
+			return null;
+		}
+		try {
+			return new LiveSource(liveAddress);
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Quelle fuer neue Events unter " + liveAddress + " nicht erreichbar", e);
+			return null;
+		} catch (IllegalArgumentException e) {
+			LOG.log(Level.WARNING, "osm.live.streamAddress ist keine Adresse host:port", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Weitergabe eines geschriebenen Pakets an die Webapp. Ein Fehler beendet nur die Weitergabe, nicht den Ingest.
+	 * @param batch geschriebene Features
+	 */
+	private void publish(List<SimpleFeature> batch) {
+		LiveSource source = live;
+		if (source == null) {
+			return;
+		}
+		try {
+			source.send(batch);
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Weitergabe an " + liveAddress + " abgebrochen", e);
+			live = null;
+			source.close();
+		}
+	}
+
+	private void createSchemas() throws IOException, SchemaException {
+		List<String> typeNames = Arrays.asList(store.getTypeNames());
+		if (!typeNames.contains(featureTypeName)) {
+			store.createSchema(GdeltFeature.buildGdeltFeatureType(featureTypeName));
+		}
+		if (!typeNames.contains(servingTypeName)) {
+			store.createSchema(GdeltFeature.buildServingFeatureType(servingTypeName));
+		}
+		if (!typeNames.contains(rollupTypeName)) {
+			store.createSchema(RollupCube.buildFeatureType(rollupTypeName));
+		}
+	}
+
+	/**
+	 * Aufteilen der Dateien in Byte-Bereiche von etwa <code>osm.ingest.splitMegabytes</code>
+	 * @param files GDELT-Exporte
+	 * @return Bereiche, die unabhaengig voneinander gelesen werden koennen
+	 * @throws IOException wenn eine Datei nicht existiert
+	 */
+	List<Range> split(List<File> files) throws IOException {
+		List<Range> ranges = new ArrayList<Range>();
+		for (File file : files) {
+			if (!file.isFile()) {
+				throw new IOException("Datei " + file + " nicht gefunden");
+			}
+			long length = file.length();
+			for (long start = 0; start < length; start += splitBytes) {
+				ranges.add(new Range(file, start, Math.min(length, start + splitBytes)));
+			}
+		}
+		return ranges;
+	}
+
+	private static void await(Future<?> future, AtomicReference<Exception> failure) throws InterruptedException {
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			failure.compareAndSet(null, cause instanceof Exception ? (Exception) cause : e);
+		}
+	}
+
+	private static List<GdeltFeature.Attributes> columns() {
+		List<GdeltFeature.Attributes> columns = new ArrayList<GdeltFeature.Attributes>();
+		for (GdeltFeature.Attributes attribute : GdeltFeature.Attributes.values()) {
+			if (attribute != GdeltFeature.Attributes.geom) {
+				columns.add(attribute);
+			}
+		}
+		return Collections.unmodifiableList(columns);
+	}
+
+	/**
+	 * Ergebnis eines Ingests
+	 *
+	 */
+	public static class Result {
+
+		private final long rows;
+		private final long skipped;
+		private final long millis;
+
+		Result(long rows, long skipped, long millis) {
+			this.rows = rows;
+			this.skipped = skipped;
+			this.millis = millis;
+		}
+
+		// Anzahl der geschriebenen Events
+		public long getRows() {
+			return rows;
+		}
+
+		// Zeilen ohne Koordinate oder mit ungueltigen Werten
+		public long getSkipped() {
+			return skipped;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		public double getRowsPerSecond() {
+			return millis > 0 ? rows * 1000.0 / millis : rows;
+		}
+	}
+
+	/**
+	 * Byte-Bereich einer Datei. Zum Bereich gehoeren alle Zeilen, die in ihm beginnen,
+	 * die letzte Zeile wird also ueber das Ende hinaus gelesen.
+	 *
+	 */
+	static class Range {
+
+		final File file;
+		final long start;
+		final long end;
+
+		Range(File file, long start, long end) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Liest die Zeilen, die in einem Bereich beginnen. Aneinandergrenzende Bereiche liefern so jede
+	 * Zeile der Datei genau einmal, auch wenn eine Grenze mitten in einer Zeile liegt.
+	 *
+	 */
+	static class RangeReader implements Closeable {
+
+		private final RandomAccessFile file;
+		private final LineReader reader;
+		private final long end;
+
+		RangeReader(Range range) throws IOException {
+			this.file = new RandomAccessFile(range.file, "r");
+			this.end = range.end;
+			try {
+				reader = new LineReader(file.getChannel(), range.start > 0 ? range.start - 1 : 0);
+				if (range.start > 0) {
+					// Rest der Zeile, die im vorherigen Bereich beginnt
+					reader.readLine();
+				}
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return naechste Zeile ohne Zeilenumbruch oder NULL am Ende des Bereichs
+		 * @throws IOException
+		 */
+		String readLine() throws IOException {
+			if (reader.getPosition() >= end) {
+				return null;
+			}
+			return reader.readLine();
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+
+	/**
+	 * Liest die Zeilen eines Bereichs, wandelt sie in Features um und reiht sie paketweise ein
+	 *
+	 */
+	private class Parser implements Runnable {
+
+		private final Range range;
+		private final BlockingQueue<List<SimpleFeature>> batches;
+		private final AtomicReference<Exception> failure;
+		private final AtomicLong skipped;
+		private final LineParser lineParser;
+
+		Parser(Range range, SimpleFeatureType featureType, boolean actorTokens,
+				BlockingQueue<List<SimpleFeature>> batches, AtomicReference<Exception> failure, AtomicLong skipped) {
+			this.range = range;
+			this.batches = batches;
+			this.failure = failure;
+			this.skipped = skipped;
+			this.lineParser = new LineParser(featureType, actorTokens);
+		}
+
+		@Override
+		public void run() {
+			try {
+				parse();
+			} catch (IOException e) {
+				failure.compareAndSet(null, e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void parse() throws IOException, InterruptedException {
+			RangeReader reader = new RangeReader(range);
+			try {
+				List<SimpleFeature> batch = new ArrayList<SimpleFeature>(batchSize);
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty()) {
+						continue;
+					}
+					SimpleFeature feature = lineParser.parse(line);
+					if (feature == null) {
+						skipped.incrementAndGet();
+						continue;
+					}
+					batch.add(feature);
+					if (batch.size() >= batchSize) {
+						if (!enqueue(batch)) {
+							return;
+						}
+						batch = new ArrayList<SimpleFeature>(batchSize);
+					}
+				}
+				if (!batch.isEmpty()) {
+					enqueue(batch);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		/**
+		 * Einreihen eines Pakets, solange die Writer nicht mit einem Fehler abgebrochen haben
+		 * @param batch Features des Pakets
+		 * @return false, wenn der Ingest abgebrochen wurde
+		 * @throws InterruptedException
+		 */
+		private boolean enqueue(List<SimpleFeature> batch) throws InterruptedException {
+			while (!batches.offer(batch, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (failure.get() != null) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Umwandeln der Zeilen eines Exports in Features des vollstaendigen FeatureTypes, nicht threadsicher
+	 *
+	 */
+	static class LineParser {
+
+		private final SimpleFeatureBuilder builder;
+		private final boolean actorTokens;
+		private final GeometryFactory geometryFactory = new GeometryFactory();
+		// SQLDATE in der Zeitzone von PageCursor.startOfDay, SimpleDateFormat ist nicht threadsicher
+		private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
+
+		/**
+		 * @param featureType FeatureType aus {@link GdeltFeature#buildGdeltFeatureType(String)}
+		 * @param actorTokens true, wenn der FeatureType {@link GdeltFeature#ACTOR_TOKENS} enthaelt
+		 */
+		LineParser(SimpleFeatureType featureType, boolean actorTokens) {
+			this.builder = new SimpleFeatureBuilder(featureType);
+			this.actorTokens = actorTokens;
+			dateFormat.setLenient(false);
+		}
+
+		/**
+		 * Umwandeln einer Zeile
+		 * @param line Zeile eines GDELT-Exports ohne Zeilenumbruch
+		 * @return Feature mit GLOBALEVENTID als ID oder NULL, wenn die Zeile nicht verwendet werden kann
+		 */
+		SimpleFeature parse(String line) {
+			String[] values = line.split("\t", -1);
+			if (values.length < COLUMNS.size() - 1) {
+				return null;
+			}
+			// ohne ID, Datum oder Koordinate der Handlung kann das Event nicht in den Z3-Index geschrieben werden
+			String id = values[ID_COLUMN];
+			if (id.isEmpty() || values[DATE_COLUMN].isEmpty() || values[LAT_COLUMN].isEmpty()
+					|| values[LON_COLUMN].isEmpty()) {
+				return null;
+			}
+			try {
+				for (int i = 0; i < COLUMNS.size(); i++) {
+					GdeltFeature.Attributes attribute = COLUMNS.get(i);
+					builder.set(attribute.getName(), i < values.length ? parseValue(attribute, values[i]) : null);
+				}
+				builder.set(GdeltFeature.Attributes.geom.getName(), geometryFactory.createPoint(new Coordinate(
+						Double.parseDouble(values[LON_COLUMN]), Double.parseDouble(values[LAT_COLUMN]))));
+			} catch (NumberFormatException e) {
+				builder.reset();
+				return null;
+			} catch (ParseException e) {
+				builder.reset();
+				return null;
+			}
+			// GLOBALEVENTID als ID, damit ein erneuter Ingest die Events ersetzt statt sie zu verdoppeln
+			SimpleFeature feature = builder.buildFeature(id);
+			if (actorTokens) {
+				GdeltFeature.setActorTokens(feature);
+			}
+			return feature;
+		}
+
+		private Object parseValue(GdeltFeature.Attributes attribute, String value) throws ParseException {
+			if (value.isEmpty()) {
+				return null;
+			}
+			if ("Integer".equals(attribute.getType())) {
+				return Integer.valueOf(value);
+			} else if ("Float".equals(attribute.getType())) {
+				return Float.valueOf(value);
+			} else if ("Date".equals(attribute.getType())) {
+				return dateFormat.parse(value);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Schreibt die Pakete der Parser in den vollstaendigen und den schmalen FeatureType
+	 * und merkt sich die Tage fuer den Neuaufbau des Tageswuerfels
+	 *
+	 */
+	private class Writer implements Runnable {
+
+		private final BlockingQueue<List<SimpleFeature>> batches;
+		private final SimpleFeatureType servingType;
+		private final AtomicReference<Exception> failure;
+		private final AtomicLong rows;
+		// Beginn der Tage der geschriebenen Events
+		private final Set<Date> days = new HashSet<Date>();
+
+		Writer(BlockingQueue<List<SimpleFeature>> batches, SimpleFeatureType servingType,
+				AtomicReference<Exception> failure, AtomicLong rows) {
+			this.batches = batches;
+			this.servingType = servingType;
+			this.failure = failure;
+			this.rows = rows;
+		}
+
+		@Override
+		public void run() {
+			FeatureWriter<SimpleFeatureType, SimpleFeature> full = null;
+			FeatureWriter<SimpleFeatureType, SimpleFeature> serving = null;
+			try {
+				full = store.getFeatureWriterAppend(featureTypeName, Transaction.AUTO_COMMIT);
+				serving = store.getFeatureWriterAppend(servingTypeName, Transaction.AUTO_COMMIT);
+				List<SimpleFeature> batch;
+				while (!(batch = batches.take()).isEmpty()) {
+					// nach einem Fehler werden die Pakete nur noch abgeholt, damit kein Parser blockiert
+					if (failure.get() != null) {
+						continue;
+					}
+					for (SimpleFeature feature : batch) {
+						write(full, feature);
+						write(serving, GdeltFeature.toServingFeature(feature, servingType));
+						Date date = (Date) feature.getAttribute(GdeltFeature.Attributes.SQLDATE.getName());
+						if (date != null) {
+							days.add(PageCursor.startOfDay(date));
+						}
+					}
+					rows.addAndGet(batch.size());
+					publish(batch);
+				}
+			} catch (IOException e) {
+				failure.compareAndSet(null, e);
+				drain();
+			} catch (RuntimeException e) {
+				failure.compareAndSet(null, e);
+				drain();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				close(full);
+				close(serving);
+			}
+		}
+
+		private void write(FeatureWriter<SimpleFeatureType, SimpleFeature> writer, SimpleFeature feature)
+				throws IOException {
+			SimpleFeature next = writer.next();
+			next.setAttributes(feature.getAttributes());
+			next.getUserData().put(Hints.PROVIDED_FID, feature.getID());
+			writer.write();
+		}
+
+		// Abholen der restlichen Pakete bis zum leeren Paket
+		private void drain() {
+			try {
+				List<SimpleFeature> batch;
+				do {
+					batch = batches.take();
+				} while (!batch.isEmpty());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void close(FeatureWriter<SimpleFeatureType, SimpleFeature> writer) {
+			if (writer == null) {
+				return;
+			}
+			try {
+				writer.close();
+			} catch (IOException e) {
+				failure.compareAndSet(null, e);
+			}
+		}
+	}
+
+	/**
+	 * Zeilenweises Lesen ab einer Byte-Position, die Position nach jeder Zeile ist bekannt.
+	 * Die Exporte sind UTF-8, ein Zeilenumbruch kommt in Mehrbyte-Zeichen nicht vor.
+	 *
+	 */
+	private static class LineReader {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		private byte[] line = new byte[1024];
+		private long position;
+
+		LineReader(FileChannel channel, long position) throws IOException {
+			this.channel = channel;
+			this.position = position;
+			channel.position(position);
+			buffer.flip();
+		}
+
+		long getPosition() {
+			return position;
+		}
+
+		/**
+		 * @return naechste Zeile ohne Zeilenumbruch oder NULL am Dateiende
+		 * @throws IOException
+		 */
+		String readLine() throws IOException {
+			int length = 0;
+			boolean read = false;
+			while (true) {
+				if (!buffer.hasRemaining()) {
+					buffer.clear();
+					int count = channel.read(buffer);
+					buffer.flip();
+					if (count <= 0) {
+						break;
+					}
+				}
+				read = true;
+				byte b = buffer.get();
+				position++;
+				if (b == '\n') {
+					break;
+				}
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = b;
+			}
+			if (!read) {
+				return null;
+			}
+			if (length > 0 && line[length - 1] == '\r') {
+				length--;
+			}
+			return new String(line, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package de.bigdata.osm;
+
+import org.geotools.factory.Hints;
+import org.locationtech.geomesa.accumulo.index.Strategy$StrategyType$;
+import org.locationtech.geomesa.accumulo.index.package$QueryHints$;
+
+/**
+ * Zugriff auf die QueryHints von GeoMesa. Diese sind in Scala als Objekt im Package-Objekt
+ * org.locationtech.geomesa.accumulo.index definiert und aus Java nur ueber MODULE$ erreichbar.
+ *
+ */
+public final class GeoMesaHints {
+
+	private static final package$QueryHints$ HINTS = package$QueryHints$.MODULE$;
+
+	// Dichteberechnung im Tablet Server (Z3DensityIterator)
+	public static final Hints.Key DENSITY_BBOX = HINTS.DENSITY_BBOX_KEY();
+	public static final Hints.Key DENSITY_WIDTH = HINTS.WIDTH_KEY();
+	public static final Hints.Key DENSITY_HEIGHT = HINTS.HEIGHT_KEY();
+
+	// Zeitreihe (TemporalDensityIterator)
+	public static final Hints.Key TEMPORAL_DENSITY = HINTS.TEMPORAL_DENSITY_KEY();
+	public static final Hints.Key TIME_INTERVAL = HINTS.TIME_INTERVAL_KEY();
+	public static final Hints.Key TIME_BUCKETS = HINTS.TIME_BUCKETS_KEY();
+	public static final Hints.Key RETURN_ENCODED = HINTS.RETURN_ENCODED();
+
+	// Vorgabe des Index statt der Kostenschaetzung des QueryStrategyDecider
+	public static final Hints.Key QUERY_STRATEGY = HINTS.QUERY_STRATEGY_KEY();
+	public static final Object ATTRIBUTE_STRATEGY = Strategy$StrategyType$.MODULE$.ATTRIBUTE();
+
+	private GeoMesaHints() {
+	}
+}
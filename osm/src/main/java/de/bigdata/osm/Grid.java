@@ -0,0 +1,61 @@
+package de.bigdata.osm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Containerklasse fuer die pro Rasterzelle aggregierten Eventanzahlen
+ *
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Grid {
+
+	// Anzahl der Zellen in x- und y-Richtung
+	private int width;
+	private int height;
+	// Summe ueber alle Zellen
+	private long total;
+	private List<GridCell> cells = new ArrayList<GridCell>();
+
+	public Grid() {
+	}
+
+	public Grid(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+	public void setWidth(int width) {
+		this.width = width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+	public void setHeight(int height) {
+		this.height = height;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+	public void setTotal(long total) {
+		this.total = total;
+	}
+
+	public List<GridCell> getCells() {
+		return cells;
+	}
+	public void setCells(List<GridCell> cells) {
+		this.cells = cells;
+	}
+	public void addCell(GridCell cell) {
+		cells.add(cell);
+		total += cell.getCount();
+	}
+}
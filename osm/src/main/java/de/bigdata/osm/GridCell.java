@@ -0,0 +1,45 @@
+package de.bigdata.osm;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Containerklasse fuer eine Zelle des aggregierten Rasters
+ *
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GridCell {
+
+	private double lat;
+	private double lon;
+	private long count;
+
+	public GridCell() {
+	}
+
+	public GridCell(double lat, double lon, long count) {
+		this.lat = lat;
+		this.lon = lon;
+		this.count = count;
+	}
+
+	public double getLat() {
+		return lat;
+	}
+	public void setLat(double lat) {
+		this.lat = lat;
+	}
+
+	public double getLon() {
+		return lon;
+	}
+	public void setLon(double lon) {
+		this.lon = lon;
+	}
+
+	public long getCount() {
+		return count;
+	}
+	public void setCount(long count) {
+		this.count = count;
+	}
+}
@@ -0,0 +1,277 @@
+package de.bigdata.osm;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.filter.text.cql2.CQLException;
+
+/**
+ * Zeichnet die Heatmap einer Kachel (Spherical Mercator, 256x256 Pixel) als PNG. Die Anzahl der Events
+ * pro Pixel wird ueber den Z3DensityIterator auf den Tablet Servern gezaehlt (bzw. bei kleinen Zoomstufen
+ * aus dem {@link RollupCube}), anschliessend mit drei Box-Filtern pro Richtung weichgezeichnet
+ * (Naeherung einer Gauss-Verteilung) und ueber eine Farbskala eingefaerbt.
+ * Damit an den Kanten keine Spruenge entstehen, wird ein Rand um die Kachel mitgerechnet.
+ * Die Farbe haengt logarithmisch von der Dichte ab und wird nicht pro Kachel normiert, benachbarte
+ * Kacheln passen daher zusammen.
+ * Der Z3DensityIterator rastert linear in der geographischen Breite. Die Rasterzeilen sind deshalb hoechstens
+ * so hoch wie die schmalste Pixelzeile der Kachel, sodass jede Mercator-Pixelzeile eigene Zellen erhaelt.
+ *
+ */
+public class HeatmapRenderer {
+
+	public static final String MEDIA_TYPE = "image/png";
+
+	private static final int TILE_SIZE = 256;
+	// Anzahl der Box-Filter pro Richtung
+	private static final int PASSES = 3;
+	// Farbskala von transparent ueber blau, cyan, gruen und gelb nach rot (ARGB)
+	private static final int[] STOPS = {0x000000ff, 0x990000ff, 0xb300ffff, 0xc000ff00, 0xd9ffff00, 0xe6ff0000};
+	private static final int[] RAMP = createRamp();
+	// Obergrenze fuer die Anzahl der Rasterzeilen pro Pixelzeile, erreicht erst nahe der Pole bei kleinen Zoomstufen
+	private static final int MAX_ROWS_PER_PIXEL = 16;
+
+	private final int zoom;
+	private final int boxRadius;
+	private final int padding;
+	private final int size;
+	private final double worldPixels;
+	// Pixelkoordinate der linken oberen Ecke des Bereichs mit Rand
+	private final double originX;
+	private final double originY;
+	private final double saturation;
+
+	/**
+	 * @param z Zoomstufe
+	 * @param x Spalte der Kachel
+	 * @param y Zeile der Kachel (0 im Norden)
+	 * @param radius Radius eines Events in Pixeln
+	 * @param saturation Dichte (Events pro Flaeche eines Events), ab der die hoechste Farbe erreicht ist
+	 */
+	public HeatmapRenderer(int z, int x, int y, int radius, double saturation) {
+		this.zoom = z;
+		// Drei Box-Filter mit Radius r ergeben eine Standardabweichung von etwa sqrt(r(r+1))
+		this.boxRadius = Math.max(1, radius / 2);
+		this.padding = PASSES * boxRadius;
+		this.size = TILE_SIZE + 2 * padding;
+		this.worldPixels = TILE_SIZE * Math.pow(2, z);
+		this.originX = (double) x * TILE_SIZE - padding;
+		this.originY = (double) y * TILE_SIZE - padding;
+		this.saturation = Math.max(1, saturation);
+	}
+
+	/**
+	 * Abfrage der Dichte und Zeichnen der Kachel
+	 * @param manager Verbindung zur Datenbank
+	 * @param events Anfrage mit der BBox der Kachel und den Filtern
+	 * @return PNG der Kachel
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	public byte[] render(DataStoreManager manager, Events events) throws IOException, CQLException {
+		// Raster ueber die Kachel mit Rand, Laengengrade ausserhalb der Karte bleiben im Raster erhalten,
+		// damit die Pixel passen, die Abfrage wird aber auf die Karte begrenzt
+		Bounds padded = padded();
+		Events filter = new Events(events);
+		Bounds clamped = new Bounds();
+		clamped.setLeft(Math.max(-180, padded.getLeft()));
+		clamped.setRight(Math.min(180, padded.getRight()));
+		clamped.setTop(padded.getTop());
+		clamped.setBottom(padded.getBottom());
+		filter.setBounds(clamped);
+		filter.setZoom(zoom);
+
+		final float[] pixels = new float[size * size];
+		DensityGrid.Cells cells = new DensityGrid.Cells() {
+			@Override
+			public void add(double lon, double lat, double count) {
+				int px = (int) Math.floor((lon + 180) / 360 * worldPixels - originX);
+				int py = row(lat);
+				if (px >= 0 && px < size && py >= 0 && py < size) {
+					pixels[py * size + px] += count;
+				}
+			}
+		};
+
+		// Eine Spalte pro Pixel, die Zeilen siehe rows()
+		DensityGrid densityGrid = new DensityGrid(padded, size, rows());
+		boolean rollup = RollupCube.canAnswer(filter) && new DensityGrid(padded, size, size).isCoarserThanRollup()
+				&& manager.hasRollup(filter);
+		SimpleFeatureIterator iterator = manager.query(rollup
+				? RollupCube.createQuery(manager.getRollupTypeName(), filter)
+				: densityGrid.createQuery(manager.getServingTypeName(), EventFilter.create(manager, filter)));
+		try {
+			if (rollup) {
+				densityGrid.collectRollup(iterator, cells);
+			} else {
+				densityGrid.collect(iterator, cells);
+			}
+		} finally {
+			iterator.close();
+		}
+		return encode(colorize(blur(pixels)));
+	}
+
+	/**
+	 * @return Koordinatenbereich der Kachel mit Rand
+	 */
+	Bounds padded() {
+		Bounds padded = new Bounds();
+		padded.setLeft(lon(originX));
+		padded.setRight(lon(originX + size));
+		padded.setTop(lat(originY));
+		padded.setBottom(lat(originY + size));
+		return padded;
+	}
+
+	/**
+	 * @return Kantenlaenge des Bereichs mit Rand in Pixeln
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * Anzahl der Rasterzeilen fuer den Z3DensityIterator. Die Pixelzeilen werden in Mercator zum Pol hin
+	 * schmaler, bei linear in der Breite verteilten Zeilen blieben dort Pixelzeilen leer. Der Abstand der
+	 * Rasterzeilen wird deshalb hoechstens so gross gewaehlt wie die schmalste Pixelzeile, das ist die
+	 * obere bzw. untere Zeile des Bereichs.
+	 * @return Anzahl der Rasterzeilen, mindestens eine pro Pixelzeile
+	 */
+	int rows() {
+		double narrowest = Math.min(lat(originY) - lat(originY + 1), lat(originY + size - 1) - lat(originY + size));
+		double height = lat(originY) - lat(originY + size);
+		// Der Abstand zwischen den Zeilen ist height / (rows - 1)
+		long rows = (long) Math.ceil(height / narrowest) + 1;
+		return (int) Math.max(size, Math.min((long) size * MAX_ROWS_PER_PIXEL, rows));
+	}
+
+	/**
+	 * @param lat Breitengrad
+	 * @return Pixelzeile im Bereich mit Rand, ausserhalb kleiner 0 bzw. ab {@link #getSize()}
+	 */
+	int row(double lat) {
+		return (int) Math.floor(mercatorPixel(lat) - originY);
+	}
+
+	/**
+	 * Weichzeichnen mit je {@value #PASSES} Box-Filtern in x- und y-Richtung. Die Summe bleibt erhalten,
+	 * anschliessend wird so skaliert, dass ein einzelnes Event in der Mitte den Wert 1 ergibt.
+	 * @param pixels Anzahl der Events pro Pixel, zeilenweise
+	 * @return Dichte pro Pixel in Events pro Flaeche eines Events
+	 */
+	private float[] blur(float[] pixels) {
+		float[] line = new float[size];
+		float[] result = new float[size];
+		for (int row = 0; row < size; row++) {
+			for (int i = 0; i < size; i++) {
+				line[i] = pixels[row * size + i];
+			}
+			boxBlur(line, result);
+			for (int i = 0; i < size; i++) {
+				pixels[row * size + i] = line[i];
+			}
+		}
+		for (int column = 0; column < size; column++) {
+			for (int i = 0; i < size; i++) {
+				line[i] = pixels[i * size + column];
+			}
+			boxBlur(line, result);
+			for (int i = 0; i < size; i++) {
+				pixels[i * size + column] = line[i];
+			}
+		}
+		float peak = peak();
+		float scale = 1 / (peak * peak);
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] *= scale;
+		}
+		return pixels;
+	}
+
+	// Mehrfacher gleitender Mittelwert einer Zeile, Werte ausserhalb gelten als 0
+	private void boxBlur(float[] line, float[] buffer) {
+		int n = line.length;
+		float width = 2 * boxRadius + 1;
+		for (int pass = 0; pass < PASSES; pass++) {
+			float sum = 0;
+			for (int i = 0; i < boxRadius && i < n; i++) {
+				sum += line[i];
+			}
+			for (int i = 0; i < n; i++) {
+				if (i + boxRadius < n) {
+					sum += line[i + boxRadius];
+				}
+				if (i - boxRadius - 1 >= 0) {
+					sum -= line[i - boxRadius - 1];
+				}
+				buffer[i] = sum / width;
+			}
+			System.arraycopy(buffer, 0, line, 0, n);
+		}
+	}
+
+	// Wert in der Mitte nach dem Weichzeichnen eines einzelnen Events in einer Richtung
+	private float peak() {
+		float[] line = new float[2 * padding + 1];
+		line[padding] = 1;
+		boxBlur(line, new float[line.length]);
+		return line[padding];
+	}
+
+	// Ausschneiden der Kachel ohne Rand und Einfaerben
+	private BufferedImage colorize(float[] density) {
+		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+		double max = Math.log1p(saturation);
+		int[] row = new int[TILE_SIZE];
+		for (int y = 0; y < TILE_SIZE; y++) {
+			for (int x = 0; x < TILE_SIZE; x++) {
+				float value = density[(y + padding) * size + x + padding];
+				double intensity = Math.min(1, Math.log1p(value) / max);
+				row[x] = RAMP[(int) (intensity * (RAMP.length - 1))];
+			}
+			image.setRGB(0, y, TILE_SIZE, 1, row, 0, TILE_SIZE);
+		}
+		return image;
+	}
+
+	private static byte[] encode(BufferedImage image) throws IOException {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		return png.toByteArray();
+	}
+
+	// Lineare Interpolation zwischen den Farben der Skala, der erste Eintrag ist transparent
+	private static int[] createRamp() {
+		int[] ramp = new int[256];
+		for (int i = 1; i < ramp.length; i++) {
+			double position = (double) i / (ramp.length - 1) * (STOPS.length - 1);
+			int stop = Math.min(STOPS.length - 2, (int) position);
+			double t = position - stop;
+			int color = 0;
+			for (int shift = 0; shift < 32; shift += 8) {
+				int from = (STOPS[stop] >>> shift) & 0xff;
+				int to = (STOPS[stop + 1] >>> shift) & 0xff;
+				color |= ((int) Math.round(from + (to - from) * t)) << shift;
+			}
+			ramp[i] = color;
+		}
+		return ramp;
+	}
+
+	private double lon(double pixelX) {
+		return pixelX / worldPixels * 360 - 180;
+	}
+
+	private double lat(double pixelY) {
+		return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * pixelY / worldPixels))));
+	}
+
+	private double mercatorPixel(double lat) {
+		double sin = Math.sin(Math.toRadians(lat));
+		return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldPixels;
+	}
+}
@@ -0,0 +1,67 @@
+package de.bigdata.osm;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Containerklasse fuer die Anzahl der Events pro Zeitintervall
+ *
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Histogram {
+
+	// Beginn des ersten Intervalls in Millisekunden seit 1970
+	private long start;
+	// Laenge eines Intervalls in Millisekunden
+	private long bucketMillis;
+	// Summe ueber alle Intervalle
+	private long total;
+	private long[] counts;
+
+	public Histogram() {
+	}
+
+	public Histogram(long start, long bucketMillis, int buckets) {
+		this.start = start;
+		this.bucketMillis = bucketMillis;
+		this.counts = new long[buckets];
+	}
+
+	public long getStart() {
+		return start;
+	}
+	public void setStart(long start) {
+		this.start = start;
+	}
+
+	public long getBucketMillis() {
+		return bucketMillis;
+	}
+	public void setBucketMillis(long bucketMillis) {
+		this.bucketMillis = bucketMillis;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+	public void setTotal(long total) {
+		this.total = total;
+	}
+
+	public long[] getCounts() {
+		return counts;
+	}
+	public void setCounts(long[] counts) {
+		this.counts = counts;
+	}
+	public void add(long time, long count) {
+		// Zeiten vor dem Beginn zuerst pruefen, die Division rundet Richtung 0
+		if (time < start) {
+			return;
+		}
+		long bucket = (time - start) / bucketMillis;
+		if (bucket < counts.length) {
+			counts[(int) bucket] += count;
+			total += count;
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.filter.text.cql2.CQLException;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Die Events der letzten <code>osm.hot.days</code> Tage im Speicher, damit die haeufigen Anfragen auf
+ * die aktuellen Tage nicht nach Accumulo gehen. Aufgebaut wie der BucketIndex von GeoMesa (Raster mit
+ * einer Liste pro Zelle), aber mit einem Index pro Tag: pro Tag liegen die Attribute spaltenweise in
+ * Arrays, nach Rasterzelle sortiert, und ein Array mit dem Beginn jeder Zelle. Koordinaten und Datum sind
+ * primitiv, die Texte Verweise auf gemeinsame Instanzen, {@link Event}s werden erst fuer Treffer erzeugt.
+ * Neue Events werden bis zum naechsten Neuaufbau des Tages in einer unsortierten Liste gesammelt.
+ * Geladen wird beim Start aus Accumulo und danach regelmaessig neu, dazwischen kommen neue Events
+ * ueber {@link LiveEvents} vom Ingest, falls eine Quelle konfiguriert ist. Bis das Laden abgeschlossen
+ * ist und sobald weder ein Neuladen noch ein neues Event laenger als <code>maxAgeMillis</code> zurueckliegt,
+ * beantwortet der HotTier keine Anfragen.
+ *
+ */
+public class HotTier {
+
+	// Name des Attributs, unter dem der HotTier im ServletContext abgelegt wird
+	public static final String CONTEXT_ATTRIBUTE = HotTier.class.getName();
+
+	private static final Logger LOG = Logger.getLogger(HotTier.class.getName());
+
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	// Rasterweite in Grad, 360 x 180 Zellen pro Tag
+	private static final int CELLS_PER_DEGREE = 1;
+	private static final int COLUMNS = 360 * CELLS_PER_DEGREE;
+	private static final int ROWS = 180 * CELLS_PER_DEGREE;
+	// Groesse der unsortierten Liste, ab der ein Tag neu sortiert wird
+	static final int MAX_TAIL = 10000;
+
+	private final int days;
+	private final long maxAgeMillis;
+	// Tage nach Beginn des Tages in Millisekunden
+	private final TreeMap<Long, Day> buckets = new TreeMap<Long, Day>();
+	// Gleiche Texte (Namen, Orte, URLs) nur einmal im Speicher halten
+	private final Map<String, String> strings = new HashMap<String, String>();
+	private volatile boolean ready = false;
+	// Beginn des letzten erfolgreichen Ladens und Zeitpunkt des letzten Events aus der Quelle
+	private volatile long loadedAt = 0;
+	private volatile long fedAt = 0;
+	// Waehrend des Ladens eingetroffene Events, werden danach ohne die geladenen uebernommen
+	private List<SimpleFeature> pending = null;
+
+	/**
+	 * @param days Anzahl der Tage einschliesslich heute
+	 * @param maxAgeMillis Zeit seit dem letzten Laden oder dem letzten neuen Event, nach der
+	 *        die Tage nicht mehr als aktuell gelten
+	 */
+	public HotTier(int days, long maxAgeMillis) {
+		this.days = days;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * Liefert den im ServletContext abgelegten HotTier
+	 * @param context ServletContext der Webapp
+	 * @return {@link HotTier} oder NULL, wenn er nicht eingeschaltet ist
+	 */
+	public static HotTier get(ServletContext context) {
+		return (HotTier) context.getAttribute(CONTEXT_ATTRIBUTE);
+	}
+
+	/**
+	 * Laden der letzten Tage aus Accumulo, laeuft beim Start und danach regelmaessig in einem eigenen
+	 * Thread. Bis zum Austausch beantwortet der HotTier Anfragen weiter mit den bisherigen Tagen.
+	 * Gelesen wird {@link DataStoreManager#getServingTypeName()}, also derselbe FeatureType wie bei den
+	 * Abfragen in Accumulo.
+	 * @param manager Verbindung zur Datenbank
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	public synchronized void load(DataStoreManager manager) throws IOException, CQLException {
+		long start = System.currentTimeMillis();
+		startLoad();
+		SimpleFeatureIterator iterator = null;
+		try {
+			iterator = manager.query(createQuery(manager));
+		} finally {
+			if (iterator == null) {
+				cancelLoad();
+			}
+		}
+		load(iterator, start);
+	}
+
+	/**
+	 * Beginn des Ladens: Ab hier eintreffende Events werden vorgemerkt, bis {@link #load(SimpleFeatureIterator, long)}
+	 * die Tage austauscht
+	 */
+	void startLoad() {
+		synchronized (buckets) {
+			pending = new ArrayList<SimpleFeature>();
+		}
+		// Texte der verworfenen Tage freigeben
+		synchronized (strings) {
+			strings.clear();
+		}
+	}
+
+	private void cancelLoad() {
+		synchronized (buckets) {
+			pending = null;
+		}
+	}
+
+	private Query createQuery(DataStoreManager manager) throws IOException, CQLException {
+		Bounds world = new Bounds();
+		world.setLeft(-180);
+		world.setRight(180);
+		world.setBottom(-90);
+		world.setTop(90);
+		Events recent = new Events();
+		recent.setBounds(world);
+		recent.setDateFrom(new Date(firstDay()));
+		// GDELT enthaelt vereinzelt Events mit Datum in der Zukunft
+		recent.setDateTo(new Date(firstDay() + (days + 1) * DAY_MILLIS));
+
+		String[] properties = Arrays.copyOf(GdeltFeature.SERVING_ATTRIBUTES, GdeltFeature.SERVING_ATTRIBUTES.length + 1);
+		properties[properties.length - 1] = GdeltFeature.Attributes.GLOBALEVENTID.getName();
+		return new Query(manager.getServingTypeName(), EventFilter.create(recent, false), properties);
+	}
+
+	/**
+	 * Einlesen der Tage und Austausch gegen die bisherigen. Die seit {@link #startLoad()} vorgemerkten
+	 * Events werden danach uebernommen, soweit ihre GLOBALEVENTID nicht bereits geladen wurde.
+	 * @param iterator Ergebnis der Abfrage auf die letzten Tage, wird geschlossen
+	 * @param start Beginn des Ladens
+	 */
+	synchronized void load(SimpleFeatureIterator iterator, long start) {
+		Set<Long> loaded = new HashSet<Long>();
+		Map<Long, List<Event>> events = new HashMap<Long, List<Event>>();
+		boolean complete = false;
+		try {
+			while (iterator.hasNext()) {
+				SimpleFeature feature = iterator.next();
+				Event event = compact(Event.fromFeature(feature));
+				if (event.getSqlDate() == null) {
+					continue;
+				}
+				loaded.add(id(feature));
+				Long day = PageCursor.startOfDay(event.getSqlDate()).getTime();
+				List<Event> list = events.get(day);
+				if (list == null) {
+					list = new ArrayList<Event>();
+					events.put(day, list);
+				}
+				list.add(event);
+			}
+			complete = true;
+		} finally {
+			iterator.close();
+			if (!complete) {
+				cancelLoad();
+			}
+		}
+
+		long count = 0;
+		synchronized (buckets) {
+			buckets.clear();
+			for (Map.Entry<Long, List<Event>> entry : events.entrySet()) {
+				Day day = new Day();
+				day.index = new DayIndex(entry.getValue());
+				buckets.put(entry.getKey(), day);
+				count += entry.getValue().size();
+			}
+			for (SimpleFeature feature : pending) {
+				if (!loaded.contains(id(feature))) {
+					addLocked(feature);
+				}
+			}
+			pending = null;
+			loadedAt = start;
+			ready = true;
+		}
+		LOG.info("HotTier mit " + count + " Events in " + (System.currentTimeMillis() - start) + " ms geladen");
+	}
+
+	/**
+	 * Aufnehmen eines neu eingespielten Features, Features ausserhalb der Tage werden ignoriert
+	 * @param feature Feature mit den Attributen aus {@link GdeltFeature}
+	 */
+	public void add(SimpleFeature feature) {
+		fedAt = System.currentTimeMillis();
+		synchronized (buckets) {
+			// waehrend eines Neuladens zusaetzlich vormerken, damit das Event den Austausch uebersteht
+			if (pending != null) {
+				pending.add(feature);
+			}
+			if (ready) {
+				addLocked(feature);
+			}
+		}
+	}
+
+	private void addLocked(SimpleFeature feature) {
+		Event event = compact(Event.fromFeature(feature));
+		if (event.getSqlDate() == null) {
+			return;
+		}
+		long first = firstDay();
+		if (!buckets.isEmpty() && buckets.firstKey() < first) {
+			buckets.headMap(first).clear();
+			// Texte der entfernten Tage freigeben
+			synchronized (strings) {
+				strings.clear();
+			}
+		}
+		long key = PageCursor.startOfDay(event.getSqlDate()).getTime();
+		if (key < first) {
+			return;
+		}
+		Day day = buckets.get(key);
+		if (day == null) {
+			day = new Day();
+			buckets.put(key, day);
+		}
+		day.tail.add(event);
+		if (day.tail.size() >= MAX_TAIL) {
+			List<Event> all = day.index.toList();
+			all.addAll(day.tail);
+			day.index = new DayIndex(all);
+			day.tail = new ArrayList<Event>();
+		}
+	}
+
+	/**
+	 * Pruefen, ob der Zeitraum der Anfrage vollstaendig und aktuell im Speicher liegt
+	 * @param events Anfrage des Frontends
+	 * @return true, wenn der HotTier aktuell ist und alle Tage der Anfrage enthaelt
+	 */
+	public boolean covers(Events events) {
+		return ready && isCurrent() && events.getDateFrom() != null && events.getDateTo() != null && events.getBounds() != null
+				&& PageCursor.startOfDay(events.getDateFrom()).getTime() >= firstDay();
+	}
+
+	/**
+	 * Abfrage der Events aus dem Speicher mit denselben Filtern wie in Accumulo
+	 * @param events Anfrage des Frontends, in der eine Kuerzung vermerkt wird
+	 * @param tokenIndex true, wenn Keywords wie im Token-Index gesucht werden
+	 * @param limit Hoechstzahl der Events
+	 * @return Events der Anfrage, nach Tag sortiert
+	 */
+	public List<Event> query(Events events, boolean tokenIndex, int limit) {
+		EventFilter.Matcher matcher = EventFilter.matcher(events, tokenIndex);
+		long from = PageCursor.startOfDay(events.getDateFrom()).getTime();
+		long to = PageCursor.startOfDay(events.getDateTo()).getTime();
+		List<DayIndex> indexes = new ArrayList<DayIndex>();
+		List<Event> tail = new ArrayList<Event>();
+		if (from > to) {
+			return tail;
+		}
+		synchronized (buckets) {
+			for (Day day : buckets.subMap(from, true, to, true).values()) {
+				indexes.add(day.index);
+				tail.addAll(day.tail);
+			}
+		}
+
+		Bounds b = events.getBounds();
+		int column0 = column(b.getLeft());
+		int column1 = column(b.getRight());
+		int row0 = row(b.getBottom());
+		int row1 = row(b.getTop());
+		List<Event> result = new ArrayList<Event>();
+		for (DayIndex index : indexes) {
+			for (int row = row0; row <= row1; row++) {
+				for (int column = column0; column <= column1; column++) {
+					int cell = row * COLUMNS + column;
+					for (int i = index.cellStart[cell]; i < index.cellStart[cell + 1]; i++) {
+						// Koordinaten zuerst aus den Arrays pruefen, ohne das Event zu erzeugen
+						if (index.lon[i] < b.getLeft() || index.lon[i] > b.getRight()
+								|| index.lat[i] < b.getBottom() || index.lat[i] > b.getTop()) {
+							continue;
+						}
+						Event event = index.event(i);
+						if (matcher.matches(event) && !add(result, event, limit, events)) {
+							return result;
+						}
+					}
+				}
+			}
+		}
+		for (Event event : tail) {
+			if (matcher.matches(event) && !add(result, event, limit, events)) {
+				return result;
+			}
+		}
+		return result;
+	}
+
+	private static boolean add(List<Event> result, Event event, int limit, Events response) {
+		if (result.size() >= limit) {
+			response.setTruncated(true);
+			return false;
+		}
+		result.add(event);
+		return true;
+	}
+
+	// Aktuell, solange zuletzt geladen wurde oder die Quelle zuletzt Events geliefert hat
+	private boolean isCurrent() {
+		return System.currentTimeMillis() - Math.max(loadedAt, fedAt) <= maxAgeMillis;
+	}
+
+	// Gleiche Texte durch dieselbe Instanz ersetzen
+	private Event compact(Event event) {
+		synchronized (strings) {
+			event.setEventCode(intern(event.getEventCode()));
+			event.setActor1Name(intern(event.getActor1Name()));
+			event.setActor2Name(intern(event.getActor2Name()));
+			event.setGeoName(intern(event.getGeoName()));
+			event.setSourceURL(intern(event.getSourceURL()));
+		}
+		return event;
+	}
+
+	private String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		String existing = strings.get(value);
+		if (existing == null) {
+			strings.put(value, value);
+			return value;
+		}
+		return existing;
+	}
+
+	// Erster Tag im Speicher, der Rest des heutigen Tages zaehlt mit
+	private long firstDay() {
+		return PageCursor.startOfDay(new Date(System.currentTimeMillis() - (days - 1) * DAY_MILLIS)).getTime();
+	}
+
+	private static long id(SimpleFeature feature) {
+		Object id = feature.getAttribute(GdeltFeature.Attributes.GLOBALEVENTID.getName());
+		return id instanceof Number ? ((Number) id).longValue() : -1;
+	}
+
+	private static int column(double lon) {
+		return Math.max(0, Math.min(COLUMNS - 1, (int) Math.floor((lon + 180) * CELLS_PER_DEGREE)));
+	}
+
+	private static int row(double lat) {
+		return Math.max(0, Math.min(ROWS - 1, (int) Math.floor((lat + 90) * CELLS_PER_DEGREE)));
+	}
+
+	private static class Day {
+		// wird bei jedem Neuaufbau ersetzt, laufende Abfragen behalten den alten Index
+		private volatile DayIndex index = new DayIndex(new ArrayList<Event>());
+		private List<Event> tail = new ArrayList<Event>();
+	}
+
+	/**
+	 * Unveraenderlicher Index eines Tages: Attribute spaltenweise nach Rasterzelle sortiert, die Events
+	 * der Zelle c liegen von cellStart[c] bis cellStart[c + 1] - 1. Pro Event belegt der Index zwei
+	 * double, ein long und fuenf Verweise auf Texte, die Texte selbst teilen sich alle Events.
+	 *
+	 */
+	private static class DayIndex {
+
+		private final double[] lat;
+		private final double[] lon;
+		// SQLDATE in Millisekunden
+		private final long[] date;
+		private final String[] eventCode;
+		private final String[] actor1Name;
+		private final String[] actor2Name;
+		private final String[] geoName;
+		private final String[] sourceURL;
+		private final int[] cellStart = new int[COLUMNS * ROWS + 1];
+
+		DayIndex(List<Event> list) {
+			int n = list.size();
+			lat = new double[n];
+			lon = new double[n];
+			date = new long[n];
+			eventCode = new String[n];
+			actor1Name = new String[n];
+			actor2Name = new String[n];
+			geoName = new String[n];
+			sourceURL = new String[n];
+			int[] cells = new int[n];
+			for (int i = 0; i < n; i++) {
+				Event event = list.get(i);
+				cells[i] = row(event.getLat()) * COLUMNS + column(event.getLon());
+				cellStart[cells[i] + 1]++;
+			}
+			for (int c = 0; c < COLUMNS * ROWS; c++) {
+				cellStart[c + 1] += cellStart[c];
+			}
+			int[] next = Arrays.copyOf(cellStart, COLUMNS * ROWS);
+			for (int i = 0; i < n; i++) {
+				int position = next[cells[i]]++;
+				Event event = list.get(i);
+				lat[position] = event.getLat();
+				lon[position] = event.getLon();
+				date[position] = event.getSqlDate().getTime();
+				eventCode[position] = event.getEventCode();
+				actor1Name[position] = event.getActor1Name();
+				actor2Name[position] = event.getActor2Name();
+				geoName[position] = event.getGeoName();
+				sourceURL[position] = event.getSourceURL();
+			}
+		}
+
+		// Event an einer Position, wird bei jedem Aufruf neu erzeugt
+		Event event(int i) {
+			Event event = new Event(lat[i], lon[i]);
+			event.setSqlDate(new Date(date[i]));
+			event.setEventCode(eventCode[i]);
+			event.setActor1Name(actor1Name[i]);
+			event.setActor2Name(actor2Name[i]);
+			event.setGeoName(geoName[i]);
+			event.setSourceURL(sourceURL[i]);
+			return event;
+		}
+
+		List<Event> toList() {
+			List<Event> list = new ArrayList<Event>(lat.length);
+			for (int i = 0; i < lat.length; i++) {
+				list.add(event(i));
+			}
+			return list;
+		}
+	}
+}
@@ -2,33 +2,37 @@ package de.bigdata.osm;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.servlet.ServletContext;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
-import org.geotools.data.DataStore;
-import org.geotools.data.DataStoreFinder;
-import org.geotools.data.FeatureStore;
 import org.geotools.data.Query;
-import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.filter.text.cql2.CQLException;
-import org.locationtech.geomesa.accumulo.data.AccumuloFeatureStore;
-import org.opengis.feature.Feature;
-import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.filter.Filter;
-import org.opengis.filter.FilterFactory2;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.sun.jersey.api.core.HttpContext;
 import com.vividsolutions.jts.geom.Point;
 
 /**
@@ -40,171 +44,724 @@ import com.vividsolutions.jts.geom.Point;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Jersey {
 	
-	private Events events;
-	private FeatureStore<?,?> featureStore;
-	// FeatureTypeName, der beim Ingest angegeben wurde
-	private String simpleFeatureTypeName = "event";
+	// Vom Frontend einmal pro Seitenaufruf erzeugte ID, eine neue Abfrage ersetzt die vorherige
+	public static final String CLIENT_ID_HEADER = "X-Client-Id";
+	// Rand der BBox um die Koordinate bei /detail in Grad, die Events werden danach exakt verglichen
+	private static final double DETAIL_MARGIN = 1e-6;
 	
-	/**
-	 * Herstellung der Verbindung zur Datenbank im Konstruktor
-	 * @throws IOException
-	 */
-	public Jersey() throws IOException {
-		Map<String, String> dsConf = new HashMap<String, String>();
-    	dsConf.put("user", "root");
-    	dsConf.put("password", "P@ssw0rd");
-    	dsConf.put("instanceId", "bigdata");
-    	dsConf.put("zookeepers", "localhost:2181");
-    	dsConf.put("tableName", "gdelt");
-        dsConf.put("collectStats", "false");
-        DataStore dataStore = DataStoreFinder.getDataStore(dsConf);
-        assert dataStore != null;
-
-        // FeatureStore um Queries auf den Geomesa Daten ausfuehren zu koennen
-        featureStore = (AccumuloFeatureStore) dataStore.getFeatureSource(simpleFeatureTypeName);
-	}
+	private Events events;
+	// Laufende Abfrage dieses Requests, siehe RunningQueries
+	private RunningQueries.Ticket ticket;
+	// Stichprobe dieses Requests oder NULL, siehe Sampling
+	private Sampling sampling;
+	// Zeiten der Phasen dieses Requests, siehe MetricsFilter
+	private RequestTimings timings;
+	// Obergrenze fuer die Events dieser Anfrage, im Batch der Anteil am gemeinsamen page.maxEvents
+	private int eventLimit = Integer.MAX_VALUE;
+	// Anwendungsweit geteilte Verbindung zur Datenbank, siehe OsmContextListener
+	@Context
+	private ServletContext context;
+	@Context
+	private HttpContext httpContext;
   
 	/**
-	 * Abfrage der vom Frontend angeforderten Daten aus der Datenbank
+	 * Abfrage der vom Frontend angeforderten Daten aus der Datenbank.
+	 * Ist {@link Events#getPageSize()} gesetzt, wird nur eine Seite geliefert und
+	 * {@link Events#getCursor()} verweist auf die naechste Seite.
+	 * Ueberschreitet das Ergebnis die serverseitige Obergrenze, wird es gekuerzt
+	 * und {@link Events#isTruncated()} gesetzt.
+	 * Mit {@link Events#getSampleSize()} oder {@link Events#getSampleRate()} wird nur eine Stichprobe
+	 * geliefert, {@link Events#getSampleRate()} enthaelt dann den verwendeten Anteil und {@link Events#getTotal()}
+	 * die Gesamtzahl. Gezaehlt wird auf der ersten Seite, die Folgeseiten uebernehmen beides aus dem Cursor.
+	 * Die Abfrage laeuft im Pool von {@link RunningQueries} und wird abgebrochen, sobald derselbe
+	 * Client eine neue Abfrage schickt.
+	 * Mit dem Accept-Header {@value ColumnarEvents#MEDIA_TYPE} wird die Antwort spaltenweise
+	 * geschrieben, siehe {@link ColumnarEventsWriter}.
+	 * Liegt der Zeitraum vollstaendig in den letzten Tagen, wird ohne Stichprobe aus dem {@link HotTier} gelesen.
 	 * @param events Vom Frontend übergebenes Objekt mit den ausgewaehlten Koordinaten und Filtern
+	 * @param clientId ID des Frontends aus dem Header {@value #CLIENT_ID_HEADER}, optional
 	 * @return {@link Events} mit den aus der Datenbank erhaltenen Daten
 	 * @throws IOException
 	 * @throws CQLException
 	 */
 	@POST
 	@Consumes(MediaType.APPLICATION_JSON)
-	@Produces(MediaType.APPLICATION_JSON)
-	public Events getEvents(Events events) throws IOException, CQLException {
+	@Produces({MediaType.APPLICATION_JSON, ColumnarEvents.MEDIA_TYPE})
+	public Events getEvents(final Events events, @HeaderParam(CLIENT_ID_HEADER) String clientId)
+			throws IOException, CQLException {
+		timings = RequestTimings.get(httpContext);
+		RunningQueries queries = RunningQueries.get(context);
+		ticket = queries.start(queryKey(clientId, "events"));
+		return queries.execute(ticket, new Callable<Events>() {
+			@Override
+			public Events call() throws IOException, CQLException {
+				return queryEvents(events);
+			}
+		});
+	}
+	
+	private Events queryEvents(Events events) throws IOException, CQLException {
 		this.events = events;		
         
-        Filter cqlFilter = createBaseFilter();
-        Query query = new Query(simpleFeatureTypeName, cqlFilter);
-        FeatureCollection<?,?> results = featureStore.getFeatures(query);
-        FeatureIterator<?> iterator = results.features();
-        try {
-            /*if (iterator.hasNext()) {
-                System.out.println("Results:");
-            } else {
-                System.out.println("No results");
-            }*/
-            int n = 0;
-            while (iterator.hasNext()) {
-                Feature feature = iterator.next();
-                StringBuilder result = new StringBuilder();
-                result.append(++n);
-
-                for (GdeltFeature.Attributes attribute : GdeltFeature.Attributes.values()) {
-                    try {
-                        Property property = feature.getProperty(attribute.getName());
-                        appendResult(result, property);
-                    } catch (Exception e) {
-                        // GEOMESA-280 - currently asking for non-existing properties throws an NPE
-                    }
-                }
-                //System.out.println(result.toString());
-                
-                Point geom = (Point)feature.getProperty(GdeltFeature.Attributes.geom.getName()).getValue();
-                Event event = new Event(geom.getY(), geom.getX());
-                event.setEventCode(feature.getProperty(GdeltFeature.Attributes.EventCode.getName()).getValue().toString());
-                event.setSqlDate((Date)feature.getProperty(GdeltFeature.Attributes.SQLDATE.getName()).getValue());
-                event.setActor1Name(feature.getProperty(GdeltFeature.Attributes.Actor1Name.getName()).getValue().toString());
-                event.setActor2Name(feature.getProperty(GdeltFeature.Attributes.Actor2Name.getName()).getValue().toString());
-                event.setGeoName(feature.getProperty(GdeltFeature.Attributes.ActionGeo_FullName.getName()).getValue().toString());
-                Object sourceURL = feature.getProperty(GdeltFeature.Attributes.SOURCEURL.getName()).getValue();
-                if (sourceURL != null) {
-                	event.setSourceURL(sourceURL.toString());
-                }
-                events.addEvent(event);
-            }
-            //System.out.println();
-        } finally {
-            iterator.close();
+        DataStoreManager manager = DataStoreManager.get(context);
+        int maxEvents = Math.min(getMaxEvents(manager), eventLimit);
+        if (Sampling.isRequested(events)) {
+        	// Folgeseiten uebernehmen Anteil und Gesamtzahl der ersten Seite aus dem Cursor, ohne erneut zu zaehlen
+        	Sampling page = events.getCursor() == null ? null : PageCursor.decodeSampling(events);
+        	sampling = page != null ? page : Sampling.create(manager, events);
+        	events.setTotal(Long.valueOf(sampling.getTotal()));
+        	events.setSampleRate(sampling.getRate());
+        }
+        if (events.getPageSize() != null) {
+        	if (events.getPageSize() <= 0) {
+        		throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+        				.entity("pageSize muss groesser als 0 sein").build());
+        	}
+        	return getPage(manager, events, Math.min(events.getPageSize(), maxEvents));
         }
         
+        // Anfragen auf die letzten Tage aus dem Speicher, siehe HotTier
+        HotTier hotTier = HotTier.get(context);
+        if (sampling == null && hotTier != null && hotTier.covers(events)) {
+        	long start = timings.start();
+        	boolean tokenIndex = !events.getKeywords().isEmpty() && manager.hasActorTokens();
+        	events.setEvents(hotTier.query(events, tokenIndex, maxEvents));
+        	timings.stop(RequestTimings.SCAN, start);
+        	return events;
+        }
+        
+        QueryCache cache = QueryCache.get(context);
+        // Stichproben werden nicht zwischengespeichert
+        if (!cache.isEnabled() || sampling != null) {
+        	events.setEvents(loadEvents(manager, events, maxEvents, null, null));
+        	return events;
+        }
+        
+        // Abfrage der auf das Raster vergroesserten BBox, damit das Ergebnis auch
+        // fuer leicht verschobene Ansichten aus dem Cache geliefert werden kann
+        Events normalized = QueryCache.normalize(events);
+        String key = QueryCache.key(normalized);
+        List<Event> result = cache.get(key);
+        if (result == null) {
+        	this.events = normalized;
+        	result = loadEvents(manager, events, maxEvents, cache, key);
+        }
+        for (Event event : result) {
+        	if (events.getEvents().size() >= maxEvents) {
+        		events.setTruncated(true);
+        		break;
+        	}
+        	if (QueryCache.contains(events.getBounds(), event)) {
+        		events.addEvent(event);
+        	}
+        }
 		return events;
 	}
 	
 	/**
-	 * Erstellen eines Filters zum Einschraenken der Ergebnisse
-	 * @return Filter zur Einschraenkung der Ergebnisse
+	 * Laden einer Seite. Da der Z3-Index zuerst nach der Zeit sortiert ist, wird Tag fuer Tag
+	 * abgefragt, bis die Seite gefuellt ist. Der Cursor zeigt auf den ersten nicht gelesenen Tag.
+	 * Passt ein Tag nicht mehr vollstaendig unter die Obergrenze, beginnt mit ihm die naechste Seite.
+	 * Ein einzelner Tag mit mehr Events als die Obergrenze kann nicht geblaettert werden, da die
+	 * Reihenfolge innerhalb eines Tages nicht feststeht, die Anfrage wird dann mit 413 abgelehnt.
+	 * @param manager Verbindung zur Datenbank
+	 * @param events Anfrage des Frontends, wird um die Events der Seite ergaenzt
+	 * @param pageSize Mindestanzahl der Events pro Seite, sofern vorhanden
+	 * @return {@link Events} mit der Seite und dem Cursor fuer die naechste Seite
+	 * @throws IOException
 	 * @throws CQLException
+	 * @throws WebApplicationException mit Status 413, wenn ein Tag mehr Events als die Obergrenze enthaelt
+	 */
+	private Events getPage(DataStoreManager manager, Events events, int pageSize) throws IOException, CQLException {
+		int maxEvents = getMaxEvents(manager);
+		Date day = events.getCursor() == null ? PageCursor.startOfDay(events.getDateFrom()) : PageCursor.decode(events);
+		Date lastDay = PageCursor.startOfDay(events.getDateTo());
+		
+		// Ganze Tage lesen, bis die Seitengroesse erreicht ist
+		while (!day.after(lastDay) && events.getEvents().size() < pageSize) {
+			Events dayFilter = new Events(events);
+			dayFilter.setDateFrom(day);
+			dayFilter.setDateTo(day);
+			this.events = dayFilter;
+			int remaining = maxEvents - events.getEvents().size();
+			List<Event> dayEvents = loadEvents(manager, events, remaining, null, null);
+			if (events.isTruncated()) {
+				if (events.getEvents().isEmpty()) {
+					throw new WebApplicationException(Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE)
+							.entity("Ein Tag enthaelt mehr Events als die Obergrenze von " + maxEvents
+									+ ", bitte die Filter einschraenken").build());
+				}
+				// der angefangene Tag wird auf der naechsten Seite vollstaendig geliefert
+				events.setTruncated(false);
+				break;
+			}
+			events.getEvents().addAll(dayEvents);
+			day = PageCursor.nextDay(day);
+		}
+		this.events = events;
+		
+		events.setCursor(day.after(lastDay) ? null : PageCursor.encode(events, day, sampling));
+		return events;
+	}
+	
+	private static int getMaxEvents(DataStoreManager manager) {
+		return Integer.parseInt(manager.getSetting("page.maxEvents", Integer.toString(Integer.MAX_VALUE)));
+	}
+	
+	private static String queryKey(String clientId, String endpoint) {
+		return clientId == null || clientId.isEmpty() ? null : clientId + "/" + endpoint;
+	}
+	
+	/**
+	 * Abfrage der Daten wie {@link #getEvents(Events, String)}, die Events werden aber waehrend des Scans
+	 * einzeln in die Antwort geschrieben statt im Speicher gesammelt zu werden.
+	 * Die Filter der Anfrage werden nicht zurueckgeschickt, nach dem Array folgt "truncated",
+	 * bei einer Stichprobe zusaetzlich "total" und "sampleRate".
+	 * Eine neue Abfrage desselben Clients beendet den Scan, ebenso ein Abbruch der Verbindung.
+	 * Das spaltenweise Format gibt es nur fuer die gesammelte Antwort von {@link #getEvents(Events, String)},
+	 * da die Spalten erst nach dem Scan vollstaendig sind.
+	 * @param events Vom Frontend übergebenes Objekt mit den ausgewaehlten Koordinaten und Filtern
+	 * @param clientId ID des Frontends aus dem Header {@value #CLIENT_ID_HEADER}, optional
+	 * @return JSON-Objekt mit dem Array "events"
 	 * @throws IOException
+	 * @throws CQLException
 	 */
-	private Filter createBaseFilter() throws CQLException, IOException {
-
-        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
-        List<Filter> filterList = new ArrayList<Filter>();
-        Calendar calendar = Calendar.getInstance();
-        calendar.clear();
-        calendar.setTime(events.getDateFrom());
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        Date from = calendar.getTime();
-        
-        calendar.setTime(events.getDateTo());
-        calendar.set(Calendar.HOUR_OF_DAY, 23);
-        Date to = calendar.getTime();
-        
-        // Einschraenkung des Zeitintervalls
-        Filter timeFilter =
-                ff.between(ff.property(GdeltFeature.Attributes.SQLDATE.getName()),
-                           ff.literal(from),
-                           ff.literal(to));
-        filterList.add(timeFilter);
-        
-        // Einschraenkung der Koordinaten
-        Filter spatialFilter =
-                ff.bbox(GdeltFeature.Attributes.geom.getName(),
-                        events.getBounds().getLeft(),
-                        events.getBounds().getBottom(),
-                        events.getBounds().getRight(),
-                        events.getBounds().getTop(),
-                        "EPSG:4326");
-        filterList.add(spatialFilter);
-        
-        // Einschraenken der EventCodes mit einem LIKE-Filter, z.B. LIKE 19% um EventCodes wie 190, 191 usw. zu erhalten
-        List<Filter> eventsFilter = new ArrayList<Filter>();
-        for (String eventID : events.getEventIDs()) {
-        	eventsFilter.add(ff.like(ff.property(GdeltFeature.Attributes.EventCode.getName()), eventID+"%"));
-        }
-        // Verknuepfen mehrerer EventCode-Filter mit OR
-        if (!eventsFilter.isEmpty()) {
-        	Filter orEvents = ff.or(eventsFilter);
-        	filterList.add(orEvents);
-        }
-        
-        // Einschraenken der Ergebnisse mit Keywords, die in den ActorNames gesucht werden
-        // Verknuepfen der Spalten mit OR
-        List<Filter> keywordsFilter = new ArrayList<Filter>();
-        for (String keyword : events.getKeywords()) {
-        	List<Filter> columnFilter = new ArrayList<Filter>();
-        	columnFilter.add(ff.like(ff.property(GdeltFeature.Attributes.Actor1Name.getName()), "%"+keyword+"%"));
-        	columnFilter.add(ff.like(ff.property(GdeltFeature.Attributes.Actor2Name.getName()), "%"+keyword+"%"));
-        	keywordsFilter.add(ff.or(columnFilter));
-        }
-        // Verknuepfen mehrerer Keyword-Filter mit OR
-        if (!keywordsFilter.isEmpty()) {
-        	Filter orKeywords = ff.or(keywordsFilter);
-        	filterList.add(orKeywords);
-        }
-        
-        // Verknuepfen aller erstellten Filter mit AND
-        Filter conjunction = ff.and(filterList);
-
-        return conjunction;
-    }
+	@POST
+	@Path("/stream")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public StreamingOutput streamEvents(Events events, @HeaderParam(CLIENT_ID_HEADER) String clientId)
+			throws IOException, CQLException {
+		this.events = events;
+		timings = RequestTimings.get(httpContext);
+		ticket = RunningQueries.get(context).start(queryKey(clientId, "events"));
+		// Bis zur Uebergabe an Jersey meldet diese Methode das Ticket bei jedem Fehler ab, danach EventStream
+		EventStream stream = null;
+		try {
+			stream = createEventStream(events);
+			return stream;
+		} finally {
+			if (stream == null || !stream.hasTicket()) {
+				ticket.finish();
+			}
+		}
+	}
+	
+	private EventStream createEventStream(Events events) throws IOException, CQLException {
+		DataStoreManager manager = DataStoreManager.get(context);
+		int maxEvents = getMaxEvents(manager);
+		if (Sampling.isRequested(events)) {
+			sampling = Sampling.create(manager, events);
+			return new EventStream(manager, createQuery(manager), maxEvents, ticket).withSampling(sampling).withTimings(timings);
+		}
+		QueryCache cache = QueryCache.get(context);
+		if (!cache.isEnabled()) {
+			return new EventStream(manager, createQuery(manager), maxEvents, ticket).withTimings(timings);
+		}
+		
+		Events normalized = QueryCache.normalize(events);
+		String key = QueryCache.key(normalized);
+		List<Event> cached = cache.get(key);
+		if (cached != null) {
+			return new EventStream(cached, events.getBounds(), maxEvents);
+		}
+		this.events = normalized;
+		return new EventStream(manager, createQuery(manager), maxEvents, ticket, events.getBounds(), cache, key)
+				.withTimings(timings);
+	}
 	
 	/**
-	 * Zusammenfuehren der Ergebnisse fuer die Konsolenausgabe
-	 * @param string Ergebnisse als String
-	 * @param property Ergebnis, was dem String hinzugefuegt werden soll
+	 * Uebersicht fuer die Eventkreise: jede Koordinate der Anfrage mit der Anzahl ihrer Events.
+	 * Gelesen wird nur die Geometrie, die uebrigen Attribute werden weder dekodiert noch uebertragen.
+	 * Die Events eines Kreises liefert {@link #getEventDetail(Events, Double, Double, String)}.
+	 * Eine neue Uebersicht desselben Clients bricht die vorherige ab.
+	 * @param events Vom Frontend übergebenes Objekt mit den ausgewaehlten Koordinaten und Filtern
+	 * @param clientId ID des Frontends aus dem Header {@value #CLIENT_ID_HEADER}, optional
+	 * @return {@link EventSummary} mit einem Eintrag pro Koordinate
+	 * @throws IOException
+	 * @throws CQLException
 	 */
-	private void appendResult(StringBuilder string, Property property) {
-        if (property != null) {
-            string.append("|")
-                  .append(property.getName())
-                  .append('=')
-                  .append(property.getValue());
-        }
-    }
+	@POST
+	@Path("/summary")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public EventSummary getSummary(final Events events, @HeaderParam(CLIENT_ID_HEADER) String clientId)
+			throws IOException, CQLException {
+		this.events = events;
+		timings = RequestTimings.get(httpContext);
+		RunningQueries queries = RunningQueries.get(context);
+		ticket = queries.start(queryKey(clientId, "summary"));
+		return queries.execute(ticket, new Callable<EventSummary>() {
+			@Override
+			public EventSummary call() throws IOException, CQLException {
+				return summarize();
+			}
+		});
+	}
+	
+	private EventSummary summarize() throws IOException, CQLException {
+		DataStoreManager manager = DataStoreManager.get(context);
+		int maxEvents = getMaxEvents(manager);
+		EventSummary.Collector collector = new EventSummary.Collector();
+		boolean truncated = false;
+		Query query = createQuery(manager, GdeltFeature.SUMMARY_ATTRIBUTES);
+		long start = timings.start();
+		SimpleFeatureIterator iterator = manager.query(query);
+		timings.stop(RequestTimings.PLANNING, start);
+		ticket.attach(iterator);
+		try {
+			while (!ticket.isCancelled()) {
+				start = timings.start();
+				if (!iterator.hasNext()) {
+					break;
+				}
+				if (collector.getCount() >= maxEvents) {
+					truncated = true;
+					break;
+				}
+				SimpleFeature feature = iterator.next();
+				timings.stop(RequestTimings.SCAN, start);
+				start = timings.start();
+				Point point = (Point) feature.getAttribute(GdeltFeature.Attributes.geom.getName());
+				collector.add(point.getY(), point.getX());
+				timings.stop(RequestTimings.DECODE, start);
+			}
+		} finally {
+			ticket.detach();
+			iterator.close();
+		}
+		if (ticket.isCancelled()) {
+			throw new CancellationException();
+		}
+		return collector.build(truncated);
+	}
+	
+	/**
+	 * Events einer Koordinate aus {@link #getSummary(Events, String)} fuer die Tabelle eines Eventkreises.
+	 * Die BBox der Anfrage wird auf die Koordinate verkleinert, der Z3-Index liest dadurch nur die
+	 * Events an dieser Stelle. Fuer eine Rasterzelle genuegt die normale Abfrage mit deren BBox.
+	 * Die Antwort kann wie bei {@link #getEvents(Events, String)} spaltenweise angefordert werden.
+	 * @param events Vom Frontend übergebenes Objekt mit den ausgewaehlten Filtern
+	 * @param lat Breitengrad der Koordinate
+	 * @param lon Laengengrad der Koordinate
+	 * @param clientId ID des Frontends aus dem Header {@value #CLIENT_ID_HEADER}, optional
+	 * @return {@link Events} an genau dieser Koordinate
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	@POST
+	@Path("/detail")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces({MediaType.APPLICATION_JSON, ColumnarEvents.MEDIA_TYPE})
+	public Events getEventDetail(Events events, @QueryParam("lat") final Double lat, @QueryParam("lon") final Double lon,
+			@HeaderParam(CLIENT_ID_HEADER) String clientId) throws IOException, CQLException {
+		if (lat == null || lon == null) {
+			throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+					.entity("lat und lon muessen angegeben werden").build());
+		}
+		final Events detail = new Events(events);
+		Bounds point = new Bounds();
+		point.setLeft(lon - DETAIL_MARGIN);
+		point.setRight(lon + DETAIL_MARGIN);
+		point.setBottom(lat - DETAIL_MARGIN);
+		point.setTop(lat + DETAIL_MARGIN);
+		detail.setBounds(point);
+		// die Tabelle zeigt alle Events des Kreises
+		detail.setSampleSize(null);
+		detail.setSampleRate(null);
+		this.events = detail;
+		timings = RequestTimings.get(httpContext);
+		RunningQueries queries = RunningQueries.get(context);
+		ticket = queries.start(queryKey(clientId, "detail"));
+		return queries.execute(ticket, new Callable<Events>() {
+			@Override
+			public Events call() throws IOException, CQLException {
+				DataStoreManager manager = DataStoreManager.get(context);
+				for (Event event : loadEvents(manager, detail, getMaxEvents(manager), null, null)) {
+					if (event.getLat() == lat && event.getLon() == lon) {
+						detail.addEvent(event);
+					}
+				}
+				return detail;
+			}
+		});
+	}
+	
+	/**
+	 * Abfrage mehrerer Anfragen in einem Request, z.B. derselben Filter fuer mehrere BBoxen oder
+	 * Zeitraeume im Vergleich. Die Anfragen werden vorab geprueft, gleiche Anfragen nur einmal
+	 * abgefragt und dann parallel im Pool von {@link RunningQueries} ausgefuehrt, hoechstens
+	 * <code>osm.batch.parallelism</code> gleichzeitig. Jede Anfrage wird wie bei
+	 * {@link #getEvents(Events, String)} beantwortet, Seiten werden nicht unterstuetzt.
+	 * Die Obergrenze <code>osm.page.maxEvents</code> gilt fuer den ganzen Batch und wird gleichmaessig
+	 * auf die verschiedenen Anfragen verteilt, gekuerzte Anfragen haben {@link Events#isTruncated()}.
+	 * Schlaegt eine Anfrage fehl, schlaegt der ganze Batch fehl.
+	 * @param windows Vom Frontend übergebene Liste mit den Koordinaten und Filtern der einzelnen Anfragen
+	 * @param clientId ID des Frontends aus dem Header {@value #CLIENT_ID_HEADER}, optional
+	 * @return {@link Events} pro Anfrage, Eintrag i gehoert zur Anfrage i
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	@POST
+	@Path("/batch")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<Events> getEventsBatch(List<Events> windows, @HeaderParam(CLIENT_ID_HEADER) String clientId)
+			throws IOException, CQLException {
+		DataStoreManager manager = DataStoreManager.get(context);
+		int maxWindows = Integer.parseInt(manager.getSetting("batch.maxWindows", "16"));
+		int parallelism = Integer.parseInt(manager.getSetting("batch.parallelism", "4"));
+		if (windows == null || windows.isEmpty() || windows.size() > maxWindows) {
+			throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+					.entity("Ein Batch muss 1 bis " + maxWindows + " Anfragen enthalten").build());
+		}
+		for (Events window : windows) {
+			if (window == null || window.getBounds() == null || window.getDateFrom() == null || window.getDateTo() == null) {
+				throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+						.entity("Jede Anfrage im Batch braucht BBox und Zeitraum").build());
+			}
+			if (window.getPageSize() != null || window.getCursor() != null) {
+				throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+						.entity("Seiten werden im Batch nicht unterstuetzt").build());
+			}
+		}
+		timings = RequestTimings.get(httpContext);
+		RunningQueries queries = RunningQueries.get(context);
+		ticket = queries.start(queryKey(clientId, "batch"));
+		try {
+			// Gleiche Anfragen nur einmal abfragen, Stichproben sind nicht zusammenfassbar
+			List<Callable<Events>> tasks = new ArrayList<Callable<Events>>();
+			List<Jersey> workers = new ArrayList<Jersey>();
+			int[] taskOfWindow = new int[windows.size()];
+			Map<String, Integer> planned = new HashMap<String, Integer>();
+			for (int i = 0; i < windows.size(); i++) {
+				final Events window = windows.get(i);
+				String key = Sampling.isRequested(window) ? null : QueryCache.key(window);
+				Integer task = key == null ? null : planned.get(key);
+				if (task == null) {
+					task = tasks.size();
+					final Jersey worker = forWindow(ticket.fork());
+					workers.add(worker);
+					tasks.add(new Callable<Events>() {
+						@Override
+						public Events call() throws IOException, CQLException {
+							return worker.queryEvents(window);
+						}
+					});
+					if (key != null) {
+						planned.put(key, task);
+					}
+				}
+				taskOfWindow[i] = task;
+			}
+		
+			int windowLimit = Math.max(1, getMaxEvents(manager) / tasks.size());
+			for (Jersey worker : workers) {
+				worker.eventLimit = windowLimit;
+			}
+			List<Events> results = queries.executeAll(ticket, tasks, parallelism);
+			List<Events> response = new ArrayList<Events>(windows.size());
+			for (int i = 0; i < windows.size(); i++) {
+				response.add(results.get(taskOfWindow[i]));
+			}
+			return response;
+		} finally {
+			// executeAll meldet das Ticket ab, hier auch fuer Fehler vor dem Start der Abfragen
+			ticket.finish();
+		}
+	}
+	
+	// Eigene Instanz pro Anfrage eines Batches oder Teilanfrage, da die Abfrage ihren Zustand in Feldern haelt
+	private Jersey forWindow(RunningQueries.Ticket windowTicket) {
+		Jersey worker = new Jersey();
+		worker.context = context;
+		worker.httpContext = httpContext;
+		worker.timings = timings;
+		worker.ticket = windowTicket;
+		return worker;
+	}
+	
+	/**
+	 * Anmelden der aktuellen Filter eines Clients fuer neu eingespielte Events, siehe {@link LiveEvents}.
+	 * Das Frontend ruft das nach jeder Aenderung der Filter auf, die Events kommen ueber
+	 * {@link #streamLiveEvents(String)}.
+	 * @param events Vom Frontend übergebenes Objekt mit den ausgewaehlten Koordinaten und Filtern
+	 * @param clientId ID des Frontends aus dem Header {@value #CLIENT_ID_HEADER}
+	 * @throws IOException
+	 */
+	@POST
+	@Path("/live")
+	@Consumes(MediaType.APPLICATION_JSON)
+	public void registerLiveEvents(Events events, @HeaderParam(CLIENT_ID_HEADER) String clientId)
+			throws IOException {
+		if (clientId == null || clientId.isEmpty()) {
+			throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+					.entity(CLIENT_ID_HEADER + " muss angegeben werden").build());
+		}
+		// Die Features der Quelle haben kein ActorTokens, verglichen wird deshalb das Event
+		boolean tokenIndex = !events.getKeywords().isEmpty() && DataStoreManager.get(context).hasActorTokens();
+		LiveEvents.get(context).register(clientId, EventFilter.matcher(events, tokenIndex));
+	}
+	
+	/**
+	 * Datenstrom mit den neuen Events, die zu den angemeldeten Filtern des Clients passen
+	 * (Server-Sent Events, siehe {@link LiveEventStream}). Da EventSource im Browser keine Header
+	 * setzen kann, wird die Client-ID als Parameter uebergeben.
+	 * @param clientId ID des Frontends, unter der die Filter angemeldet wurden
+	 * @return Datenstrom, der bis zum Schliessen der Verbindung offen bleibt
+	 */
+	@GET
+	@Path("/live")
+	@Produces(LiveEventStream.MEDIA_TYPE)
+	public StreamingOutput streamLiveEvents(@QueryParam("clientId") String clientId) {
+		LiveEvents.Subscription subscription = clientId == null ? null : LiveEvents.get(context).subscribe(clientId);
+		if (subscription == null) {
+			throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND)
+					.entity("Keine Filter fuer diesen Client angemeldet").build());
+		}
+		long heartbeatMillis = Long.parseLong(DataStoreManager.get(context).getSetting("live.heartbeatSeconds", "15")) * 1000;
+		return new LiveEventStream(subscription, heartbeatMillis);
+	}
+	
+	/**
+	 * Kennzahlen des Ergebnis-Caches
+	 * @return {@link CacheStats} mit Treffern, Fehlschlaegen und Groesse
+	 */
+	@GET
+	@Path("/cache")
+	@Produces(MediaType.APPLICATION_JSON)
+	public CacheStats getCacheStats() {
+		return QueryCache.get(context).getStats();
+	}
+	
+	/**
+	 * Kennzahlen aller Requests seit dem Start der Webapp, siehe {@link QueryMetrics}
+	 * @return {@link MetricsStats} mit Zaehlern und Latenz-Histogrammen pro Phase
+	 */
+	@GET
+	@Path("/metrics")
+	@Produces(MediaType.APPLICATION_JSON)
+	public MetricsStats getMetrics() {
+		return QueryMetrics.get(context).getStats();
+	}
+	
+	/**
+	 * Anzahl der Events pro Rasterzelle fuer die Uebersicht. Die Aggregation wird ueber den
+	 * Z3DensityIterator auf den Tablet Servern berechnet, es werden keine einzelnen Events uebertragen.
+	 * Die Rastergroesse ergibt sich aus der BBox und der Zoomstufe in {@link Events#getZoom()}.
+	 * Grobe Raster ohne Keywords werden aus dem Tageswuerfel ({@link RollupCube}) berechnet.
+	 * @param events Vom Frontend übergebenes Objekt mit den ausgewaehlten Koordinaten und Filtern
+	 * @return {@link Grid} mit den Zellen, die Events enthalten
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	@POST
+	@Path("/grid")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Grid getGrid(Events events) throws IOException, CQLException {
+		this.events = events;
+		
+		DataStoreManager manager = DataStoreManager.get(context);
+		DensityGrid densityGrid = new DensityGrid(events.getBounds(), events.getZoom());
+		// Uebersichten aus dem Tageswuerfel, wenn Filter und Aufloesung es erlauben
+		if (RollupCube.canAnswer(events) && densityGrid.isCoarserThanRollup() && manager.hasRollup(events)) {
+			SimpleFeatureIterator cells = manager.query(RollupCube.createQuery(manager.getRollupTypeName(), events));
+			try {
+				return densityGrid.aggregateRollup(cells);
+			} finally {
+				cells.close();
+			}
+		}
+		SimpleFeatureIterator iterator = manager.query(densityGrid.createQuery(manager.getServingTypeName(), EventFilter.create(manager, events)));
+		try {
+			return densityGrid.aggregate(iterator);
+		} finally {
+			iterator.close();
+		}
+	}
+	
+	/**
+	 * Anzahl der Events pro Tag oder Stunde fuer die BBox und die Filter der Anfrage. Die Zaehlung
+	 * findet im TemporalDensityIterator auf den Tablet Servern statt, es werden keine Events uebertragen.
+	 * @param events Vom Frontend übergebenes Objekt mit den ausgewaehlten Koordinaten und Filtern
+	 * @param interval "day" (Standard) oder "hour"
+	 * @return {@link Histogram} mit einem Wert pro Intervall
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	@POST
+	@Path("/histogram")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public Histogram getHistogram(Events events, @QueryParam("interval") @DefaultValue("day") String interval)
+			throws IOException, CQLException {
+		this.events = events;
+		
+		long bucketMillis;
+		if ("day".equals(interval)) {
+			bucketMillis = TemporalHistogram.DAY_MILLIS;
+		} else if ("hour".equals(interval)) {
+			bucketMillis = TemporalHistogram.HOUR_MILLIS;
+		} else {
+			throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+					.entity("interval muss day oder hour sein").build());
+		}
+		DataStoreManager manager = DataStoreManager.get(context);
+		TemporalHistogram histogram = new TemporalHistogram(events.getDateFrom(), events.getDateTo(), bucketMillis);
+		SimpleFeatureIterator iterator = manager.query(histogram.createQuery(manager.getServingTypeName(),
+				EventFilter.create(manager, events)));
+		try {
+			return histogram.aggregate(iterator);
+		} finally {
+			iterator.close();
+		}
+	}
+	
+	/**
+	 * Laden der Events der aktuellen Anfrage in eine Liste. Lange Zeitraeume werden in Teilanfragen
+	 * aufgeteilt und parallel gelesen, siehe {@link ParallelScan}.
+	 * @param manager Verbindung zur Datenbank
+	 * @param response Antwort, in der eine Kuerzung vermerkt wird
+	 * @param limit Hoechstzahl der zu lesenden Events
+	 * @param cache Cache, in den das vollstaendige Ergebnis aufgenommen wird, oder NULL
+	 * @param key Schluessel der normalisierten Anfrage
+	 * @return Events der Anfrage
+	 * @throws CQLException
+	 * @throws IOException
+	 */
+	private List<Event> loadEvents(DataStoreManager manager, Events response, int limit, QueryCache cache, String key)
+			throws CQLException, IOException {
+		List<Events> ranges = ParallelScan.split(manager, events);
+		List<Event> result = ranges.size() > 1
+				? scanRanges(manager, response, limit, ranges)
+				: scan(manager, response, limit, null);
+		// abgebrochene Abfragen liefern kein (unvollstaendiges) Ergebnis
+		if (ticket.isCancelled()) {
+			throw new CancellationException();
+		}
+		// gekuerzte Ergebnisse werden nicht zwischengespeichert
+		if (cache != null && !response.isTruncated()) {
+			long size = 0;
+			for (Event event : result) {
+				size += QueryCache.estimateSize(event);
+			}
+			cache.put(key, result, size);
+		}
+		return result;
+	}
+	
+	/**
+	 * Paralleles Lesen der Teilanfragen im ForkJoinPool von {@link RunningQueries}. Jede Teilanfrage
+	 * hat einen eigenen Iterator, die Obergrenze gilt fuer alle gemeinsam. Die Ergebnisse werden in
+	 * zeitlicher Reihenfolge zusammengefuegt.
+	 * @param manager Verbindung zur Datenbank
+	 * @param response Antwort, in der eine Kuerzung vermerkt wird
+	 * @param limit Hoechstzahl der zu lesenden Events
+	 * @param ranges Teilanfragen aus {@link ParallelScan#split(DataStoreManager, Events)}
+	 * @return Events aller Teilanfragen
+	 * @throws CQLException
+	 * @throws IOException
+	 */
+	private List<Event> scanRanges(final DataStoreManager manager, final Events response, final int limit, List<Events> ranges)
+			throws CQLException, IOException {
+		RunningQueries.Ticket scanTicket = ticket.fork();
+		final AtomicInteger count = new AtomicInteger();
+		List<Callable<List<Event>>> tasks = new ArrayList<Callable<List<Event>>>(ranges.size());
+		for (Events range : ranges) {
+			final Jersey worker = forWindow(scanTicket.fork());
+			worker.events = range;
+			worker.sampling = sampling;
+			tasks.add(new Callable<List<Event>>() {
+				@Override
+				public List<Event> call() throws IOException, CQLException {
+					return worker.scan(manager, response, limit, count);
+				}
+			});
+		}
+		List<Event> result = new ArrayList<Event>();
+		for (List<Event> part : RunningQueries.get(context).scanAll(scanTicket, tasks)) {
+			result.addAll(part);
+		}
+		// die Teilanfragen pruefen die Obergrenze unabhaengig und koennen sie knapp ueberschreiten
+		if (result.size() > limit) {
+			result = new ArrayList<Event>(result.subList(0, limit));
+			response.setTruncated(true);
+		}
+		return result;
+	}
+	
+	/**
+	 * Lesen der Events der aktuellen Anfrage mit einem Iterator
+	 * @param manager Verbindung zur Datenbank
+	 * @param response Antwort, in der eine Kuerzung vermerkt wird
+	 * @param limit Hoechstzahl der zu lesenden Events
+	 * @param count Zaehler aller parallel gelesenen Teilanfragen, NULL beim Lesen ohne Aufteilung
+	 * @return gelesene Events, unvollstaendig wenn das Ticket abgebrochen wurde
+	 * @throws CQLException
+	 * @throws IOException
+	 */
+	private List<Event> scan(DataStoreManager manager, Events response, int limit, AtomicInteger count)
+			throws CQLException, IOException {
+		List<Event> result = new ArrayList<Event>();
+		Query query = createQuery(manager);
+		long start = timings.start();
+		SimpleFeatureIterator iterator = manager.query(query);
+		timings.stop(RequestTimings.PLANNING, start);
+		ticket.attach(iterator);
+		try {
+			while (!ticket.isCancelled()) {
+				start = timings.start();
+				if (!iterator.hasNext()) {
+					break;
+				}
+				if ((count == null ? result.size() : count.get()) >= limit) {
+					response.setTruncated(true);
+					break;
+				}
+				SimpleFeature feature = iterator.next();
+				timings.stop(RequestTimings.SCAN, start);
+				start = timings.start();
+				Event event = Event.fromFeature(feature);
+				timings.stop(RequestTimings.DECODE, start);
+				result.add(event);
+				if (count != null) {
+					count.incrementAndGet();
+				}
+			}
+		} finally {
+			ticket.detach();
+			iterator.close();
+		}
+		return result;
+	}
+	
+	/**
+	 * Erstellen der Query fuer die Events. Es werden nur die fuer {@link Event} benoetigten
+	 * Attribute angefragt, damit GeoMesa die uebrigen Spalten gar nicht erst dekodiert.
+	 * Eine angeforderte Stichprobe wird als zusaetzliche Bedingung an den Filter gehaengt.
+	 * Bei seltenen EventCodes wird der Attribut-Index vorgegeben, siehe {@link EventFilter#preferAttributeIndex(DataStoreManager, Events)}.
+	 * @param manager Verbindung zur Datenbank
+	 * @return Query mit Filter und Projektion
+	 * @throws CQLException
+	 * @throws IOException
+	 */
+	private Query createQuery(DataStoreManager manager) throws CQLException, IOException {
+		return createQuery(manager, GdeltFeature.SERVING_ATTRIBUTES);
+	}
+	
+	private Query createQuery(DataStoreManager manager, String[] properties) throws CQLException, IOException {
+		long start = timings.start();
+		Filter filter = EventFilter.create(manager, events);
+		if (sampling != null) {
+			filter = sampling.apply(filter);
+		}
+		Query query = new Query(manager.getServingTypeName(), filter, properties);
+		if (EventFilter.preferAttributeIndex(manager, events)) {
+			query.getHints().put(GeoMesaHints.QUERY_STRATEGY, GeoMesaHints.ATTRIBUTE_STRATEGY);
+		}
+		timings.stop(RequestTimings.FILTER, start);
+		return query;
+	}
   
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Schreibt die neuen Events eines Clients als Server-Sent Events (<code>text/event-stream</code>):
+ * <code>data: {Event}</code> pro Event, <code>event: overflow</code>, wenn Events verworfen wurden.
+ * Ohne neue Events wird regelmaessig ein Kommentar geschickt, damit eine abgebrochene Verbindung
+ * beim Schreiben auffaellt. Die Verbindung belegt solange einen Servlet-Thread.
+ *
+ */
+public class LiveEventStream implements StreamingOutput {
+
+	public static final String MEDIA_TYPE = "text/event-stream";
+
+	private static final ObjectWriter EVENT_WRITER = new ObjectMapper().writerFor(Event.class);
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] OVERFLOW = "event: overflow\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private final LiveEvents.Subscription subscription;
+	private final long heartbeatMillis;
+
+	/**
+	 * @param subscription Anmeldung aus {@link LiveEvents#subscribe(String)}
+	 * @param heartbeatMillis Abstand der Kommentare ohne neue Events
+	 */
+	public LiveEventStream(LiveEvents.Subscription subscription, long heartbeatMillis) {
+		this.subscription = subscription;
+		this.heartbeatMillis = heartbeatMillis;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		int connection = subscription.connect();
+		try {
+			output.write(HEARTBEAT);
+			output.flush();
+			while (subscription.isCurrent(connection)) {
+				Event event = subscription.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+				// beendet durch eine neue Verbindung desselben Clients oder beim Undeploy
+				if (!subscription.isCurrent(connection)) {
+					break;
+				}
+				if (subscription.takeOverflow()) {
+					output.write(OVERFLOW);
+				}
+				if (event == null) {
+					output.write(HEARTBEAT);
+				} else {
+					output.write("data: ".getBytes(StandardCharsets.UTF_8));
+					output.write(EVENT_WRITER.writeValueAsBytes(event));
+					output.write("\n\n".getBytes(StandardCharsets.UTF_8));
+				}
+				output.flush();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// die Anmeldung bleibt fuer die automatische Wiederverbindung des Browsers erhalten
+			subscription.disconnect(connection);
+		}
+	}
+}
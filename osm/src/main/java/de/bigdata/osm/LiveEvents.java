@@ -0,0 +1,284 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.locationtech.geomesa.stream.datastore.StreamDataStore;
+import org.locationtech.geomesa.stream.datastore.StreamListener;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Weitergabe neu eingespielter Events an die Frontends. Jeder Client meldet seine aktuellen Filter
+ * unter seiner Client-ID an und erhaelt ueber <code>GET /rest/jersey/live</code> (Server-Sent Events)
+ * alle danach eintreffenden Events, die zu den Filtern passen, statt die Anfrage zu wiederholen.
+ * Die Events kommen aus einem GeoMesa {@link StreamDataStore}, den der Ingest ueber {@link LiveSource} speist
+ * (<code>osm.live.streamAddress</code>), oder ueber {@link #publish(SimpleFeature)} aus demselben Prozess.
+ * Pro Client werden hoechstens <code>osm.live.queueSize</code> Events gepuffert, bei einem Ueberlauf
+ * wird der Client aufgefordert, neu abzufragen.
+ *
+ */
+public class LiveEvents {
+
+	// Name des Attributs, unter dem die Verteilung im ServletContext abgelegt wird
+	public static final String CONTEXT_ATTRIBUTE = LiveEvents.class.getName();
+
+	// Parameter der StreamDataStoreFactory aus geomesa-stream-datastore
+	private static final String STREAM_CONFIG_PARAM = "geomesa.stream.datastore.config";
+	private static final String STREAM_TIMEOUT_PARAM = "geomesa.stream.datastore.cache.timeout";
+
+	private static final Logger LOG = Logger.getLogger(LiveEvents.class.getName());
+
+	private final int queueSize;
+	private final long idleMillis;
+	private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+	private DataStore stream;
+	// Events der letzten Tage im Speicher, wird ebenfalls ueber die Quelle aktuell gehalten, oder NULL
+	private volatile HotTier hotTier;
+
+	/**
+	 * @param queueSize Hoechstzahl der gepufferten Events pro Client
+	 * @param idleMillis Zeit, nach der eine Anmeldung ohne Verbindung verworfen wird
+	 */
+	public LiveEvents(int queueSize, long idleMillis) {
+		this.queueSize = queueSize;
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * Liefert die im ServletContext abgelegte Verteilung
+	 * @param context ServletContext der Webapp
+	 * @return {@link LiveEvents} der Anwendung
+	 */
+	public static LiveEvents get(ServletContext context) {
+		LiveEvents live = (LiveEvents) context.getAttribute(CONTEXT_ATTRIBUTE);
+		if (live == null) {
+			throw new IllegalStateException("LiveEvents wurde nicht initialisiert");
+		}
+		return live;
+	}
+
+	/**
+	 * Verbinden mit einem StreamDataStore, dessen neue Features an die Clients verteilt werden
+	 * @param config Konfiguration der Quelle (Typesafe Config, siehe geomesa-stream), z.B. aus
+	 *        {@link LiveSource#config(String, String, int)}
+	 * @param cacheTimeoutSeconds Verweildauer der Features im StreamDataStore
+	 * @throws IOException wenn der StreamDataStore nicht erstellt werden kann
+	 */
+	public synchronized void connect(String config, int cacheTimeoutSeconds) throws IOException {
+		Map<String, Serializable> params = new HashMap<String, Serializable>();
+		params.put(STREAM_CONFIG_PARAM, config);
+		params.put(STREAM_TIMEOUT_PARAM, Integer.valueOf(cacheTimeoutSeconds));
+		DataStore store = DataStoreFinder.getDataStore(params);
+		if (!(store instanceof StreamDataStore)) {
+			throw new IOException("StreamDataStore konnte nicht erstellt werden");
+		}
+		((StreamDataStore) store).registerListener(new StreamListener() {
+			@Override
+			public void onNext(SimpleFeature feature) {
+				publish(feature);
+			}
+		});
+		stream = store;
+	}
+
+	/**
+	 * Weitergabe aller neuen Features an den HotTier
+	 * @param hotTier {@link HotTier} der Anwendung
+	 */
+	public void setHotTier(HotTier hotTier) {
+		this.hotTier = hotTier;
+	}
+
+	/**
+	 * Verteilen eines neuen Features an alle Clients, deren Filter es erfuellt, und an den HotTier.
+	 * Verglichen wird das daraus erstellte {@link Event}, da die Features der Quelle die beim
+	 * Ingest abgeleiteten Attribute (z.B. {@link GdeltFeature#ACTOR_TOKENS}) nicht enthalten.
+	 * @param feature Feature mit den Attributen aus {@link GdeltFeature}
+	 */
+	public void publish(SimpleFeature feature) {
+		HotTier hot = hotTier;
+		if (hot != null) {
+			hot.add(feature);
+		}
+		if (subscriptions.isEmpty()) {
+			return;
+		}
+		Event event;
+		try {
+			event = Event.fromFeature(feature);
+		} catch (RuntimeException e) {
+			LOG.log(Level.FINE, "Feature konnte nicht verteilt werden", e);
+			return;
+		}
+		for (Subscription subscription : subscriptions.values()) {
+			if (subscription.matcher.matches(event)) {
+				subscription.offer(event);
+			}
+		}
+	}
+
+	/**
+	 * Anmelden oder Aendern der Filter eines Clients. Noch nicht abgeholte Events zu den alten
+	 * Filtern werden verworfen, da der Client mit den neuen Filtern ohnehin neu abfragt.
+	 * @param clientId ID des Frontends
+	 * @param matcher Filter aus {@link EventFilter#matcher(Events, boolean)}
+	 */
+	public void register(String clientId, EventFilter.Matcher matcher) {
+		prune();
+		Subscription subscription = subscriptions.get(clientId);
+		if (subscription == null) {
+			Subscription created = new Subscription(matcher, queueSize);
+			subscription = subscriptions.putIfAbsent(clientId, created);
+			if (subscription == null) {
+				return;
+			}
+		}
+		subscription.update(matcher);
+	}
+
+	/**
+	 * Anmeldung eines Clients fuer den Datenstrom
+	 * @param clientId ID des Frontends
+	 * @return {@link Subscription} oder NULL, wenn der Client keine Filter angemeldet hat
+	 */
+	public Subscription subscribe(String clientId) {
+		return subscriptions.get(clientId);
+	}
+
+	// Verwerfen von Anmeldungen ohne Verbindung, z.B. nach dem Schliessen der Seite
+	private void prune() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Subscription> it = subscriptions.values().iterator(); it.hasNext();) {
+			Subscription subscription = it.next();
+			if (!subscription.isConnected() && now - subscription.updated > idleMillis) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Beenden des StreamDataStores und aller offenen Verbindungen beim Undeploy
+	 */
+	public synchronized void close() {
+		if (stream != null) {
+			stream.dispose();
+			stream = null;
+		}
+		for (Subscription subscription : subscriptions.values()) {
+			subscription.close();
+		}
+		subscriptions.clear();
+	}
+
+	/**
+	 * Filter und Puffer eines Clients. Baut derselbe Client eine neue Verbindung auf,
+	 * beendet sich die vorherige, damit die Events nicht auf zwei Verbindungen verteilt werden.
+	 *
+	 */
+	public static class Subscription {
+
+		// Weckt eine wartende Verbindung, ohne als Event geschickt zu werden
+		private static final Event WAKE_UP = new Event(0, 0);
+
+		private final BlockingQueue<Event> queue;
+		private final AtomicBoolean overflow = new AtomicBoolean(false);
+		private final AtomicInteger connection = new AtomicInteger();
+		private volatile EventFilter.Matcher matcher;
+		private volatile long updated = System.currentTimeMillis();
+		private volatile boolean connected = false;
+
+		Subscription(EventFilter.Matcher matcher, int queueSize) {
+			this.matcher = matcher;
+			this.queue = new LinkedBlockingQueue<Event>(queueSize);
+		}
+
+		void update(EventFilter.Matcher matcher) {
+			this.matcher = matcher;
+			this.updated = System.currentTimeMillis();
+			queue.clear();
+			overflow.set(false);
+		}
+
+		void offer(Event event) {
+			if (!queue.offer(event)) {
+				overflow.set(true);
+			}
+		}
+
+		/**
+		 * Beenden der aktuellen Verbindung, z.B. beim Undeploy. Eine wartende Verbindung
+		 * endet sofort statt erst nach dem naechsten Heartbeat.
+		 */
+		void close() {
+			connection.incrementAndGet();
+			connected = false;
+			queue.clear();
+			queue.offer(WAKE_UP);
+		}
+
+		/**
+		 * Beginn einer Verbindung
+		 * @return Nummer der Verbindung fuer {@link #isCurrent(int)}
+		 */
+		public int connect() {
+			connected = true;
+			return connection.incrementAndGet();
+		}
+
+		/**
+		 * Ende einer Verbindung
+		 * @param number Nummer aus {@link #connect()}
+		 */
+		public void disconnect(int number) {
+			if (isCurrent(number)) {
+				connected = false;
+				updated = System.currentTimeMillis();
+			}
+		}
+
+		public boolean isCurrent(int number) {
+			return connection.get() == number;
+		}
+
+		public boolean isConnected() {
+			return connected;
+		}
+
+		/**
+		 * Warten auf das naechste Event
+		 * @param timeout Wartezeit
+		 * @param unit Einheit der Wartezeit
+		 * @return Event oder NULL, wenn in der Wartezeit keines eingetroffen ist oder die
+		 *         Verbindung beendet wurde
+		 * @throws InterruptedException
+		 */
+		public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+			Event event = queue.poll(timeout, unit);
+			return event == WAKE_UP ? null : event;
+		}
+
+		/**
+		 * Abfragen und Zuruecksetzen eines Ueberlaufs
+		 * @return true, wenn seit dem letzten Aufruf Events verworfen wurden
+		 */
+		public boolean takeOverflow() {
+			return overflow.getAndSet(false);
+		}
+	}
+}
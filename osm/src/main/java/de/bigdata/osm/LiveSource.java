@@ -0,0 +1,161 @@
+package de.bigdata.osm;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Verbindung vom Ingest zur generischen Quelle des StreamDataStores der Webapp ({@link LiveEvents}).
+ * Der Ingest schickt jedes geschriebene Event als Tab-getrennte Zeile an <code>osm.live.streamAddress</code>,
+ * die Webapp nimmt die Zeilen unter derselben Adresse mit der Konfiguration aus
+ * {@link #config(String, String, int)} entgegen. Uebertragen werden nur die Attribute, die
+ * {@link Event#fromFeature(SimpleFeature)} liest, das Datum in Millisekunden, damit es nicht von der
+ * Zeitzone des Converters abhaengt.
+ *
+ */
+public class LiveSource implements Closeable {
+
+	// Attribute einer Zeile in dieser Reihenfolge, nach ID, Datum, Breite und Laenge
+	private static final GdeltFeature.Attributes[] TEXT_ATTRIBUTES = new GdeltFeature.Attributes[] {
+			GdeltFeature.Attributes.EventCode, GdeltFeature.Attributes.EventBaseCode,
+			GdeltFeature.Attributes.EventRootCode, GdeltFeature.Attributes.Actor1Name,
+			GdeltFeature.Attributes.Actor2Name, GdeltFeature.Attributes.ActionGeo_FullName,
+			GdeltFeature.Attributes.SOURCEURL };
+
+	// Wartezeit beim Verbindungsaufbau
+	private static final int CONNECT_MILLIS = 5000;
+
+	private final Socket socket;
+	private final Writer writer;
+
+	/**
+	 * Verbinden mit der Quelle der Webapp
+	 * @param address Adresse als <code>host:port</code>
+	 * @throws IOException wenn die Quelle nicht erreichbar ist
+	 */
+	public LiveSource(String address) throws IOException {
+		socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host(address), port(address)), CONNECT_MILLIS);
+			writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Konfiguration des StreamDataStores fuer {@link LiveEvents#connect(String, int)}: eine generische
+	 * Quelle, die die Zeilen dieser Klasse ueber Netty annimmt und in Features mit den Attributen
+	 * aus {@link Event#fromFeature(SimpleFeature)} umwandelt
+	 * @param typeName Name des FeatureTypes im StreamDataStore
+	 * @param host Adresse, an der die Quelle lauscht
+	 * @param port Port, an dem die Quelle lauscht
+	 * @return Typesafe Config in einer Zeile
+	 */
+	public static String config(String typeName, String host, int port) {
+		StringBuilder attributes = new StringBuilder();
+		StringBuilder fields = new StringBuilder();
+		attributes.append("{ name = \"").append(GdeltFeature.Attributes.GLOBALEVENTID.getName()).append("\", type = \"Integer\" }, ");
+		attributes.append("{ name = \"").append(GdeltFeature.Attributes.SQLDATE.getName()).append("\", type = \"Date\" }, ");
+		fields.append("{ name = \"").append(GdeltFeature.Attributes.GLOBALEVENTID.getName()).append("\", transform = \"$1::int\" }, ");
+		fields.append("{ name = \"").append(GdeltFeature.Attributes.SQLDATE.getName()).append("\", transform = \"millisToDate($2::long)\" }, ");
+		fields.append("{ name = \"lat\", transform = \"$3::double\" }, ");
+		fields.append("{ name = \"lon\", transform = \"$4::double\" }, ");
+		for (int i = 0; i < TEXT_ATTRIBUTES.length; i++) {
+			String name = TEXT_ATTRIBUTES[i].getName();
+			attributes.append("{ name = \"").append(name).append("\", type = \"String\" }, ");
+			fields.append("{ name = \"").append(name).append("\", transform = \"$").append(i + 5).append("\" }, ");
+		}
+		attributes.append("{ name = \"").append(GdeltFeature.Attributes.geom.getName())
+				.append("\", type = \"Point\", srid = 4326, default = true }");
+		fields.append("{ name = \"").append(GdeltFeature.Attributes.geom.getName()).append("\", transform = \"point($lon, $lat)\" }");
+		return "{ type = \"generic\", "
+				+ "source-route = \"netty4:tcp://" + host + ":" + port + "?textline=true&encoding=UTF-8&decoderMaxLineLength=65536\", "
+				+ "sft = { type-name = \"" + typeName + "\", attributes = [ " + attributes + " ] }, "
+				+ "threads = 1, "
+				+ "converter = { type = \"delimited-text\", format = \"TDF\", id-field = \"$1\", fields = [ " + fields + " ] } }";
+	}
+
+	/**
+	 * Senden eines Pakets geschriebener Features
+	 * @param features Features mit den Attributen aus {@link GdeltFeature}
+	 * @throws IOException wenn die Verbindung abgebrochen ist
+	 */
+	public synchronized void send(List<SimpleFeature> features) throws IOException {
+		for (SimpleFeature feature : features) {
+			String line = format(feature);
+			if (line != null) {
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Umwandeln eines Features in eine Zeile. Leere Texte kommen in der Webapp als NULL an
+	 * ({@link Event#fromFeature(SimpleFeature)}), Tabs, Zeilenumbrueche und Anfuehrungszeichen
+	 * werden ersetzt, damit der Converter die Zeile nicht anders teilt.
+	 * @param feature Feature mit den Attributen aus {@link GdeltFeature}
+	 * @return Zeile ohne Zeilenumbruch oder NULL, wenn Datum oder Koordinate fehlen
+	 */
+	static String format(SimpleFeature feature) {
+		Date date = (Date) feature.getAttribute(GdeltFeature.Attributes.SQLDATE.getName());
+		Point point = (Point) feature.getAttribute(GdeltFeature.Attributes.geom.getName());
+		if (date == null || point == null) {
+			return null;
+		}
+		StringBuilder line = new StringBuilder();
+		line.append(feature.getID()).append('\t').append(date.getTime()).append('\t')
+				.append(point.getY()).append('\t').append(point.getX());
+		for (GdeltFeature.Attributes attribute : TEXT_ATTRIBUTES) {
+			line.append('\t');
+			Object value = feature.getAttribute(attribute.getName());
+			if (value != null) {
+				line.append(value.toString().replace('\t', ' ').replace('\r', ' ').replace('\n', ' ').replace('"', '\''));
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * @param address Adresse als <code>host:port</code>
+	 * @return Host der Adresse
+	 */
+	public static String host(String address) {
+		int colon = address.lastIndexOf(':');
+		if (colon <= 0) {
+			throw new IllegalArgumentException("Adresse ohne Port: " + address);
+		}
+		return address.substring(0, colon);
+	}
+
+	/**
+	 * @param address Adresse als <code>host:port</code>
+	 * @return Port der Adresse
+	 */
+	public static int port(String address) {
+		return Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+	}
+
+	@Override
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Verbindung ist bereits beendet
+		}
+	}
+}
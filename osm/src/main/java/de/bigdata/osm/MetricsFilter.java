@@ -0,0 +1,119 @@
+package de.bigdata.osm;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.ServletContext;
+import javax.ws.rs.core.Context;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+
+/**
+ * Messung aller Requests an die REST-Schnittstelle, eingetragen in der web.xml.
+ * Beim Eingang wird ein {@link RequestTimings} in den Properties des Requests abgelegt, das die
+ * Endpunkte mit den Zeiten ihrer Phasen fuellen. Das Schreiben der Antwort wird ueber einen eigenen
+ * {@link ContainerResponseWriter} gemessen, der auch die Bytes zaehlt und den Request nach dem
+ * Schreiben in {@link QueryMetrics} uebernimmt.
+ * Ist <code>osm.metrics.timingHeaders</code> gesetzt, werden die bis zum Schreiben der Header
+ * gemessenen Zeiten als Server-Timing mitgeschickt. Bei den Streaming-Endpunkten sind das nur
+ * Filter und Planung, da Scan und Dekodieren erst waehrend des Schreibens stattfinden.
+ *
+ */
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+	public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+	@Context
+	private ServletContext context;
+
+	@Override
+	public ContainerRequest filter(ContainerRequest request) {
+		request.getProperties().put(RequestTimings.PROPERTY, new RequestTimings());
+		return request;
+	}
+
+	@Override
+	public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+		RequestTimings timings = (RequestTimings) request.getProperties().get(RequestTimings.PROPERTY);
+		if (timings != null) {
+			boolean headers = Boolean.parseBoolean(DataStoreManager.get(context).getSetting("metrics.timingHeaders", "false"));
+			response.setContainerResponseWriter(new MeasuringWriter(response.getContainerResponseWriter(),
+					timings, QueryMetrics.get(context), headers));
+		}
+		return response;
+	}
+
+	private static class MeasuringWriter implements ContainerResponseWriter {
+
+		private final ContainerResponseWriter writer;
+		private final RequestTimings timings;
+		private final QueryMetrics metrics;
+		private final boolean headers;
+		private int status;
+		private boolean written = false;
+		private long writeStart;
+		private long phaseMicros;
+
+		MeasuringWriter(ContainerResponseWriter writer, RequestTimings timings, QueryMetrics metrics, boolean headers) {
+			this.writer = writer;
+			this.timings = timings;
+			this.metrics = metrics;
+			this.headers = headers;
+		}
+
+		@Override
+		public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException {
+			status = response.getStatus();
+			if (headers) {
+				response.getHttpHeaders().putSingle(SERVER_TIMING_HEADER, timings.toServerTiming());
+			}
+			written = true;
+			writeStart = timings.start();
+			phaseMicros = timings.getPhaseMicros();
+			return new CountingOutputStream(writer.writeStatusAndHeaders(contentLength, response), timings);
+		}
+
+		@Override
+		public void finish() throws IOException {
+			try {
+				writer.finish();
+			} finally {
+				// Nur Endpunkte mit gemessenen Phasen erhalten eine Serialisierungszeit. Beim Streaming
+				// wird die Zeit fuer Scan und Dekodieren waehrend des Schreibens abgezogen.
+				if (written && timings.hasPhases()) {
+					long writeMicros = (System.nanoTime() - writeStart) / 1000;
+					timings.record(RequestTimings.SERIALIZE, writeMicros - (timings.getPhaseMicros() - phaseMicros));
+				}
+				metrics.record(timings, status);
+			}
+		}
+	}
+
+	// Zaehlt die geschriebenen Bytes, auch wenn der Client die Verbindung abbricht
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private final RequestTimings timings;
+
+		CountingOutputStream(OutputStream out, RequestTimings timings) {
+			super(out);
+			this.timings = timings;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			timings.addBytes(1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			timings.addBytes(len);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package de.bigdata.osm;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Containerklasse fuer die Kennzahlen aus {@link QueryMetrics}
+ *
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MetricsStats {
+
+	private long requests;
+	private long errors;
+	private long features;
+	private long bytes;
+	// Obergrenzen der Histogramm-Klassen, counts hat eine Klasse mehr fuer groessere Werte
+	private long[] boundsMillis;
+	private Map<String, Latency> latencies;
+
+	public MetricsStats() {
+	}
+
+	public long getRequests() {
+		return requests;
+	}
+	public void setRequests(long requests) {
+		this.requests = requests;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+	public void setErrors(long errors) {
+		this.errors = errors;
+	}
+
+	public long getFeatures() {
+		return features;
+	}
+	public void setFeatures(long features) {
+		this.features = features;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+
+	public long[] getBoundsMillis() {
+		return boundsMillis;
+	}
+	public void setBoundsMillis(long[] boundsMillis) {
+		this.boundsMillis = boundsMillis;
+	}
+
+	public Map<String, Latency> getLatencies() {
+		return latencies;
+	}
+	public void setLatencies(Map<String, Latency> latencies) {
+		this.latencies = latencies;
+	}
+
+	/**
+	 * Latenz-Histogramm einer Phase
+	 *
+	 */
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	public static class Latency {
+
+		private long count;
+		private double totalMillis;
+		private double maxMillis;
+		private long[] counts;
+
+		public Latency() {
+		}
+
+		public long getCount() {
+			return count;
+		}
+		public void setCount(long count) {
+			this.count = count;
+		}
+
+		public double getTotalMillis() {
+			return totalMillis;
+		}
+		public void setTotalMillis(double totalMillis) {
+			this.totalMillis = totalMillis;
+		}
+
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+		public void setMaxMillis(double maxMillis) {
+			this.maxMillis = maxMillis;
+		}
+
+		public long[] getCounts() {
+			return counts;
+		}
+		public void setCounts(long[] counts) {
+			this.counts = counts;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Erstellt beim Start der Webapp den {@link DataStoreManager}, den {@link QueryCache},
+ * {@link RunningQueries}, {@link QueryMetrics}, {@link LiveEvents} und den {@link HotTier} und schliesst
+ * die Verbindungen beim Undeploy
+ *
+ */
+public class OsmContextListener implements ServletContextListener {
+
+	private static final Logger LOG = Logger.getLogger(OsmContextListener.class.getName());
+
+	// Neuladen des HotTiers, NULL wenn er nicht eingeschaltet ist
+	private ScheduledExecutorService hotTierLoader;
+
+	@Override
+	public void contextInitialized(ServletContextEvent sce) {
+		ServletContext context = sce.getServletContext();
+		DataStoreManager manager;
+		try {
+			manager = new DataStoreManager(DataStoreManager.loadConfig(context));
+		} catch (IOException e) {
+			throw new IllegalStateException("Konfiguration konnte nicht geladen werden", e);
+		}
+		context.setAttribute(DataStoreManager.CONTEXT_ATTRIBUTE, manager);
+		
+		long cacheBytes = Long.parseLong(manager.getSetting("cache.maxBytes", "0"));
+		long cacheTtl = Long.parseLong(manager.getSetting("cache.ttlSeconds", "0")) * 1000;
+		context.setAttribute(QueryCache.CONTEXT_ATTRIBUTE, new QueryCache(cacheBytes, cacheTtl));
+		
+		int queryThreads = Integer.parseInt(manager.getSetting("query.threads", "8"));
+		context.setAttribute(RunningQueries.CONTEXT_ATTRIBUTE, new RunningQueries(queryThreads, ParallelScan.getParallelism(manager)));
+		context.setAttribute(QueryMetrics.CONTEXT_ATTRIBUTE, new QueryMetrics());
+		
+		int liveQueueSize = Integer.parseInt(manager.getSetting("live.queueSize", "1000"));
+		long liveIdle = Long.parseLong(manager.getSetting("live.idleSeconds", "300")) * 1000;
+		LiveEvents live = new LiveEvents(liveQueueSize, liveIdle);
+		context.setAttribute(LiveEvents.CONTEXT_ATTRIBUTE, live);
+		int hotDays = Integer.parseInt(manager.getSetting("hot.days", "0"));
+		if (hotDays > 0) {
+			long reloadMinutes = Math.max(1, Long.parseLong(manager.getSetting("hot.reloadMinutes", "15")));
+			startHotTier(context, manager, live, hotDays, reloadMinutes);
+		}
+		String streamConfig = manager.getSetting("live.streamConfig", "");
+		String streamAddress = manager.getSetting("live.streamAddress", "");
+		if (streamConfig.isEmpty() && !streamAddress.isEmpty()) {
+			// Zeilen des Ingests (GdeltIngest) annehmen
+			try {
+				streamConfig = LiveSource.config(manager.getServingFeatureTypeName(),
+						LiveSource.host(streamAddress), LiveSource.port(streamAddress));
+			} catch (IllegalArgumentException e) {
+				LOG.log(Level.WARNING, "osm.live.streamAddress ist keine Adresse host:port", e);
+			}
+		}
+		if (!streamConfig.isEmpty()) {
+			try {
+				live.connect(streamConfig, Integer.parseInt(manager.getSetting("live.cacheTimeoutSeconds", "60")));
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Quelle fuer neue Events nicht erreichbar", e);
+			}
+		}
+
+		// Verbindung direkt aufbauen, damit der erste Request nicht darauf warten muss.
+		// Schlaegt das fehl, wird beim ersten Request erneut verbunden.
+		try {
+			manager.getFeatureSource();
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "DataStore beim Start nicht erreichbar", e);
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "DataStore beim Start nicht erreichbar", e);
+		}
+	}
+
+	// Laden im Hintergrund, damit der Start nicht auf den Scan der letzten Tage wartet, danach
+	// regelmaessig neu, damit der HotTier auch ohne Quelle fuer neue Events aktuell bleibt.
+	// Nach zwei verpassten Ladevorgaengen ohne neue Events gehen Anfragen wieder an Accumulo.
+	private void startHotTier(ServletContext context, final DataStoreManager manager, LiveEvents live, int days,
+			long reloadMinutes) {
+		final HotTier hotTier = new HotTier(days, TimeUnit.MINUTES.toMillis(2 * reloadMinutes));
+		live.setHotTier(hotTier);
+		context.setAttribute(HotTier.CONTEXT_ATTRIBUTE, hotTier);
+		hotTierLoader = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "osm-hot-tier");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		hotTierLoader.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					hotTier.load(manager);
+				} catch (Exception e) {
+					LOG.log(Level.WARNING, "HotTier konnte nicht geladen werden, Anfragen gehen weiter an Accumulo", e);
+				}
+			}
+		}, 0, reloadMinutes, TimeUnit.MINUTES);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent sce) {
+		ServletContext context = sce.getServletContext();
+		if (hotTierLoader != null) {
+			hotTierLoader.shutdownNow();
+			hotTierLoader = null;
+		}
+		// Laufende Abfragen zuerst abbrechen, damit die Scanner vor dem DataStore geschlossen werden
+		RunningQueries queries = (RunningQueries) context.getAttribute(RunningQueries.CONTEXT_ATTRIBUTE);
+		if (queries != null) {
+			queries.shutdown();
+			context.removeAttribute(RunningQueries.CONTEXT_ATTRIBUTE);
+		}
+		LiveEvents live = (LiveEvents) context.getAttribute(LiveEvents.CONTEXT_ATTRIBUTE);
+		if (live != null) {
+			live.close();
+			context.removeAttribute(LiveEvents.CONTEXT_ATTRIBUTE);
+		}
+		DataStoreManager manager = (DataStoreManager) context.getAttribute(DataStoreManager.CONTEXT_ATTRIBUTE);
+		if (manager != null) {
+			manager.close();
+			context.removeAttribute(DataStoreManager.CONTEXT_ATTRIBUTE);
+		}
+		context.removeAttribute(HotTier.CONTEXT_ATTRIBUTE);
+		context.removeAttribute(QueryCache.CONTEXT_ATTRIBUTE);
+		context.removeAttribute(QueryMetrics.CONTEXT_ATTRIBUTE);
+	}
+}
@@ -0,0 +1,132 @@
+package de.bigdata.osm;
+
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Fortsetzungspunkt fuer das seitenweise Laden der Events. Im Z3-Index liegen die Events nach
+ * Zeit und erst danach nach Ort sortiert, eine Seite besteht deshalb aus ganzen Tagen und der
+ * Cursor enthaelt den naechsten noch nicht gelesenen Tag. Zusaetzlich wird ein Fingerabdruck
+ * des Filters gespeichert, damit ein Cursor nicht mit einem anderen Filter verwendet wird.
+ *
+ */
+public final class PageCursor {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private PageCursor() {
+	}
+
+	/**
+	 * Erstellen des Cursors fuer die naechste Seite
+	 * @param events Anfrage des Frontends
+	 * @param nextDay erster Tag der naechsten Seite
+	 * @return undurchsichtiger Cursor fuer das Frontend
+	 */
+	public static String encode(Events events, Date nextDay) {
+		return encode(events, nextDay, null);
+	}
+
+	/**
+	 * Erstellen des Cursors fuer die naechste Seite einer Stichprobe. Anteil und Gesamtzahl der ersten Seite
+	 * werden mitgegeben, damit alle Seiten dieselbe Stichprobe liefern und nicht erneut gezaehlt werden muss.
+	 * @param events Anfrage des Frontends
+	 * @param nextDay erster Tag der naechsten Seite
+	 * @param sampling Stichprobe der ersten Seite oder NULL ohne Stichprobe
+	 * @return undurchsichtiger Cursor fuer das Frontend
+	 */
+	public static String encode(Events events, Date nextDay, Sampling sampling) {
+		String plain = nextDay.getTime() + ":" + fingerprint(events);
+		if (sampling != null) {
+			plain += ":" + sampling.getRate() + ":" + sampling.getTotal();
+		}
+		return DatatypeConverter.printBase64Binary(plain.getBytes(UTF8));
+	}
+
+	/**
+	 * Auslesen des Cursors aus einer Anfrage
+	 * @param events Anfrage des Frontends mit Cursor
+	 * @return erster Tag der angeforderten Seite
+	 * @throws WebApplicationException mit Status 400, wenn der Cursor ungueltig ist
+	 */
+	public static Date decode(Events events) {
+		return new Date(Long.parseLong(parse(events)[0]));
+	}
+
+	/**
+	 * Auslesen der Stichprobe aus einer Anfrage
+	 * @param events Anfrage des Frontends mit Cursor
+	 * @return Stichprobe mit Anteil und Gesamtzahl der ersten Seite oder NULL, wenn der Cursor keine
+	 *         Stichprobe enthaelt
+	 * @throws WebApplicationException mit Status 400, wenn der Cursor ungueltig ist
+	 */
+	public static Sampling decodeSampling(Events events) {
+		String[] parts = parse(events);
+		return parts.length > 2 ? Sampling.withRate(Double.parseDouble(parts[2]), Long.parseLong(parts[3])) : null;
+	}
+
+	// Tag, Fingerabdruck und optional Anteil und Gesamtzahl der Stichprobe
+	private static String[] parse(Events events) {
+		try {
+			String plain = new String(DatatypeConverter.parseBase64Binary(events.getCursor()), UTF8);
+			String[] parts = plain.split(":");
+			if ((parts.length == 2 || parts.length == 4) && parts[1].equals(Integer.toString(fingerprint(events)))) {
+				Long.parseLong(parts[0]);
+				if (parts.length > 2) {
+					Double.parseDouble(parts[2]);
+					Long.parseLong(parts[3]);
+				}
+				return parts;
+			}
+		} catch (IllegalArgumentException e) {
+			// ungueltiger Cursor, siehe unten
+		}
+		throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+				.entity("Ungueltiger Cursor fuer diesen Filter").build());
+	}
+
+	/**
+	 * Beginn des Tages, auf den ein Datum faellt
+	 * @param date Datum
+	 * @return Datum um 0 Uhr
+	 */
+	public static Date startOfDay(Date date) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.setTime(date);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar.getTime();
+	}
+
+	/**
+	 * Beginn des folgenden Tages
+	 * @param day Datum um 0 Uhr
+	 * @return Datum des Folgetages um 0 Uhr
+	 */
+	public static Date nextDay(Date day) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(day);
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		return calendar.getTime();
+	}
+
+	private static int fingerprint(Events events) {
+		Bounds b = events.getBounds();
+		StringBuilder filter = new StringBuilder();
+		filter.append(b.getLeft()).append(',').append(b.getBottom()).append(',')
+		      .append(b.getRight()).append(',').append(b.getTop())
+		      .append('|').append(events.getDateFrom().getTime())
+		      .append('|').append(events.getDateTo().getTime())
+		      .append('|').append(events.getEventIDs())
+		      .append('|').append(events.getKeywords());
+		return filter.toString().hashCode();
+	}
+}
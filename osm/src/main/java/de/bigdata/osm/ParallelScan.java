@@ -0,0 +1,87 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Aufteilung einer grossen Anfrage in Teilanfragen, die parallel gelesen werden, siehe
+ * {@link RunningQueries#scanAll(RunningQueries.Ticket, List)}. Geteilt wird nur nach der Zeit, da der
+ * Z3-Index nach Wochen seit 1970 partitioniert ist und jede Woche einen eigenen Bereich in Accumulo
+ * belegt. Die Teilanfragen bestehen aus ganzen Tagen und ueberschneiden sich daher nicht, jedes Event
+ * wird genau einmal gelesen. Eine Aufteilung der BBox waere nicht disjunkt, da BBOX die Kanten einschliesst.
+ *
+ */
+public final class ParallelScan {
+
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	// Laenge der Zeitabschnitte im Z3-Index von GeoMesa
+	private static final long WEEK_MILLIS = 7 * DAY_MILLIS;
+
+	private ParallelScan() {
+	}
+
+	/**
+	 * Anzahl der gleichzeitig gelesenen Teilanfragen einer Anfrage
+	 * @param manager Verbindung zur Datenbank, fuer die Einstellungen
+	 * @return Wert von <code>osm.scan.parallelism</code>, 1 schaltet das parallele Lesen ab
+	 */
+	public static int getParallelism(DataStoreManager manager) {
+		return Math.max(1, Integer.parseInt(manager.getSetting("scan.parallelism", "4")));
+	}
+
+	/**
+	 * Aufteilen der Anfrage in Zeitabschnitte nach den Wochen des Z3-Index. Ergeben sich weniger Wochen
+	 * als parallel gelesen werden koennen, wird der Zeitraum stattdessen in gleich lange Abschnitte geteilt.
+	 * Kurze Zeitraeume und Anfragen ueber den Attribut-Index werden nicht aufgeteilt.
+	 * @param manager Verbindung zur Datenbank, fuer die Einstellungen
+	 * @param events Anfrage mit BBox, Zeitraum und Filtern
+	 * @return Teilanfragen in zeitlicher Reihenfolge, nur die Anfrage selbst, wenn nicht aufgeteilt wird
+	 * @throws IOException
+	 */
+	public static List<Events> split(DataStoreManager manager, Events events) throws IOException {
+		int parallelism = getParallelism(manager);
+		Date first = PageCursor.startOfDay(events.getDateFrom());
+		Date last = PageCursor.startOfDay(events.getDateTo());
+		List<Date> days = new ArrayList<Date>();
+		for (Date day = first; !day.after(last); day = PageCursor.nextDay(day)) {
+			days.add(day);
+		}
+		if (parallelism <= 1 || days.size() < Integer.parseInt(manager.getSetting("scan.minDays", "14"))
+				|| EventFilter.preferAttributeIndex(manager, events)) {
+			return Collections.singletonList(events);
+		}
+
+		// Erster Tag jedes Abschnitts
+		List<Integer> starts = new ArrayList<Integer>();
+		starts.add(0);
+		for (int i = 1; i < days.size(); i++) {
+			if (week(days.get(i)) != week(days.get(i - 1))) {
+				starts.add(i);
+			}
+		}
+		if (starts.size() < parallelism) {
+			starts.clear();
+			int length = (days.size() + parallelism - 1) / parallelism;
+			for (int i = 0; i < days.size(); i += length) {
+				starts.add(i);
+			}
+		}
+
+		List<Events> ranges = new ArrayList<Events>(starts.size());
+		for (int i = 0; i < starts.size(); i++) {
+			int end = i + 1 < starts.size() ? starts.get(i + 1) - 1 : days.size() - 1;
+			Events range = new Events(events);
+			range.setDateFrom(days.get(starts.get(i)));
+			range.setDateTo(days.get(end));
+			ranges.add(range);
+		}
+		return ranges;
+	}
+
+	private static long week(Date day) {
+		return day.getTime() / WEEK_MILLIS;
+	}
+}
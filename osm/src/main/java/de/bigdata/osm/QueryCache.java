@@ -0,0 +1,245 @@
+package de.bigdata.osm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Zwischenspeicher fuer Abfrageergebnisse, damit wiederholte Ansichten nicht erneut aus Accumulo
+ * gelesen werden. Der Schluessel ist der normalisierte Filter: die BBox wird auf ein Raster
+ * vergroessert, EventIDs und Keywords werden sortiert. Abgefragt wird dann die vergroesserte BBox,
+ * beim Ausliefern werden die Events wieder auf die angefragte BBox beschraenkt.
+ * Eintraege werden nach Ablauf der TTL oder bei Ueberschreiten der Gesamtgroesse (LRU) verworfen.
+ *
+ */
+public class QueryCache {
+
+	// Name des Attributs, unter dem der Cache im ServletContext abgelegt wird
+	public static final String CONTEXT_ATTRIBUTE = QueryCache.class.getName();
+
+	// Anteil der BBox, auf den die Kanten gerundet werden (1/8 der laengeren Seite)
+	private static final int SNAP_FRACTION = 8;
+	// Geschaetzter Speicherbedarf eines Events ohne Strings und eines Strings ohne Zeichen
+	private static final long EVENT_BYTES = 64;
+	private static final long STRING_BYTES = 40;
+
+	private final long maxBytes;
+	private final long ttlMillis;
+	// access-order: der am laengsten nicht genutzte Eintrag steht vorne
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param maxBytes maximale Gesamtgroesse aller Eintraege, 0 deaktiviert den Cache
+	 * @param ttlMillis Lebensdauer eines Eintrags
+	 */
+	public QueryCache(long maxBytes, long ttlMillis) {
+		this.maxBytes = maxBytes;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * Liefert den im ServletContext abgelegten Cache
+	 * @param context ServletContext der Webapp
+	 * @return {@link QueryCache} der Anwendung
+	 */
+	public static QueryCache get(ServletContext context) {
+		QueryCache cache = (QueryCache) context.getAttribute(CONTEXT_ATTRIBUTE);
+		if (cache == null) {
+			throw new IllegalStateException("QueryCache wurde nicht initialisiert");
+		}
+		return cache;
+	}
+
+	public boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	/**
+	 * Groesste Ergebnismenge, die noch in den Cache aufgenommen wird
+	 * @return Groesse in Bytes
+	 */
+	public long getMaxEntryBytes() {
+		return maxBytes / 8;
+	}
+
+	/**
+	 * Normalisieren der Anfrage: BBox auf das Raster vergroessern, Tage ohne Uhrzeit,
+	 * EventIDs und Keywords sortiert
+	 * @param events Anfrage des Frontends
+	 * @return neue Anfrage, deren Ergebnis die urspruengliche Anfrage enthaelt
+	 */
+	public static Events normalize(Events events) {
+		Bounds bounds = events.getBounds();
+		double size = Math.max(bounds.getRight() - bounds.getLeft(), bounds.getTop() - bounds.getBottom());
+		// Rasterweite als Zweierpotenz, damit leicht verschobene BBoxen auf denselben Schluessel fallen
+		double snap = size > 0 ? Math.pow(2, Math.floor(Math.log(size / SNAP_FRACTION) / Math.log(2))) : 1;
+
+		Bounds snapped = new Bounds();
+		snapped.setLeft(Math.max(-180, Math.floor(bounds.getLeft() / snap) * snap));
+		snapped.setBottom(Math.max(-90, Math.floor(bounds.getBottom() / snap) * snap));
+		snapped.setRight(Math.min(180, Math.ceil(bounds.getRight() / snap) * snap));
+		snapped.setTop(Math.min(90, Math.ceil(bounds.getTop() / snap) * snap));
+
+		Events normalized = new Events();
+		normalized.setBounds(snapped);
+		normalized.setDateFrom(PageCursor.startOfDay(events.getDateFrom()));
+		normalized.setDateTo(PageCursor.startOfDay(events.getDateTo()));
+		normalized.setEventIDs(sorted(events.getEventIDs()));
+		normalized.setKeywords(sorted(events.getKeywords()));
+		normalized.setZoom(events.getZoom());
+		return normalized;
+	}
+
+	/**
+	 * Schluessel fuer eine mit {@link #normalize(Events)} erstellte Anfrage
+	 * @param normalized normalisierte Anfrage
+	 * @return Schluessel fuer den Cache
+	 */
+	public static String key(Events normalized) {
+		Bounds b = normalized.getBounds();
+		StringBuilder key = new StringBuilder();
+		key.append(b.getLeft()).append(',').append(b.getBottom()).append(',')
+		   .append(b.getRight()).append(',').append(b.getTop())
+		   .append('|').append(normalized.getDateFrom().getTime())
+		   .append('|').append(normalized.getDateTo().getTime())
+		   .append('|').append(normalized.getEventIDs())
+		   .append('|').append(normalized.getKeywords());
+		return key.toString();
+	}
+
+	/**
+	 * Pruefen, ob ein Event in der angefragten BBox liegt
+	 * @param bounds angefragte BBox
+	 * @param event Event aus dem Cache oder der vergroesserten Abfrage
+	 * @return true, wenn das Event ausgeliefert werden soll
+	 */
+	public static boolean contains(Bounds bounds, Event event) {
+		return event.getLon() >= bounds.getLeft() && event.getLon() <= bounds.getRight()
+				&& event.getLat() >= bounds.getBottom() && event.getLat() <= bounds.getTop();
+	}
+
+	/**
+	 * Geschaetzter Speicherbedarf eines Events
+	 * @param event Event
+	 * @return Groesse in Bytes
+	 */
+	public static long estimateSize(Event event) {
+		return EVENT_BYTES + size(event.getEventCode()) + size(event.getActor1Name())
+				+ size(event.getActor2Name()) + size(event.getGeoName()) + size(event.getSourceURL());
+	}
+
+	/**
+	 * Abfrage eines Eintrags
+	 * @param key Schluessel aus {@link #key(Events)}
+	 * @return gespeicherte Events oder NULL
+	 */
+	public synchronized List<Event> get(String key) {
+		if (!isEnabled()) {
+			return null;
+		}
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expires < System.currentTimeMillis()) {
+			remove(key, entry);
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.events;
+	}
+
+	/**
+	 * Aufnehmen eines Ergebnisses, aeltere Eintraege werden bei Bedarf verdraengt
+	 * @param key Schluessel aus {@link #key(Events)}
+	 * @param events vollstaendiges Ergebnis der normalisierten Anfrage
+	 * @param size geschaetzte Groesse aus {@link #estimateSize(Event)}
+	 */
+	public synchronized void put(String key, List<Event> events, long size) {
+		if (!isEnabled() || size > getMaxEntryBytes()) {
+			return;
+		}
+		Entry previous = entries.get(key);
+		if (previous != null) {
+			remove(key, previous);
+		}
+		long now = System.currentTimeMillis();
+		evict(now, size);
+		entries.put(key, new Entry(Collections.unmodifiableList(events), size, now + ttlMillis));
+		bytes += size;
+	}
+
+	/**
+	 * Leeren des Caches, z.B. nach einem neuen Ingest
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Aktueller Zustand des Caches fuer die Ausgabe als JSON
+	 * @return {@link CacheStats}
+	 */
+	public synchronized CacheStats getStats() {
+		CacheStats stats = new CacheStats();
+		stats.setEntries(entries.size());
+		stats.setBytes(bytes);
+		stats.setMaxBytes(maxBytes);
+		stats.setHits(hits);
+		stats.setMisses(misses);
+		stats.setEvictions(evictions);
+		return stats;
+	}
+
+	// Verwerfen abgelaufener Eintraege und der am laengsten nicht genutzten, bis der neue Eintrag passt
+	private void evict(long now, long required) {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (entry.expires < now || bytes + required > maxBytes) {
+				iterator.remove();
+				bytes -= entry.size;
+				evictions++;
+			}
+		}
+	}
+
+	private void remove(String key, Entry entry) {
+		entries.remove(key);
+		bytes -= entry.size;
+	}
+
+	private static long size(String value) {
+		return value == null ? 0 : STRING_BYTES + 2 * value.length();
+	}
+
+	private static List<String> sorted(List<String> values) {
+		List<String> sorted = new ArrayList<String>(values);
+		Collections.sort(sorted);
+		return sorted;
+	}
+
+	private static class Entry {
+		private final List<Event> events;
+		private final long size;
+		private final long expires;
+
+		Entry(List<Event> events, long size, long expires) {
+			this.events = events;
+			this.size = size;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package de.bigdata.osm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Anwendungsweite Kennzahlen aller Requests: Zaehler fuer Requests, Fehler, gelesene Events und
+ * geschriebene Bytes sowie ein Latenz-Histogramm pro Phase aus {@link RequestTimings}.
+ * Die Werte werden seit dem Start der Webapp gezaehlt.
+ *
+ */
+public class QueryMetrics {
+
+	// Name des Attributs, unter dem die Kennzahlen im ServletContext abgelegt werden
+	public static final String CONTEXT_ATTRIBUTE = QueryMetrics.class.getName();
+
+	// Obergrenzen der Histogramm-Klassen in Millisekunden, die letzte Klasse ist nach oben offen
+	private static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong features = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final Map<String, Latency> latencies = new LinkedHashMap<String, Latency>();
+
+	public QueryMetrics() {
+		for (String phase : RequestTimings.PHASES) {
+			latencies.put(phase, new Latency());
+		}
+		latencies.put(RequestTimings.TOTAL, new Latency());
+	}
+
+	/**
+	 * Liefert die im ServletContext abgelegten Kennzahlen
+	 * @param context ServletContext der Webapp
+	 * @return {@link QueryMetrics} der Anwendung
+	 */
+	public static QueryMetrics get(ServletContext context) {
+		QueryMetrics metrics = (QueryMetrics) context.getAttribute(CONTEXT_ATTRIBUTE);
+		if (metrics == null) {
+			throw new IllegalStateException("QueryMetrics wurde nicht initialisiert");
+		}
+		return metrics;
+	}
+
+	/**
+	 * Uebernehmen eines abgeschlossenen Requests. Phasen, die im Request nicht vorkamen, werden
+	 * nicht gezaehlt, damit z.B. Anfragen aus dem Cache die Scan-Zeiten nicht verfaelschen.
+	 * @param timings Zeiten des Requests
+	 * @param status HTTP-Status der Antwort
+	 */
+	public void record(RequestTimings timings, int status) {
+		requests.incrementAndGet();
+		if (status >= 400) {
+			errors.incrementAndGet();
+		}
+		features.addAndGet(timings.getFeatures());
+		bytes.addAndGet(timings.getBytes());
+		for (String phase : RequestTimings.PHASES) {
+			long micros = timings.getMicros(phase);
+			if (micros > 0) {
+				latencies.get(phase).add(micros);
+			}
+		}
+		latencies.get(RequestTimings.TOTAL).add(timings.getElapsedMicros());
+	}
+
+	/**
+	 * Aktueller Zustand fuer die Ausgabe als JSON
+	 * @return {@link MetricsStats}
+	 */
+	public MetricsStats getStats() {
+		MetricsStats stats = new MetricsStats();
+		stats.setRequests(requests.get());
+		stats.setErrors(errors.get());
+		stats.setFeatures(features.get());
+		stats.setBytes(bytes.get());
+		stats.setBoundsMillis(BOUNDS_MILLIS.clone());
+		Map<String, MetricsStats.Latency> phases = new LinkedHashMap<String, MetricsStats.Latency>();
+		for (Map.Entry<String, Latency> entry : latencies.entrySet()) {
+			phases.put(entry.getKey(), entry.getValue().getStats());
+		}
+		stats.setLatencies(phases);
+		return stats;
+	}
+
+	// Histogramm einer Phase, die Klassen werden ohne Sperren gezaehlt
+	private static class Latency {
+		private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalMicros = new AtomicLong();
+		private final AtomicLong maxMicros = new AtomicLong();
+
+		void add(long micros) {
+			int bucket = 0;
+			while (bucket < BOUNDS_MILLIS.length && micros > BOUNDS_MILLIS[bucket] * 1000) {
+				bucket++;
+			}
+			counts.incrementAndGet(bucket);
+			count.incrementAndGet();
+			totalMicros.addAndGet(micros);
+			long max = maxMicros.get();
+			while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+				max = maxMicros.get();
+			}
+		}
+
+		MetricsStats.Latency getStats() {
+			MetricsStats.Latency stats = new MetricsStats.Latency();
+			long[] values = new long[counts.length()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = counts.get(i);
+			}
+			stats.setCounts(values);
+			stats.setCount(count.get());
+			stats.setTotalMillis(totalMicros.get() / 1000.0);
+			stats.setMaxMillis(maxMicros.get() / 1000.0);
+			return stats;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package de.bigdata.osm;
+
+import java.util.Locale;
+
+import org.locationtech.geomesa.utils.stats.Timings;
+import org.locationtech.geomesa.utils.stats.TimingsImpl;
+
+import com.sun.jersey.api.core.HttpContext;
+
+/**
+ * Laufzeiten der einzelnen Phasen eines Requests. Die Werte werden wie in GeoMesa in {@link Timings}
+ * gesammelt, allerdings in Mikrosekunden, da einzelne Aufrufe von hasNext/next oft kuerzer als eine
+ * Millisekunde sind. Die Zahl der Aufrufe von {@link #DECODE} entspricht der Anzahl gelesener Events.
+ * Erstellt wird das Objekt von {@link MetricsFilter}, der es nach dem Schreiben der Antwort in
+ * {@link QueryMetrics} uebernimmt. Threadsicher, da die Anfragen eines Batches parallel in dasselbe
+ * Objekt messen, die Phasen enthalten dann die Summe ueber alle Threads.
+ *
+ */
+public class RequestTimings {
+
+	// Schluessel in den Properties des Requests
+	public static final String PROPERTY = RequestTimings.class.getName();
+
+	// Aufbau des GeoTools-Filters aus der Anfrage
+	public static final String FILTER = "filter";
+	// Auswahl des Index und Aufbau des BatchScanners in GeoMesa
+	public static final String PLANNING = "planning";
+	// Warten auf die Tablet Server (hasNext/next)
+	public static final String SCAN = "scan";
+	// Dekodieren der Kryo-Attribute in ein Event
+	public static final String DECODE = "decode";
+	// Schreiben der Antwort ohne die Zeiten fuer Scan und Dekodieren beim Streaming
+	public static final String SERIALIZE = "serialize";
+	// Gesamtdauer des Requests
+	public static final String TOTAL = "total";
+
+	static final String[] PHASES = {FILTER, PLANNING, SCAN, DECODE, SERIALIZE};
+
+	private final long started = System.nanoTime();
+	private final Timings timings = new TimingsImpl();
+	private long bytes = 0;
+
+	/**
+	 * Liefert die Zeiten des aktuellen Requests
+	 * @param httpContext Kontext des Requests in Jersey
+	 * @return {@link RequestTimings} aus {@link MetricsFilter} oder ein neues Objekt, das nicht ausgewertet wird
+	 */
+	public static RequestTimings get(HttpContext httpContext) {
+		RequestTimings timings = (RequestTimings) httpContext.getProperties().get(PROPERTY);
+		return timings != null ? timings : new RequestTimings();
+	}
+
+	/**
+	 * Beginn einer Phase
+	 * @return Startzeit fuer {@link #stop(String, long)}
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Ende einer Phase, mehrere Aufrufe fuer dieselbe Phase werden addiert
+	 * @param phase Name der Phase, z.B. {@link #SCAN}
+	 * @param start Rueckgabewert von {@link #start()}
+	 */
+	public void stop(String phase, long start) {
+		record(phase, (System.nanoTime() - start) / 1000);
+	}
+
+	/**
+	 * Eintragen einer anderweitig gemessenen Dauer
+	 * @param phase Name der Phase
+	 * @param micros Dauer in Mikrosekunden
+	 */
+	public synchronized void record(String phase, long micros) {
+		timings.occurrence(phase, Math.max(0, micros));
+	}
+
+	/**
+	 * Summe der Laufzeiten einer Phase
+	 * @param phase Name der Phase
+	 * @return Dauer in Mikrosekunden
+	 */
+	public synchronized long getMicros(String phase) {
+		return timings.occurrences(phase) > 0 ? timings.time(phase) : 0;
+	}
+
+	/**
+	 * Pruefen, ob der Endpunkt Phasen gemessen hat
+	 * @return true, wenn mindestens eine Phase eingetragen wurde
+	 */
+	public synchronized boolean hasPhases() {
+		for (String phase : PHASES) {
+			if (timings.occurrences(phase) > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Summe aller gemessenen Phasen
+	 * @return Dauer in Mikrosekunden
+	 */
+	public synchronized long getPhaseMicros() {
+		long micros = 0;
+		for (String phase : PHASES) {
+			micros += getMicros(phase);
+		}
+		return micros;
+	}
+
+	/**
+	 * Dauer seit dem Eingang des Requests
+	 * @return Dauer in Mikrosekunden
+	 */
+	public long getElapsedMicros() {
+		return (System.nanoTime() - started) / 1000;
+	}
+
+	/**
+	 * Anzahl der aus Accumulo gelesenen Events
+	 * @return Anzahl
+	 */
+	public synchronized long getFeatures() {
+		return timings.occurrences(DECODE);
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+	public synchronized void addBytes(long bytes) {
+		this.bytes += bytes;
+	}
+
+	/**
+	 * Wert fuer den Header Server-Timing, der in den Entwicklertools der Browser angezeigt wird
+	 * @return z.B. <code>filter;dur=0.412, planning;dur=12.3, total;dur=80.1</code>
+	 */
+	public synchronized String toServerTiming() {
+		StringBuilder header = new StringBuilder();
+		for (String phase : PHASES) {
+			if (timings.occurrences(phase) > 0) {
+				appendTiming(header, phase, timings.time(phase));
+			}
+		}
+		appendTiming(header, TOTAL, getElapsedMicros());
+		return header.toString();
+	}
+
+	private static void appendTiming(StringBuilder header, String phase, long micros) {
+		if (header.length() > 0) {
+			header.append(", ");
+		}
+		header.append(phase).append(";dur=").append(String.format(Locale.ROOT, "%.3f", micros / 1000.0));
+	}
+}
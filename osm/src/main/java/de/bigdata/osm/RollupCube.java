@@ -0,0 +1,341 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.SchemaException;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.geomesa.accumulo.index.Constants;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Tageswuerfel fuer Uebersichtsabfragen. Nach dem Ingest werden die Events jedes betroffenen Tages
+ * pro Geohash-Zelle, EventRootCode und QuadClass neu gezaehlt und GoldsteinScale und AvgTone
+ * aufsummiert. Der Wuerfel liegt als eigener FeatureType neben den Events und wird wie diese ueber den
+ * Z3-Index abgefragt, enthaelt aber pro Tag nur eine Zeile je belegter Zelle und Kategorie.
+ * Abfragen nutzen ihn erst ab <code>osm.rollup.fromDate</code>, siehe {@link DataStoreManager#hasRollup(Events)}.
+ *
+ */
+public class RollupCube {
+
+	// Laenge der Geohashes: 4 Zeichen = 20 Bit, ca. 0,35 x 0,18 Grad
+	public static final int GEOHASH_PRECISION = 4;
+	// Ausdehnung einer Zelle in Grad
+	public static final double CELL_WIDTH = 360.0 / (1 << (GEOHASH_PRECISION * 5 / 2));
+	public static final double CELL_HEIGHT = 180.0 / (1 << (GEOHASH_PRECISION * 5 - GEOHASH_PRECISION * 5 / 2));
+
+	public static final String DAY = "day";
+	public static final String CELL = "cell";
+	public static final String ROOT_CODE = GdeltFeature.Attributes.EventRootCode.getName();
+	public static final String QUAD_CLASS = GdeltFeature.Attributes.QuadClass.getName();
+	public static final String COUNT = "count";
+	public static final String GOLDSTEIN_SUM = "GoldsteinSum";
+	public static final String TONE_SUM = "AvgToneSum";
+	public static final String GEOM = "geom";
+
+	private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+	// Attribute der Events, die fuer den Wuerfel gelesen werden
+	private static final String[] EVENT_PROPERTIES = new String[] {
+		GdeltFeature.Attributes.geom.getName(),
+		GdeltFeature.Attributes.SQLDATE.getName(),
+		ROOT_CODE,
+		QUAD_CLASS,
+		GdeltFeature.Attributes.GoldsteinScale.getName(),
+		GdeltFeature.Attributes.AvgTone.getName()
+	};
+
+	private final Map<String, Cell> cells = new HashMap<String, Cell>();
+
+	/**
+	 * FeatureType des Wuerfels, SQLDATE wird auf den Tag und die Koordinate auf den Mittelpunkt
+	 * der Geohash-Zelle abgebildet
+	 * @param featureName Name des FeatureTypes, z.B. "event_daily"
+	 * @return FeatureType fuer GeoMesa
+	 * @throws SchemaException
+	 */
+	public static SimpleFeatureType buildFeatureType(String featureName) throws SchemaException {
+		String spec = DAY + ":Date," + CELL + ":String," + ROOT_CODE + ":String," + QUAD_CLASS + ":Integer,"
+				+ COUNT + ":Long," + GOLDSTEIN_SUM + ":Double," + TONE_SUM + ":Double,*" + GEOM + ":Point:srid=4326";
+		SimpleFeatureType featureType = DataUtilities.createType(featureName, spec);
+		featureType.getUserData().put(Constants.SF_PROPERTY_START_TIME, DAY);
+		return featureType;
+	}
+
+	/**
+	 * Neuaufbau des Wuerfels fuer einzelne Tage aus dem FeatureType der Events. Die Zellen eines Tages
+	 * werden vollstaendig neu gezaehlt und ersetzen die vorhandenen, ein erneuter Ingest derselben
+	 * Events aendert den Wuerfel daher nicht.
+	 * @param store DataStore, in dem beide FeatureTypes angelegt sind
+	 * @param eventTypeName Name des vollstaendigen FeatureTypes der Events
+	 * @param typeName Name des FeatureTypes des Wuerfels
+	 * @param days Tage, jeweils ein beliebiger Zeitpunkt des Tages
+	 * @return Anzahl der geschriebenen Zellen
+	 * @throws IOException
+	 */
+	public static int rebuild(DataStore store, String eventTypeName, String typeName, Collection<Date> days)
+			throws IOException {
+		FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+		String date = GdeltFeature.Attributes.SQLDATE.getName();
+		Set<Date> sorted = new TreeSet<Date>();
+		for (Date day : days) {
+			sorted.add(PageCursor.startOfDay(day));
+		}
+		int written = 0;
+		for (Date day : sorted) {
+			RollupCube cube = new RollupCube();
+			Filter filter = ff.and(ff.greaterOrEqual(ff.property(date), ff.literal(day)),
+					ff.less(ff.property(date), ff.literal(PageCursor.nextDay(day))));
+			Query query = new Query(eventTypeName, filter, EVENT_PROPERTIES);
+			SimpleFeatureIterator iterator = store.getFeatureSource(eventTypeName).getFeatures(query).features();
+			try {
+				while (iterator.hasNext()) {
+					cube.add(iterator.next());
+				}
+			} finally {
+				iterator.close();
+			}
+			written += cube.replaceDay(store, typeName, day);
+		}
+		return written;
+	}
+
+	/**
+	 * Zaehlen eines Events
+	 * @param event Feature vom Typ {@link GdeltFeature}
+	 */
+	public void add(SimpleFeature event) {
+		Point point = (Point) event.getDefaultGeometry();
+		Date date = (Date) event.getAttribute(GdeltFeature.Attributes.SQLDATE.getName());
+		if (point == null || date == null) {
+			return;
+		}
+		Date day = PageCursor.startOfDay(date);
+		String cell = geohash(point.getY(), point.getX(), GEOHASH_PRECISION);
+		String rootCode = (String) event.getAttribute(ROOT_CODE);
+		Integer quadClass = (Integer) event.getAttribute(QUAD_CLASS);
+		String id = id(day, cell, rootCode, quadClass);
+
+		Cell entry = cells.get(id);
+		if (entry == null) {
+			entry = new Cell(day, cell, rootCode, quadClass);
+			cells.put(id, entry);
+		}
+		entry.count++;
+		entry.goldsteinSum += number(event.getAttribute(GdeltFeature.Attributes.GoldsteinScale.getName()));
+		entry.toneSum += number(event.getAttribute(GdeltFeature.Attributes.AvgTone.getName()));
+	}
+
+	/**
+	 * Ersetzen der Zeilen eines Tages durch die gezaehlten Zellen. Da Tag, Zelle und damit alle
+	 * Indexschluessel gleich bleiben, ueberschreibt GeoMesa die vorhandenen Eintraege, Zellen ohne
+	 * Events werden danach entfernt. So fehlen dem Tag waehrend des Schreibens keine Zellen.
+	 * @param store DataStore, in dem der FeatureType bereits angelegt ist
+	 * @param typeName Name des FeatureTypes
+	 * @param day Beginn des Tages, alle gezaehlten Events muessen an diesem Tag liegen
+	 * @return Anzahl der geschriebenen Zellen
+	 * @throws IOException
+	 */
+	int replaceDay(DataStore store, String typeName, Date day) throws IOException {
+		FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+		Set<FeatureId> stale = new HashSet<FeatureId>();
+		SimpleFeatureIterator iterator = store.getFeatureSource(typeName)
+				.getFeatures(ff.equals(ff.property(DAY), ff.literal(day))).features();
+		try {
+			while (iterator.hasNext()) {
+				String id = iterator.next().getID();
+				if (!cells.containsKey(id)) {
+					stale.add(ff.featureId(id));
+				}
+			}
+		} finally {
+			iterator.close();
+		}
+		int written = write(store, typeName);
+		if (!stale.isEmpty()) {
+			((SimpleFeatureStore) store.getFeatureSource(typeName)).removeFeatures(ff.id(stale));
+		}
+		return written;
+	}
+
+	private int write(DataStore store, String typeName) throws IOException {
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+		FeatureWriter<SimpleFeatureType, SimpleFeature> writer =
+				store.getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT);
+		try {
+			for (Map.Entry<String, Cell> entry : cells.entrySet()) {
+				Cell cell = entry.getValue();
+				SimpleFeature feature = writer.next();
+				feature.setAttribute(DAY, cell.day);
+				feature.setAttribute(CELL, cell.cell);
+				feature.setAttribute(ROOT_CODE, cell.rootCode);
+				feature.setAttribute(QUAD_CLASS, cell.quadClass);
+				feature.setAttribute(COUNT, cell.count);
+				feature.setAttribute(GOLDSTEIN_SUM, cell.goldsteinSum);
+				feature.setAttribute(TONE_SUM, cell.toneSum);
+				double[] center = center(cell.cell);
+				feature.setDefaultGeometry(geometryFactory.createPoint(new Coordinate(center[1], center[0])));
+				// feste ID, damit ein erneuter Ingest die Zeile ersetzt statt sie zu verdoppeln
+				feature.getUserData().put(Hints.PROVIDED_FID, entry.getKey());
+				writer.write();
+			}
+		} finally {
+			writer.close();
+		}
+		int written = cells.size();
+		cells.clear();
+		return written;
+	}
+
+	/**
+	 * Pruefen, ob eine Anfrage aus dem Wuerfel beantwortet werden kann: keine Keywords und nur
+	 * EventRootCodes (2 Stellen) als EventCodes
+	 * @param events Anfrage des Frontends
+	 * @return true, wenn der Wuerfel alle Filter enthaelt
+	 */
+	public static boolean canAnswer(Events events) {
+		if (!events.getKeywords().isEmpty()) {
+			return false;
+		}
+		for (String eventID : events.getEventIDs()) {
+			if (eventID.length() != 2) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Query auf den Wuerfel fuer eine mit {@link #canAnswer(Events)} gepruefte Anfrage.
+	 * Zellen werden ueber ihren Mittelpunkt der BBox zugeordnet.
+	 * @param typeName Name des FeatureTypes des Wuerfels
+	 * @param events Anfrage des Frontends
+	 * @return Query mit Zelle, Anzahl und Summen
+	 */
+	public static Query createQuery(String typeName, Events events) {
+		FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+		List<Filter> filters = new ArrayList<Filter>();
+		filters.add(ff.between(ff.property(DAY), ff.literal(PageCursor.startOfDay(events.getDateFrom())),
+				ff.literal(PageCursor.startOfDay(events.getDateTo()))));
+		Bounds b = events.getBounds();
+		filters.add(ff.bbox(GEOM, b.getLeft(), b.getBottom(), b.getRight(), b.getTop(), "EPSG:4326"));
+		List<Filter> codes = new ArrayList<Filter>();
+		for (String eventID : events.getEventIDs()) {
+			codes.add(ff.equals(ff.property(ROOT_CODE), ff.literal(eventID)));
+		}
+		if (!codes.isEmpty()) {
+			filters.add(ff.or(codes));
+		}
+		return new Query(typeName, ff.and(filters), new String[] { GEOM, COUNT, GOLDSTEIN_SUM, TONE_SUM });
+	}
+
+	/**
+	 * Geohash einer Koordinate
+	 * @param lat Breitengrad
+	 * @param lon Laengengrad
+	 * @param precision Anzahl der Zeichen
+	 * @return Geohash
+	 */
+	public static String geohash(double lat, double lon, int precision) {
+		double[] latRange = { -90, 90 };
+		double[] lonRange = { -180, 180 };
+		StringBuilder hash = new StringBuilder(precision);
+		boolean even = true;
+		int bit = 0;
+		int ch = 0;
+		while (hash.length() < precision) {
+			double[] range = even ? lonRange : latRange;
+			double value = even ? lon : lat;
+			double mid = (range[0] + range[1]) / 2;
+			ch <<= 1;
+			if (value >= mid) {
+				ch |= 1;
+				range[0] = mid;
+			} else {
+				range[1] = mid;
+			}
+			even = !even;
+			if (++bit == 5) {
+				hash.append(BASE32.charAt(ch));
+				bit = 0;
+				ch = 0;
+			}
+		}
+		return hash.toString();
+	}
+
+	/**
+	 * Mittelpunkt einer Geohash-Zelle
+	 * @param geohash Geohash
+	 * @return Breiten- und Laengengrad
+	 */
+	public static double[] center(String geohash) {
+		double[] latRange = { -90, 90 };
+		double[] lonRange = { -180, 180 };
+		boolean even = true;
+		for (int i = 0; i < geohash.length(); i++) {
+			int ch = BASE32.indexOf(geohash.charAt(i));
+			for (int mask = 16; mask > 0; mask >>= 1) {
+				double[] range = even ? lonRange : latRange;
+				double mid = (range[0] + range[1]) / 2;
+				if ((ch & mask) != 0) {
+					range[0] = mid;
+				} else {
+					range[1] = mid;
+				}
+				even = !even;
+			}
+		}
+		return new double[] { (latRange[0] + latRange[1]) / 2, (lonRange[0] + lonRange[1]) / 2 };
+	}
+
+	private static String id(Date day, String cell, String rootCode, Integer quadClass) {
+		return new SimpleDateFormat("yyyyMMdd").format(day) + "_" + cell + "_" + rootCode + "_" + quadClass;
+	}
+
+	private static double number(Object value) {
+		return value == null ? 0 : ((Number) value).doubleValue();
+	}
+
+	private static class Cell {
+		private final Date day;
+		private final String cell;
+		private final String rootCode;
+		private final Integer quadClass;
+		private long count;
+		private double goldsteinSum;
+		private double toneSum;
+
+		Cell(Date day, String cell, String rootCode, Integer quadClass) {
+			this.day = day;
+			this.cell = cell;
+			this.rootCode = rootCode;
+			this.quadClass = quadClass;
+		}
+	}
+}
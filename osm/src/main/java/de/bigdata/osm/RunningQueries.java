@@ -0,0 +1,354 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.filter.text.cql2.CQLException;
+
+/**
+ * Verwaltung der laufenden Abfragen. Jede Abfrage erhaelt ein {@link Ticket}, das unter der vom
+ * Frontend geschickten Client-ID abgelegt wird. Startet derselbe Client eine neue Abfrage, wird die
+ * vorherige abgebrochen: der FeatureIterator und damit der BatchScanner werden geschlossen, sodass
+ * Tablet Server und Servlet-Threads fuer die neue Abfrage frei werden.
+ * Abfragen ohne Streaming laufen in einem Pool mit begrenzter Groesse.
+ * Die Anfragen eines Batches laufen dort parallel, jede mit einem eigenen Ticket aus {@link Ticket#fork()}.
+ * Die Teilanfragen grosser Anfragen ({@link ParallelScan}) werden in einem eigenen ForkJoinPool gelesen,
+ * damit sie nicht auf die Threads der wartenden Anfragen angewiesen sind.
+ *
+ */
+public class RunningQueries {
+
+	// Name des Attributs, unter dem die Verwaltung im ServletContext abgelegt wird
+	public static final String CONTEXT_ATTRIBUTE = RunningQueries.class.getName();
+
+	private static final Logger LOG = Logger.getLogger(RunningQueries.class.getName());
+
+	private final ExecutorService executor;
+	private final ForkJoinPool scanPool;
+	private final Map<String, Ticket> tickets = new HashMap<String, Ticket>();
+
+	/**
+	 * @param threads Anzahl der gleichzeitig ausgefuehrten Abfragen
+	 * @param scanThreads Anzahl der gleichzeitig gelesenen Teilanfragen
+	 */
+	public RunningQueries(int threads, int scanThreads) {
+		this.executor = Executors.newFixedThreadPool(threads, new QueryThreadFactory());
+		this.scanPool = new ForkJoinPool(scanThreads);
+	}
+
+	/**
+	 * Liefert die im ServletContext abgelegte Verwaltung
+	 * @param context ServletContext der Webapp
+	 * @return {@link RunningQueries} der Anwendung
+	 */
+	public static RunningQueries get(ServletContext context) {
+		RunningQueries queries = (RunningQueries) context.getAttribute(CONTEXT_ATTRIBUTE);
+		if (queries == null) {
+			throw new IllegalStateException("RunningQueries wurde nicht initialisiert");
+		}
+		return queries;
+	}
+
+	/**
+	 * Anmelden einer neuen Abfrage, eine noch laufende Abfrage mit demselben Schluessel wird abgebrochen
+	 * @param key Client-ID und Endpunkt, NULL wenn die Abfrage nicht ersetzt werden kann
+	 * @return {@link Ticket} der neuen Abfrage
+	 */
+	public Ticket start(String key) {
+		Ticket ticket = new Ticket(this, key);
+		if (key == null) {
+			return ticket;
+		}
+		Ticket previous;
+		synchronized (tickets) {
+			previous = tickets.put(key, ticket);
+		}
+		if (previous != null) {
+			previous.cancel();
+		}
+		return ticket;
+	}
+
+	/**
+	 * Ausfuehren einer Abfrage im Pool. Der aufrufende Thread wartet auf das Ergebnis.
+	 * @param ticket Ticket aus {@link #start(String)}
+	 * @param task Abfrage
+	 * @return Ergebnis der Abfrage
+	 * @throws IOException
+	 * @throws CQLException
+	 * @throws WebApplicationException mit Status 409, wenn die Abfrage durch eine neuere ersetzt wurde
+	 */
+	public <T> T execute(Ticket ticket, Callable<T> task) throws IOException, CQLException {
+		Future<T> future = executor.submit(task);
+		ticket.setFuture(future);
+		try {
+			return future.get();
+		} catch (CancellationException e) {
+			throw superseded();
+		} catch (InterruptedException e) {
+			ticket.cancel();
+			Thread.currentThread().interrupt();
+			throw superseded();
+		} catch (ExecutionException e) {
+			throw failure(ticket, e);
+		} finally {
+			ticket.finish();
+		}
+	}
+
+	/**
+	 * Paralleles Ausfuehren mehrerer Abfragen im Pool, von denen hoechstens <code>parallelism</code>
+	 * gleichzeitig laufen, damit ein Batch den Pool nicht allein belegt. Der aufrufende Thread wartet
+	 * auf alle Ergebnisse. Schlaegt eine Abfrage fehl, werden die uebrigen abgebrochen.
+	 * @param ticket Ticket aus {@link #start(String)}, die Abfragen verwenden Tickets aus {@link Ticket#fork()}
+	 * @param tasks Abfragen
+	 * @param parallelism Hoechstzahl der gleichzeitig laufenden Abfragen
+	 * @return Ergebnisse in der Reihenfolge der Abfragen
+	 * @throws IOException
+	 * @throws CQLException
+	 * @throws WebApplicationException mit Status 409, wenn der Batch durch eine neuere Abfrage ersetzt wurde
+	 */
+	public <T> List<T> executeAll(Ticket ticket, List<? extends Callable<T>> tasks, int parallelism)
+			throws IOException, CQLException {
+		return executeAll(executor, ticket, tasks, parallelism);
+	}
+
+	/**
+	 * Paralleles Lesen der Teilanfragen einer grossen Anfrage im ForkJoinPool, sonst wie
+	 * {@link #executeAll(Ticket, List, int)}
+	 * @param ticket Ticket aus {@link Ticket#fork()}, die Teilanfragen verwenden davon abgeleitete Tickets
+	 * @param tasks Teilanfragen
+	 * @return Ergebnisse in der Reihenfolge der Teilanfragen
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	public <T> List<T> scanAll(Ticket ticket, List<? extends Callable<T>> tasks) throws IOException, CQLException {
+		return executeAll(scanPool, ticket, tasks, scanPool.getParallelism());
+	}
+
+	private <T> List<T> executeAll(ExecutorService pool, Ticket ticket, List<? extends Callable<T>> tasks, int parallelism)
+			throws IOException, CQLException {
+		CompletionService<T> completion = new ExecutorCompletionService<T>(pool);
+		Map<Future<T>, Integer> indexes = new HashMap<Future<T>, Integer>();
+		List<T> results = new ArrayList<T>(Collections.<T>nCopies(tasks.size(), null));
+		int next = 0;
+		boolean completed = false;
+		try {
+			for (; next < tasks.size() && next < Math.max(1, parallelism); next++) {
+				indexes.put(completion.submit(tasks.get(next)), next);
+			}
+			for (int done = 0; done < tasks.size(); done++) {
+				Future<T> future = completion.take();
+				results.set(indexes.get(future), future.get());
+				if (ticket.isCancelled()) {
+					throw superseded();
+				}
+				if (next < tasks.size()) {
+					indexes.put(completion.submit(tasks.get(next)), next);
+					next++;
+				}
+			}
+			completed = true;
+			return results;
+		} catch (CancellationException e) {
+			throw superseded();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw superseded();
+		} catch (ExecutionException e) {
+			throw failure(ticket, e);
+		} finally {
+			if (!completed) {
+				// schliesst die Scanner der noch laufenden Abfragen
+				ticket.cancel();
+				for (Future<T> future : indexes.keySet()) {
+					future.cancel(true);
+				}
+			}
+			ticket.finish();
+		}
+	}
+
+	private void finish(Ticket ticket) {
+		if (ticket.key == null) {
+			return;
+		}
+		synchronized (tickets) {
+			// nur entfernen, wenn nicht bereits eine neuere Abfrage eingetragen ist
+			if (tickets.get(ticket.key) == ticket) {
+				tickets.remove(ticket.key);
+			}
+		}
+	}
+
+	/**
+	 * Abbrechen aller laufenden Abfragen und Beenden des Pools beim Undeploy
+	 */
+	public void shutdown() {
+		synchronized (tickets) {
+			for (Ticket ticket : tickets.values()) {
+				ticket.cancel();
+			}
+			tickets.clear();
+		}
+		executor.shutdownNow();
+		scanPool.shutdownNow();
+	}
+
+	// Ursache einer fehlgeschlagenen Abfrage, gepruefte Exceptions werden direkt geworfen
+	private static RuntimeException failure(Ticket ticket, ExecutionException e) throws IOException, CQLException {
+		if (ticket.isCancelled()) {
+			return superseded();
+		}
+		Throwable cause = e.getCause();
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+		if (cause instanceof CQLException) {
+			throw (CQLException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		return new IllegalStateException(cause);
+	}
+
+	private static WebApplicationException superseded() {
+		return new WebApplicationException(Response.status(Response.Status.CONFLICT)
+				.entity("Abfrage wurde durch eine neuere Abfrage ersetzt").build());
+	}
+
+	/**
+	 * Handle einer laufenden Abfrage. Der Iterator wird beim Abbruch aus einem anderen Thread
+	 * geschlossen, die lesende Schleife prueft zusaetzlich {@link #isCancelled()}.
+	 *
+	 */
+	public static class Ticket {
+
+		private final RunningQueries owner;
+		private final String key;
+		private final Ticket parent;
+		private final List<Ticket> children = new ArrayList<Ticket>();
+		private volatile boolean cancelled = false;
+		private SimpleFeatureIterator iterator;
+		private Future<?> future;
+
+		Ticket(RunningQueries owner, String key) {
+			this(owner, key, null);
+		}
+
+		private Ticket(RunningQueries owner, String key, Ticket parent) {
+			this.owner = owner;
+			this.key = key;
+			this.parent = parent;
+		}
+
+		public boolean isCancelled() {
+			return cancelled || (parent != null && parent.isCancelled());
+		}
+
+		/**
+		 * Ticket fuer eine Teilabfrage mit eigenem Iterator, das mit diesem Ticket abgebrochen wird
+		 * @return neues Ticket, das nicht unter der Client-ID eingetragen ist
+		 */
+		public synchronized Ticket fork() {
+			Ticket child = new Ticket(owner, null, this);
+			children.add(child);
+			if (cancelled) {
+				child.cancel();
+			}
+			return child;
+		}
+
+		/**
+		 * Verknuepfen des Iterators, der beim Abbruch geschlossen wird
+		 * @param iterator Iterator der laufenden Abfrage
+		 */
+		public synchronized void attach(SimpleFeatureIterator iterator) {
+			this.iterator = iterator;
+			if (isCancelled()) {
+				closeQuietly(iterator);
+			}
+		}
+
+		/**
+		 * Loesen des Iterators, nachdem er von der Abfrage selbst geschlossen wurde
+		 */
+		public synchronized void detach() {
+			this.iterator = null;
+		}
+
+		/**
+		 * Abmelden der beendeten Abfrage
+		 */
+		public void finish() {
+			owner.finish(this);
+		}
+
+		synchronized void setFuture(Future<?> future) {
+			this.future = future;
+			if (cancelled) {
+				future.cancel(true);
+			}
+		}
+
+		/**
+		 * Abbrechen der Abfrage, schliesst den Scan auf den Tablet Servern
+		 */
+		public synchronized void cancel() {
+			cancelled = true;
+			if (iterator != null) {
+				closeQuietly(iterator);
+				iterator = null;
+			}
+			if (future != null) {
+				future.cancel(true);
+			}
+			for (Ticket child : children) {
+				child.cancel();
+			}
+		}
+
+		private static void closeQuietly(SimpleFeatureIterator iterator) {
+			try {
+				iterator.close();
+			} catch (RuntimeException e) {
+				LOG.log(Level.FINE, "Fehler beim Schliessen einer abgebrochenen Abfrage", e);
+			}
+		}
+	}
+
+	private static class QueryThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "osm-query-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
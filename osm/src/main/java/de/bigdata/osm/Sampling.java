@@ -0,0 +1,143 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.CommonFactoryFinder;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+/**
+ * Stichprobe fuer Anfragen, deren Ergebnis zu gross fuer die Darstellung im Browser ist.
+ * Behalten werden die Events, deren GLOBALEVENTID durch den Teiler 2^k teilbar ist. Die IDs werden
+ * beim Ingest fortlaufend vergeben und haengen nicht vom Ort ab, die Stichprobe ist daher raeumlich
+ * repraesentativ und bei gleicher Anfrage immer dieselbe. Da der Teiler eine Zweierpotenz ist, ist die
+ * Stichprobe einer kleineren Rate in der einer groesseren enthalten (z.B. beim Zoomen).
+ * Die Bedingung ist Teil des ECQL-Filters und wird im Filter-Iterator, den GeoMesa fuer den Z3-Index
+ * konfiguriert, auf den Tablet Servern ausgewertet. Verworfene Events werden nicht uebertragen.
+ *
+ */
+public class Sampling {
+
+	// Groesster Teiler, entspricht einer Rate von etwa 1:1 Mio.
+	private static final int MAX_MODULUS = 1 << 20;
+
+	private final long total;
+	private final int modulus;
+
+	private Sampling(long total, int modulus) {
+		this.total = total;
+		this.modulus = modulus;
+	}
+
+	/**
+	 * Pruefen, ob die Anfrage eine Stichprobe anfordert
+	 * @param events Anfrage des Frontends
+	 * @return true, wenn {@link Events#getSampleSize()} oder {@link Events#getSampleRate()} gesetzt ist
+	 */
+	public static boolean isRequested(Events events) {
+		return events.getSampleSize() != null || events.getSampleRate() != null;
+	}
+
+	/**
+	 * Bestimmen der Rate fuer eine Anfrage. Die tatsaechliche Anzahl der Events wird vorab im
+	 * TemporalDensityIterator auf den Tablet Servern gezaehlt, fuer eine Zielgroesse ergibt sich daraus
+	 * der Anteil. Auch bei einem angegebenen Anteil wird gezaehlt, damit die Antwort die Gesamtzahl enthaelt.
+	 * @param manager Verbindung zur Datenbank
+	 * @param events Anfrage des Frontends mit Zielgroesse oder Anteil
+	 * @return {@link Sampling} mit dem Teiler und der Gesamtzahl
+	 * @throws IOException
+	 */
+	public static Sampling create(DataStoreManager manager, Events events) throws IOException {
+		long total = count(manager, events);
+		if (events.getSampleRate() != null) {
+			return withRate(events.getSampleRate(), total);
+		}
+		return forSize(events.getSampleSize(), total);
+	}
+
+	// Anzahl der Events ohne Stichprobe, gezaehlt pro Tag im TemporalDensityIterator
+	private static long count(DataStoreManager manager, Events events) throws IOException {
+		TemporalHistogram histogram = new TemporalHistogram(events.getDateFrom(), events.getDateTo(),
+				TemporalHistogram.DAY_MILLIS);
+		SimpleFeatureIterator iterator = manager.query(histogram.createQuery(manager.getServingTypeName(),
+				EventFilter.create(manager, events)));
+		try {
+			return histogram.aggregate(iterator).getTotal();
+		} finally {
+			iterator.close();
+		}
+	}
+
+	/**
+	 * Stichprobe fuer eine Zielgroesse
+	 * @param sampleSize gewuenschte Anzahl der Events
+	 * @param total Anzahl der Events ohne Stichprobe
+	 * @return {@link Sampling} mit dem groessten Anteil, der hoechstens sampleSize Events erwarten laesst
+	 */
+	static Sampling forSize(int sampleSize, long total) {
+		double rate = total > 0 ? (double) sampleSize / total : 1;
+		return new Sampling(total, modulus(rate));
+	}
+
+	/**
+	 * Stichprobe mit bekanntem Anteil und bekannter Gesamtzahl, z.B. fuer die Folgeseiten einer Anfrage
+	 * @param rate Anteil zwischen 0 und 1
+	 * @param total Anzahl der Events ohne Stichprobe
+	 * @return {@link Sampling} mit dem Anteil als Zweierpotenz
+	 */
+	public static Sampling withRate(double rate, long total) {
+		return new Sampling(total, modulus(rate));
+	}
+
+	/**
+	 * Kleinste Zweierpotenz, deren Kehrwert die Rate nicht ueberschreitet
+	 * @param rate gewuenschter Anteil zwischen 0 und 1
+	 * @return Teiler fuer die GLOBALEVENTID
+	 */
+	static int modulus(double rate) {
+		if (!(rate < 1)) {
+			return 1;
+		}
+		if (!(rate > 0)) {
+			return MAX_MODULUS;
+		}
+		int modulus = 1;
+		while (modulus < MAX_MODULUS && 1.0 / modulus > rate) {
+			modulus <<= 1;
+		}
+		return modulus;
+	}
+
+	/**
+	 * Ergaenzen des Filters um die Bedingung der Stichprobe
+	 * @param filter Filter aus der Anfrage des Frontends
+	 * @return Filter, der nur die Events der Stichprobe liefert
+	 */
+	public Filter apply(Filter filter) {
+		if (modulus <= 1) {
+			return filter;
+		}
+		FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+		// IEEEremainder ist eine Standardfunktion von GeoTools und daher auch auf den Tablet Servern verfuegbar
+		Filter sample = ff.equals(ff.function("IEEEremainder",
+				ff.property(GdeltFeature.Attributes.GLOBALEVENTID.getName()), ff.literal(modulus)), ff.literal(0));
+		return ff.and(filter, sample);
+	}
+
+	/**
+	 * Anzahl der Events ohne Stichprobe
+	 * @return Gesamtzahl fuer die Filter der Anfrage
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Tatsaechlich verwendeter Anteil
+	 * @return 1/Teiler, 1 wenn keine Stichprobe noetig ist
+	 */
+	public double getRate() {
+		return 1.0 / modulus;
+	}
+}
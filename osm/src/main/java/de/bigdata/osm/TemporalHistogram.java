@@ -0,0 +1,88 @@
+package de.bigdata.osm;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.joda.time.Interval;
+import org.locationtech.geomesa.accumulo.iterators.TemporalDensityIterator;
+import org.opengis.filter.Filter;
+
+/**
+ * Zeitreihe der Events. Die Zaehlung pro Intervall findet im TemporalDensityIterator auf den
+ * Tablet Servern statt, an die Webapp wird pro Tablet Server nur eine kodierte Zeitreihe uebertragen.
+ *
+ */
+public class TemporalHistogram {
+
+	public static final long HOUR_MILLIS = 60L * 60 * 1000;
+	public static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+	// Obergrenze fuer die Anzahl der Intervalle, z.B. ein Jahr in Stunden
+	private static final int MAX_BUCKETS = 366 * 24;
+
+	private final long start;
+	private final long bucketMillis;
+	private final int buckets;
+
+	/**
+	 * @param from erster Tag
+	 * @param to letzter Tag (einschliesslich)
+	 * @param bucketMillis Laenge eines Intervalls, {@link #DAY_MILLIS} oder {@link #HOUR_MILLIS}
+	 */
+	public TemporalHistogram(Date from, Date to, long bucketMillis) {
+		this.start = PageCursor.startOfDay(from).getTime();
+		long end = PageCursor.nextDay(PageCursor.startOfDay(to)).getTime();
+		this.bucketMillis = bucketMillis;
+		this.buckets = (int) Math.min(MAX_BUCKETS, Math.max(1, (end - start + bucketMillis - 1) / bucketMillis));
+	}
+
+	/**
+	 * Erstellen der Query mit den Hints fuer den TemporalDensityIterator
+	 * @param typeName FeatureTypeName der Events
+	 * @param filter Filter aus der Anfrage des Frontends
+	 * @return Query, deren Ergebnisse mit {@link #aggregate(SimpleFeatureIterator)} ausgewertet werden
+	 */
+	public Query createQuery(String typeName, Filter filter) {
+		Query query = new Query(typeName, filter);
+		query.getHints().put(GeoMesaHints.TEMPORAL_DENSITY, Boolean.TRUE);
+		query.getHints().put(GeoMesaHints.TIME_INTERVAL, new Interval(start, start + buckets * bucketMillis));
+		query.getHints().put(GeoMesaHints.TIME_BUCKETS, buckets);
+		// binaere statt JSON-Kodierung der Zeitreihe
+		query.getHints().put(GeoMesaHints.RETURN_ENCODED, Boolean.TRUE);
+		return query;
+	}
+
+	/**
+	 * Zusammenfassen der Zeitreihen
+	 * @param iterator Ergebnisse der Query aus {@link #createQuery(String, Filter)}
+	 * @return {@link Histogram} mit einem Wert pro Intervall
+	 * @throws IOException
+	 */
+	public Histogram aggregate(SimpleFeatureIterator iterator) throws IOException {
+		Histogram histogram = new Histogram(start, bucketMillis, buckets);
+		while (iterator.hasNext()) {
+			String encoded = (String) iterator.next().getAttribute(TemporalDensityIterator.TIME_SERIES());
+			// Paare aus Beginn des Intervalls und Anzahl, jeweils als long (Base64 URL-safe ohne Padding)
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(decodeBase64(encoded)));
+			while (in.available() > 0) {
+				long time = in.readLong();
+				long count = in.readLong();
+				histogram.add(time, count);
+			}
+		}
+		return histogram;
+	}
+
+	private static byte[] decodeBase64(String urlSafe) {
+		StringBuilder base64 = new StringBuilder(urlSafe.replace('-', '+').replace('_', '/'));
+		while (base64.length() % 4 != 0) {
+			base64.append('=');
+		}
+		return DatatypeConverter.parseBase64Binary(base64.toString());
+	}
+}
@@ -0,0 +1,219 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.filter.text.cql2.CQLException;
+
+/**
+ * Aggregierte Events pro Kachel im Raster von OpenLayers (Spherical Mercator, z/x/y wie die OSM-Kacheln),
+ * als Raster im JSON-Format oder als Heatmap-Bild.
+ * Die Antworten haengen nur von der URL ab und werden mit ETag und Cache-Control ausgeliefert, sodass
+ * Browser und Proxies beim Verschieben der Karte bereits geladene Kacheln wiederverwenden.
+ *
+ */
+@Path("/tiles")
+public class Tiles {
+
+	// Feinste Zoomstufe, fuer die Kacheln ausgeliefert werden
+	private static final int MAX_ZOOM = 18;
+	private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+	@Context
+	private ServletContext context;
+
+	/**
+	 * Anzahl der Events pro Rasterzelle innerhalb einer Kachel
+	 * @param z Zoomstufe
+	 * @param x Spalte der Kachel
+	 * @param y Zeile der Kachel (0 im Norden)
+	 * @param from erster Tag im Format yyyy-MM-dd
+	 * @param to letzter Tag im Format yyyy-MM-dd
+	 * @param codes EventCodes, durch Komma getrennt, optional
+	 * @param keywords Keywords, durch Komma getrennt, optional
+	 * @param request Anfrage fuer die Auswertung von If-None-Match
+	 * @return {@link Grid} der Kachel oder 304, wenn der Client die Kachel bereits hat
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	@GET
+	@Path("/{z}/{x}/{y}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getTile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y,
+			@QueryParam("from") String from, @QueryParam("to") String to,
+			@QueryParam("codes") String codes, @QueryParam("keywords") String keywords,
+			@Context Request request) throws IOException, CQLException {
+		Events events = createEvents(z, x, y, from, to, codes, keywords);
+		DataStoreManager manager = DataStoreManager.get(context);
+		CacheControl cacheControl = cacheControl(manager, events);
+		EntityTag etag = etag(z + "/" + x + "/" + y, events, from, to, cacheControl);
+		Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+		if (notModified != null) {
+			return notModified.cacheControl(cacheControl).build();
+		}
+
+		DensityGrid densityGrid = new DensityGrid(events.getBounds(), z);
+		boolean rollup = RollupCube.canAnswer(events) && densityGrid.isCoarserThanRollup() && manager.hasRollup(events);
+		SimpleFeatureIterator iterator = manager.query(rollup
+				? RollupCube.createQuery(manager.getRollupTypeName(), events)
+				: densityGrid.createQuery(manager.getServingTypeName(), EventFilter.create(manager, events)));
+		Grid grid;
+		try {
+			grid = rollup ? densityGrid.aggregateRollup(iterator) : densityGrid.aggregate(iterator);
+		} finally {
+			iterator.close();
+		}
+		return Response.ok(grid).tag(etag).cacheControl(cacheControl).build();
+	}
+
+	/**
+	 * Heatmap einer Kachel als PNG, berechnet aus der Dichte der Events auf den Tablet Servern,
+	 * siehe {@link HeatmapRenderer}. Zwischenspeicherung wie bei {@link #getTile}.
+	 * @param z Zoomstufe
+	 * @param x Spalte der Kachel
+	 * @param y Zeile der Kachel (0 im Norden)
+	 * @param from erster Tag im Format yyyy-MM-dd
+	 * @param to letzter Tag im Format yyyy-MM-dd
+	 * @param codes EventCodes, durch Komma getrennt, optional
+	 * @param keywords Keywords, durch Komma getrennt, optional
+	 * @param request Anfrage fuer die Auswertung von If-None-Match
+	 * @return PNG mit 256x256 Pixeln oder 304, wenn der Client die Kachel bereits hat
+	 * @throws IOException
+	 * @throws CQLException
+	 */
+	@GET
+	@Path("/{z}/{x}/{y}.png")
+	@Produces(HeatmapRenderer.MEDIA_TYPE)
+	public Response getHeatmapTile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y,
+			@QueryParam("from") String from, @QueryParam("to") String to,
+			@QueryParam("codes") String codes, @QueryParam("keywords") String keywords,
+			@Context Request request) throws IOException, CQLException {
+		Events events = createEvents(z, x, y, from, to, codes, keywords);
+		DataStoreManager manager = DataStoreManager.get(context);
+		CacheControl cacheControl = cacheControl(manager, events);
+		EntityTag etag = etag(z + "/" + x + "/" + y + ".png", events, from, to, cacheControl);
+		Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+		if (notModified != null) {
+			return notModified.cacheControl(cacheControl).build();
+		}
+
+		HeatmapRenderer renderer = new HeatmapRenderer(z, x, y,
+				Integer.parseInt(manager.getSetting("heatmap.radius", "8")),
+				Double.parseDouble(manager.getSetting("heatmap.saturation", "100")));
+		return Response.ok(renderer.render(manager, events)).tag(etag).cacheControl(cacheControl).build();
+	}
+
+	// Anfrage fuer die Filter der URL mit der BBox der Kachel
+	private static Events createEvents(int z, int x, int y, String from, String to, String codes, String keywords) {
+		int tiles = 1 << Math.min(Math.max(z, 0), MAX_ZOOM);
+		if (z < 0 || z > MAX_ZOOM || x < 0 || x >= tiles || y < 0 || y >= tiles) {
+			throw new WebApplicationException(Response.Status.NOT_FOUND);
+		}
+
+		Events events = new Events();
+		events.setBounds(tileBounds(z, x, y));
+		events.setDateFrom(parseDate(from));
+		events.setDateTo(parseDate(to));
+		events.setEventIDs(split(codes));
+		events.setKeywords(split(keywords));
+		events.setZoom(z);
+		return events;
+	}
+
+	private static CacheControl cacheControl(DataStoreManager manager, Events events) {
+		boolean archive = isArchive(events.getDateTo());
+		int maxAge = Integer.parseInt(manager.getSetting(archive ? "tiles.archiveMaxAgeSeconds" : "tiles.maxAgeSeconds", "0"));
+		CacheControl cacheControl = new CacheControl();
+		cacheControl.setMaxAge(maxAge);
+		return cacheControl;
+	}
+
+	// Die URL bestimmt den Inhalt vollstaendig, fuer noch nicht abgeschlossene Tage aendert sich
+	// der ETag mit jedem Aktualisierungsintervall. Ein passender ETag wird ohne Abfrage beantwortet.
+	private static EntityTag etag(String tile, Events events, String from, String to, CacheControl cacheControl) {
+		boolean archive = isArchive(events.getDateTo());
+		return new EntityTag(Integer.toHexString(
+				(tile + "|" + from + "|" + to + "|" + events.getEventIDs() + "|" + events.getKeywords()
+				+ "|" + (archive ? "archive" : version(cacheControl.getMaxAge()))).hashCode()));
+	}
+
+	/**
+	 * Umrechnung der Kachelnummer in Laengen- und Breitengrade
+	 * @param z Zoomstufe
+	 * @param x Spalte der Kachel
+	 * @param y Zeile der Kachel
+	 * @return BBox der Kachel in EPSG:4326
+	 */
+	static Bounds tileBounds(int z, int x, int y) {
+		double n = Math.pow(2, z);
+		Bounds bounds = new Bounds();
+		bounds.setLeft(x / n * 360.0 - 180.0);
+		bounds.setRight((x + 1) / n * 360.0 - 180.0);
+		bounds.setTop(tileLat(y, n));
+		bounds.setBottom(tileLat(y + 1, n));
+		return bounds;
+	}
+
+	private static double tileLat(int y, double n) {
+		return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / n))));
+	}
+
+	// Zeitraeume vor gestern aendern sich nicht mehr, aktuelle Tage werden alle 15 Minuten ergaenzt
+	private static boolean isArchive(Date to) {
+		Date yesterday = PageCursor.startOfDay(new Date(System.currentTimeMillis() - 24L * 60 * 60 * 1000));
+		return to.before(yesterday);
+	}
+
+	// Nummer des aktuellen Aktualisierungsintervalls, ein neues Intervall erzeugt einen neuen ETag
+	private static long version(int maxAge) {
+		return maxAge > 0 ? System.currentTimeMillis() / (maxAge * 1000L) : System.currentTimeMillis();
+	}
+
+	private static Date parseDate(String value) {
+		if (value == null) {
+			throw badRequest("Parameter from und to sind erforderlich");
+		}
+		try {
+			SimpleDateFormat format = new SimpleDateFormat(DATE_PATTERN);
+			format.setLenient(false);
+			return format.parse(value);
+		} catch (ParseException e) {
+			throw badRequest("Ungueltiges Datum, erwartet wird " + DATE_PATTERN);
+		}
+	}
+
+	private static List<String> split(String value) {
+		List<String> values = new ArrayList<String>();
+		if (value != null) {
+			for (String part : value.split("[, ]+")) {
+				if (!part.isEmpty()) {
+					values.add(part);
+				}
+			}
+		}
+		return values;
+	}
+
+	private static WebApplicationException badRequest(String message) {
+		return new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).entity(message).build());
+	}
+}
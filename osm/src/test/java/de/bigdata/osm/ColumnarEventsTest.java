@@ -0,0 +1,71 @@
+package de.bigdata.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Spaltenweise Darstellung mit Woerterbuechern
+ */
+public class ColumnarEventsTest extends TestCase {
+
+	public void testFrom() {
+		Date day = PageCursor.startOfDay(new Date());
+		List<Event> list = new ArrayList<Event>();
+		list.add(event(52.5, 13.4, "010", day, "BARACK OBAMA", "GERMANY", "Berlin", null));
+		list.add(event(48.1, 11.6, "010", day, "GERMANY", null, "Munich", "http://example.org/a"));
+		list.add(event(50.1, 8.7, "190", null, null, "BARACK OBAMA", "Berlin", "http://example.org/a"));
+		Events events = new Events();
+		events.setEvents(list);
+		events.setTruncated(true);
+		events.setCursor("cursor");
+		events.setTotal(Long.valueOf(1000));
+		events.setSampleRate(Double.valueOf(0.5));
+
+		ColumnarEvents columns = ColumnarEvents.from(events);
+
+		assertEquals(3, columns.getCount());
+		assertTrue(columns.isTruncated());
+		assertEquals("cursor", columns.getCursor());
+		assertEquals(Long.valueOf(1000), columns.getTotal());
+		assertEquals(Double.valueOf(0.5), columns.getSampleRate());
+
+		assertTrue(Arrays.equals(new double[] { 52.5, 48.1, 50.1 }, columns.getLat()));
+		assertTrue(Arrays.equals(new double[] { 13.4, 11.6, 8.7 }, columns.getLon()));
+		assertEquals(Arrays.asList("010", "190"), columns.getEventCodes());
+		assertTrue(Arrays.equals(new int[] { 0, 0, 1 }, columns.getEventCode()));
+		assertEquals(Arrays.asList(Long.valueOf(day.getTime())), columns.getDates());
+		assertTrue(Arrays.equals(new int[] { 0, 0, -1 }, columns.getSqlDate()));
+		// Actor1Name und Actor2Name teilen sich ein Woerterbuch
+		assertEquals(Arrays.asList("BARACK OBAMA", "GERMANY"), columns.getActorNames());
+		assertTrue(Arrays.equals(new int[] { 0, 1, -1 }, columns.getActor1Name()));
+		assertTrue(Arrays.equals(new int[] { 1, -1, 0 }, columns.getActor2Name()));
+		assertEquals(Arrays.asList("Berlin", "Munich"), columns.getGeoNames());
+		assertTrue(Arrays.equals(new int[] { 0, 1, 0 }, columns.getGeoName()));
+		assertEquals(Arrays.asList("http://example.org/a"), columns.getSourceURLs());
+		assertTrue(Arrays.equals(new int[] { -1, 0, 0 }, columns.getSourceURL()));
+	}
+
+	public void testFromEmpty() {
+		ColumnarEvents columns = ColumnarEvents.from(new Events());
+		assertEquals(0, columns.getCount());
+		assertEquals(0, columns.getLat().length);
+		assertTrue(columns.getEventCodes().isEmpty());
+		assertNull(columns.getTotal());
+	}
+
+	private static Event event(double lat, double lon, String eventCode, Date date, String actor1, String actor2,
+			String geoName, String sourceURL) {
+		Event event = new Event(lat, lon);
+		event.setEventCode(eventCode);
+		event.setSqlDate(date);
+		event.setActor1Name(actor1);
+		event.setActor2Name(actor2);
+		event.setGeoName(geoName);
+		event.setSourceURL(sourceURL);
+		return event;
+	}
+}
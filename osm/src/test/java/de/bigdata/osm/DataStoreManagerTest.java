@@ -0,0 +1,34 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+import junit.framework.TestCase;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * Nur Verbindungsfehler verwerfen die gemeinsame Verbindung, Fehler einer Anfrage nicht
+ */
+public class DataStoreManagerTest extends TestCase {
+
+	public void testConnectionErrors() {
+		assertTrue(DataStoreManager.isConnectionError(new AccumuloException("tserver nicht erreichbar")));
+		assertTrue(DataStoreManager.isConnectionError(new TTransportException("timeout")));
+		assertTrue(DataStoreManager.isConnectionError(new ConnectException("Connection refused")));
+	}
+
+	public void testWrappedConnectionErrors() {
+		assertTrue(DataStoreManager.isConnectionError(new IOException(new AccumuloException("tserver nicht erreichbar"))));
+		assertTrue(DataStoreManager.isConnectionError(
+				new RuntimeException(new IOException(new TTransportException("timeout")))));
+	}
+
+	public void testQueryErrors() {
+		assertFalse(DataStoreManager.isConnectionError(new IllegalArgumentException("Unhandled filter type")));
+		assertFalse(DataStoreManager.isConnectionError(new IOException("FeatureType event_daily ist nicht vorhanden")));
+		assertFalse(DataStoreManager.isConnectionError(new IllegalStateException(new NumberFormatException("x"))));
+		assertFalse(DataStoreManager.isConnectionError(null));
+	}
+}
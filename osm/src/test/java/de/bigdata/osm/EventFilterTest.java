@@ -0,0 +1,153 @@
+package de.bigdata.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Der Filter im Speicher ({@link EventFilter.Matcher}) muss dieselben Events liefern wie der Filter
+ * fuer Accumulo
+ */
+public class EventFilterTest extends TestCase {
+
+	private static final GeometryFactory GEOMETRY = JTSFactoryFinder.getGeometryFactory();
+
+	private SimpleFeatureType featureType;
+	private List<SimpleFeature> features;
+	private Date day;
+
+	@Override
+	protected void setUp() throws Exception {
+		featureType = GdeltFeature.buildGdeltFeatureType("event");
+		day = day(2016, Calendar.MARCH, 1);
+		features = new ArrayList<SimpleFeature>();
+		features.add(feature(1, day, 52.5, 13.4, "010", "BARACK OBAMA", "GERMANY"));
+		features.add(feature(2, day, 48.1, 11.6, "0211", "ANGELA MERKEL", null));
+		features.add(feature(3, day, 50.1, 8.7, "190", null, "UNITED STATES"));
+		// ausserhalb der BBox
+		features.add(feature(4, day, 40.7, -74.0, "010", "BARACK OBAMA", null));
+		// vor und nach dem Zeitraum
+		features.add(feature(5, day(2016, Calendar.FEBRUARY, 29), 52.5, 13.4, "010", "BARACK OBAMA", null));
+		features.add(feature(6, day(2016, Calendar.MARCH, 3), 52.5, 13.4, "010", "BARACK OBAMA", null));
+		features.add(feature(7, day(2016, Calendar.MARCH, 2), 52.5, 13.4, "1951", "POLICE", "OBAMA"));
+	}
+
+	public void testMatcherAgreesWithFilter() throws Exception {
+		assertSameResult(request(), 1, 2, 3, 7);
+		assertSameResult(request("01"), 1);
+		assertSameResult(request("021"), 2);
+		assertSameResult(request("0211", "19"), 2, 3, 7);
+		assertSameResult(request("1"), 3, 7);
+		assertSameResult(request("19512"));
+	}
+
+	public void testMatcherAgreesWithFilterForKeywords() throws Exception {
+		assertSameResult(keywords("OBAMA"), 1, 7);
+		assertSameResult(keywords("MERKEL", "UNITED"), 2, 3);
+		assertSameResult(keywords("obama"));
+		Events both = keywords("OBAMA");
+		both.setEventIDs(Arrays.asList("19"));
+		assertSameResult(both, 7);
+	}
+
+	public void testTokenMatcherFindsWordPrefixesWithinOneActor() {
+		assertMatches(keywords("unit stat"), 3);
+		assertMatches(keywords("nited"));
+		assertMatches(keywords("obama"), 1, 7);
+		// Woerter aus Actor1Name und Actor2Name
+		assertMatches(keywords("police obama"));
+	}
+
+	private void assertSameResult(Events events, int... expected) throws Exception {
+		Filter filter = EventFilter.create(events, false);
+		EventFilter.Matcher matcher = EventFilter.matcher(events, false);
+		List<Integer> filtered = new ArrayList<Integer>();
+		List<Integer> matched = new ArrayList<Integer>();
+		for (SimpleFeature feature : features) {
+			Integer id = (Integer) feature.getAttribute(GdeltFeature.Attributes.GLOBALEVENTID.getName());
+			if (filter.evaluate(feature)) {
+				filtered.add(id);
+			}
+			if (matcher.matches(Event.fromFeature(feature))) {
+				matched.add(id);
+			}
+		}
+		assertEquals(ids(expected), filtered);
+		assertEquals(filtered, matched);
+	}
+
+	private void assertMatches(Events events, int... expected) {
+		EventFilter.Matcher matcher = EventFilter.matcher(events, true);
+		List<Integer> matched = new ArrayList<Integer>();
+		for (SimpleFeature feature : features) {
+			if (matcher.matches(Event.fromFeature(feature))) {
+				matched.add((Integer) feature.getAttribute(GdeltFeature.Attributes.GLOBALEVENTID.getName()));
+			}
+		}
+		assertEquals(ids(expected), matched);
+	}
+
+	private static List<Integer> ids(int... ids) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (int id : ids) {
+			list.add(Integer.valueOf(id));
+		}
+		return list;
+	}
+
+	private Events keywords(String... keywords) {
+		Events events = request();
+		events.setKeywords(Arrays.asList(keywords));
+		return events;
+	}
+
+	private Events request(String... eventIDs) {
+		Bounds bounds = new Bounds();
+		bounds.setLeft(5);
+		bounds.setBottom(47);
+		bounds.setRight(15);
+		bounds.setTop(55);
+		Events events = new Events();
+		events.setBounds(bounds);
+		events.setDateFrom(day);
+		events.setDateTo(day(2016, Calendar.MARCH, 2));
+		events.setEventIDs(Arrays.asList(eventIDs));
+		events.setKeywords(Collections.<String>emptyList());
+		return events;
+	}
+
+	private SimpleFeature feature(int id, Date date, double lat, double lon, String eventCode,
+			String actor1, String actor2) {
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+		builder.set(GdeltFeature.Attributes.GLOBALEVENTID.getName(), Integer.valueOf(id));
+		builder.set(GdeltFeature.Attributes.SQLDATE.getName(), date);
+		builder.set(GdeltFeature.Attributes.EventCode.getName(), eventCode);
+		builder.set(GdeltFeature.Attributes.EventBaseCode.getName(), eventCode.substring(0, 3));
+		builder.set(GdeltFeature.Attributes.EventRootCode.getName(), eventCode.substring(0, 2));
+		builder.set(GdeltFeature.Attributes.Actor1Name.getName(), actor1);
+		builder.set(GdeltFeature.Attributes.Actor2Name.getName(), actor2);
+		builder.set(GdeltFeature.Attributes.geom.getName(), GEOMETRY.createPoint(new Coordinate(lon, lat)));
+		return builder.buildFeature(String.valueOf(id));
+	}
+
+	private static Date day(int year, int month, int day) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year, month, day);
+		return calendar.getTime();
+	}
+}
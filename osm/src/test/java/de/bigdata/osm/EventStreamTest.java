@@ -0,0 +1,73 @@
+package de.bigdata.osm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+
+/**
+ * Das Ticket einer Abfrage wird bei jedem Ausgang aus {@link EventStream#write(java.io.OutputStream)}
+ * abgemeldet. Ein noch eingetragenes Ticket wuerde von der naechsten Abfrage des Clients abgebrochen.
+ */
+public class EventStreamTest extends TestCase {
+
+	private RunningQueries queries;
+
+	@Override
+	protected void setUp() throws Exception {
+		queries = new RunningQueries(1, 1);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		queries.shutdown();
+	}
+
+	public void testPlanningRuntimeExceptionFinishesTicket() {
+		RunningQueries.Ticket ticket = queries.start("client:events");
+		EventStream stream = new EventStream(failing(new IllegalArgumentException("Unhandled filter type")),
+				new Query("event"), 10, ticket);
+		try {
+			stream.write(new ByteArrayOutputStream());
+			fail();
+		} catch (IllegalArgumentException e) {
+			// erwartet
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+		assertFinished(ticket);
+	}
+
+	public void testPlanningIOExceptionFinishesTicket() {
+		RunningQueries.Ticket ticket = queries.start("client:events");
+		EventStream stream = new EventStream(failing(new IOException("nicht erreichbar")), new Query("event"), 10, ticket);
+		try {
+			stream.write(new ByteArrayOutputStream());
+			fail();
+		} catch (IOException e) {
+			// erwartet
+		}
+		assertFinished(ticket);
+	}
+
+	private void assertFinished(RunningQueries.Ticket ticket) {
+		queries.start("client:events");
+		assertFalse(ticket.isCancelled());
+	}
+
+	private static DataStoreManager failing(final Exception error) {
+		return new DataStoreManager(new Properties()) {
+			@Override
+			public SimpleFeatureIterator query(Query query) throws IOException {
+				if (error instanceof IOException) {
+					throw (IOException) error;
+				}
+				throw (RuntimeException) error;
+			}
+		};
+	}
+}
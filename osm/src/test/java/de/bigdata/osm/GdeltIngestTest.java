@@ -0,0 +1,98 @@
+package de.bigdata.osm;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Aufteilen der Exporte in Byte-Bereiche an Zeilengrenzen
+ */
+public class GdeltIngestTest extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("gdelt", ".tsv");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testEveryLineInExactlyOneRange() throws IOException {
+		List<String> lines = Arrays.asList("1\tBERLIN", "22\tMUENCHEN", "", "333\tK\u00d6LN", "4444\tHAMBURG");
+		write("1\tBERLIN\n22\tMUENCHEN\n\n333\tK\u00d6LN\r\n4444\tHAMBURG\n");
+		long length = file.length();
+		for (long split = 0; split <= length; split++) {
+			List<String> read = new ArrayList<String>();
+			read.addAll(read(new GdeltIngest.Range(file, 0, split)));
+			read.addAll(read(new GdeltIngest.Range(file, split, length)));
+			assertEquals("Grenze bei Byte " + split, lines, read);
+		}
+	}
+
+	public void testLastLineWithoutLineBreak() throws IOException {
+		write("1\tBERLIN\n22\tMUENCHEN");
+		long length = file.length();
+		for (long split = 1; split < length; split++) {
+			List<String> read = new ArrayList<String>();
+			read.addAll(read(new GdeltIngest.Range(file, 0, split)));
+			read.addAll(read(new GdeltIngest.Range(file, split, length)));
+			assertEquals("Grenze bei Byte " + split, Arrays.asList("1\tBERLIN", "22\tMUENCHEN"), read);
+		}
+	}
+
+	public void testSplitCoversFile() throws IOException {
+		write("1\tBERLIN\n");
+		List<GdeltIngest.Range> ranges = ingest().split(Arrays.asList(file));
+		assertEquals(1, ranges.size());
+		assertEquals(0, ranges.get(0).start);
+		assertEquals(file.length(), ranges.get(0).end);
+	}
+
+	public void testSplitRejectsMissingFile() {
+		try {
+			ingest().split(Arrays.asList(new File(file.getPath() + ".fehlt")));
+			fail("fehlende Datei wurde nicht erkannt");
+		} catch (IOException e) {
+			// erwartet
+		}
+	}
+
+	private GdeltIngest ingest() {
+		return new GdeltIngest(null, new DataStoreManager(new Properties()), 1);
+	}
+
+	private void write(String content) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static List<String> read(GdeltIngest.Range range) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		GdeltIngest.RangeReader reader = new GdeltIngest.RangeReader(range);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,45 @@
+package de.bigdata.osm;
+
+import junit.framework.TestCase;
+
+/**
+ * Das lineare Raster des Z3DensityIterators muss jede Mercator-Pixelzeile einer Kachel erreichen
+ */
+public class HeatmapRendererTest extends TestCase {
+
+	public void testEveryPixelRowReceivesCells() {
+		assertEveryRowReceivesCells(0, 0, 0);
+		assertEveryRowReceivesCells(2, 1, 0);
+		assertEveryRowReceivesCells(2, 1, 1);
+		assertEveryRowReceivesCells(3, 4, 0);
+		assertEveryRowReceivesCells(5, 10, 1);
+		assertEveryRowReceivesCells(8, 100, 100);
+		assertEveryRowReceivesCells(10, 500, 1023);
+	}
+
+	public void testRowsAtEquatorMatchPixels() {
+		// Nahe dem Aequator sind die Pixelzeilen fast gleich hoch, das Raster bleibt nahe einer Zeile pro Pixel
+		HeatmapRenderer renderer = new HeatmapRenderer(10, 0, 511, 8, 100);
+		assertTrue(renderer.rows() >= renderer.getSize());
+		assertTrue(renderer.rows() <= renderer.getSize() + 2);
+	}
+
+	private void assertEveryRowReceivesCells(int z, int x, int y) {
+		HeatmapRenderer renderer = new HeatmapRenderer(z, x, y, 8, 100);
+		Bounds padded = renderer.padded();
+		int size = renderer.getSize();
+		int rows = renderer.rows();
+		// Zeilen des Rasters wie im Z3DensityIterator: vom unteren bis zum oberen Rand mit gleichem Abstand
+		double dy = (padded.getTop() - padded.getBottom()) / (rows - 1);
+		boolean[] hit = new boolean[size];
+		for (int j = 0; j < rows; j++) {
+			int row = renderer.row(padded.getBottom() + j * dy);
+			if (row >= 0 && row < size) {
+				hit[row] = true;
+			}
+		}
+		for (int row = 0; row < size; row++) {
+			assertTrue("Pixelzeile " + row + " von Kachel " + z + "/" + x + "/" + y + " bleibt leer", hit[row]);
+		}
+	}
+}
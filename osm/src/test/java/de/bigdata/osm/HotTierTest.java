@@ -0,0 +1,270 @@
+package de.bigdata.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Der HotTier muss fuer BBox und Zeitraum genau die Events liefern, die der Filter fuer Accumulo
+ * ({@link EventFilter#create(Events, boolean)}) auf denselben Features auswaehlt
+ */
+public class HotTierTest extends TestCase {
+
+	private static final GeometryFactory GEOMETRY = JTSFactoryFinder.getGeometryFactory();
+
+	private SimpleFeatureType featureType;
+	private Date today;
+	private Date yesterday;
+	private Date twoDaysAgo;
+	private Date tomorrow;
+	private List<SimpleFeature> features;
+
+	@Override
+	protected void setUp() throws Exception {
+		featureType = GdeltFeature.buildGdeltFeatureType("event");
+		today = PageCursor.startOfDay(new Date());
+		yesterday = addDays(today, -1);
+		twoDaysAgo = addDays(today, -2);
+		tomorrow = addDays(today, 1);
+		features = new ArrayList<SimpleFeature>();
+		features.add(feature(1, today, 52.5, 13.4, "010", "BARACK OBAMA"));
+		// auf den Ecken und Kanten der Rasterzellen
+		features.add(feature(2, today, 10.0, 20.0, "0211", "ANGELA MERKEL"));
+		features.add(feature(3, today, 10.0, 21.0, "190", null));
+		features.add(feature(4, today, 10.999999, 20.999999, "010", "POLICE"));
+		features.add(feature(5, today, 11.0, 20.5, "010", null));
+		features.add(feature(6, today, -10.5, -0.5, "1951", "OBAMA"));
+		features.add(feature(7, today, 90.0, 180.0, "010", null));
+		features.add(feature(8, today, -90.0, -180.0, "010", null));
+		// an den Grenzen des Zeitraums
+		features.add(feature(9, yesterday, 10.5, 20.5, "010", "BARACK OBAMA"));
+		features.add(feature(10, twoDaysAgo, 10.5, 20.5, "010", null));
+		features.add(feature(11, tomorrow, 10.5, 20.5, "010", null));
+	}
+
+	public void testQueryAgreesWithFilter() throws Exception {
+		HotTier hot = loaded(features);
+		for (Events events : requests()) {
+			assertSameResult(hot, events);
+		}
+	}
+
+	public void testQueryAgreesWithFilterAfterTailRebuild() throws Exception {
+		HotTier hot = loaded(Collections.<SimpleFeature>emptyList());
+		// Ueber MAX_TAIL neue Events an einem Tag, damit er aus Index und Liste neu aufgebaut wird und
+		// danach beides enthaelt
+		List<SimpleFeature> added = new ArrayList<SimpleFeature>(features);
+		for (int i = 0; i < HotTier.MAX_TAIL + 5; i++) {
+			double lat = -89.5 + (i * 7 % 179);
+			double lon = -179.5 + (i * 13 % 359) + (i % 4) * 0.25;
+			added.add(feature(100 + i, today, lat, lon, "010", null));
+		}
+		for (SimpleFeature feature : added) {
+			hot.add(feature);
+		}
+		for (Events events : requests()) {
+			assertSameResult(hot, added, events);
+		}
+		assertSameResult(hot, added, request(-180, -90, 180, 90, yesterday, today));
+	}
+
+	public void testPendingEventsSurviveReload() throws Exception {
+		final HotTier hot = new HotTier(3, 60000);
+		final SimpleFeature duplicate = features.get(1);
+		final SimpleFeature added = feature(200, today, 10.5, 20.5, "010", null);
+		hot.startLoad();
+		// Die Quelle liefert waehrend des Ladens ein bereits geladenes und ein neues Event
+		FeatureList iterator = new FeatureList(features) {
+			@Override
+			public SimpleFeature next() {
+				if (!fed) {
+					fed = true;
+					hot.add(duplicate);
+					hot.add(added);
+				}
+				return super.next();
+			}
+		};
+		hot.load(iterator, System.currentTimeMillis());
+		assertTrue(iterator.closed);
+
+		List<SimpleFeature> expected = new ArrayList<SimpleFeature>(features);
+		expected.add(added);
+		assertSameResult(hot, expected, request(-180, -90, 180, 90, twoDaysAgo, tomorrow));
+	}
+
+	public void testCoversOnlyRecentDaysWhileCurrent() throws Exception {
+		HotTier hot = new HotTier(3, 200);
+		Events recent = request(-180, -90, 180, 90, twoDaysAgo, today);
+		assertFalse(hot.covers(recent));
+
+		hot.startLoad();
+		hot.load(new FeatureList(features), System.currentTimeMillis());
+		assertTrue(hot.covers(recent));
+		assertTrue(hot.covers(request(-180, -90, 180, 90, today, tomorrow)));
+		assertFalse(hot.covers(request(-180, -90, 180, 90, addDays(today, -3), today)));
+
+		Thread.sleep(400);
+		assertFalse(hot.covers(recent));
+		// ein neues Event aus der Quelle macht die Tage wieder aktuell
+		hot.add(feature(300, today, 0, 0, "010", null));
+		assertTrue(hot.covers(recent));
+	}
+
+	public void testIgnoresEventsBeforeFirstDay() throws Exception {
+		HotTier hot = loaded(features);
+		Date old = addDays(today, -5);
+		hot.add(feature(400, old, 10.5, 20.5, "010", null));
+		assertTrue(hot.query(request(-180, -90, 180, 90, old, old), false, 100).isEmpty());
+	}
+
+	public void testLimitTruncates() throws Exception {
+		HotTier hot = loaded(features);
+		Events events = request(-180, -90, 180, 90, today, today);
+		assertEquals(2, hot.query(events, false, 2).size());
+		assertTrue(events.isTruncated());
+	}
+
+	private List<Events> requests() {
+		List<Events> requests = new ArrayList<Events>();
+		requests.add(request(-180, -90, 180, 90, today, today));
+		requests.add(request(-180, -90, 180, 90, twoDaysAgo, tomorrow));
+		// BBox genau auf den Kanten einer Zelle
+		requests.add(request(20, 10, 21, 11, yesterday, today));
+		// BBox innerhalb einer Zelle
+		requests.add(request(20.2, 10.2, 20.8, 10.8, twoDaysAgo, tomorrow));
+		// BBox ueber mehrere Zellen
+		requests.add(request(19.5, 9.5, 21.5, 11.5, today, today));
+		requests.add(request(-1, -11, 0, -10, today, today));
+		// Ecken der Welt
+		requests.add(request(179.5, 89.5, 180, 90, today, today));
+		requests.add(request(-180, -90, -179.5, -89.5, today, today));
+		// einzelne Tage an den Grenzen
+		requests.add(request(-180, -90, 180, 90, yesterday, yesterday));
+		requests.add(request(-180, -90, 180, 90, twoDaysAgo, twoDaysAgo));
+		requests.add(request(-180, -90, 180, 90, tomorrow, tomorrow));
+		// mit EventCodes und Keywords
+		Events codes = request(-180, -90, 180, 90, yesterday, today);
+		codes.setEventIDs(Arrays.asList("02", "19"));
+		requests.add(codes);
+		Events keywords = request(-180, -90, 180, 90, twoDaysAgo, today);
+		keywords.setKeywords(Arrays.asList("OBAMA"));
+		requests.add(keywords);
+		return requests;
+	}
+
+	private HotTier loaded(List<SimpleFeature> loaded) {
+		HotTier hot = new HotTier(3, 60000);
+		hot.startLoad();
+		hot.load(new FeatureList(loaded), System.currentTimeMillis());
+		return hot;
+	}
+
+	private void assertSameResult(HotTier hot, Events events) throws Exception {
+		assertSameResult(hot, features, events);
+	}
+
+	private void assertSameResult(HotTier hot, List<SimpleFeature> all, Events events) throws Exception {
+		Filter filter = EventFilter.create(events, false);
+		List<String> expected = new ArrayList<String>();
+		for (SimpleFeature feature : all) {
+			if (filter.evaluate(feature)) {
+				expected.add(feature.getID());
+			}
+		}
+		List<String> actual = new ArrayList<String>();
+		for (Event event : hot.query(events, false, Integer.MAX_VALUE)) {
+			// die ID steht fuer den Test im Ortsnamen
+			actual.add(event.getGeoName());
+		}
+		Collections.sort(expected);
+		Collections.sort(actual);
+		assertEquals(describe(events), expected, actual);
+	}
+
+	private static String describe(Events events) {
+		Bounds b = events.getBounds();
+		return b.getLeft() + "," + b.getBottom() + "," + b.getRight() + "," + b.getTop() + " "
+				+ events.getDateFrom() + " - " + events.getDateTo() + " " + events.getEventIDs() + " " + events.getKeywords();
+	}
+
+	private static Events request(double left, double bottom, double right, double top, Date from, Date to) {
+		Bounds bounds = new Bounds();
+		bounds.setLeft(left);
+		bounds.setBottom(bottom);
+		bounds.setRight(right);
+		bounds.setTop(top);
+		Events events = new Events();
+		events.setBounds(bounds);
+		events.setDateFrom(from);
+		events.setDateTo(to);
+		events.setEventIDs(Collections.<String>emptyList());
+		events.setKeywords(Collections.<String>emptyList());
+		return events;
+	}
+
+	private SimpleFeature feature(int id, Date date, double lat, double lon, String eventCode, String actor1) {
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+		builder.set(GdeltFeature.Attributes.GLOBALEVENTID.getName(), Integer.valueOf(id));
+		builder.set(GdeltFeature.Attributes.SQLDATE.getName(), date);
+		builder.set(GdeltFeature.Attributes.EventCode.getName(), eventCode);
+		builder.set(GdeltFeature.Attributes.EventBaseCode.getName(), eventCode.substring(0, 3));
+		builder.set(GdeltFeature.Attributes.EventRootCode.getName(), eventCode.substring(0, 2));
+		builder.set(GdeltFeature.Attributes.Actor1Name.getName(), actor1);
+		builder.set(GdeltFeature.Attributes.ActionGeo_FullName.getName(), String.valueOf(id));
+		builder.set(GdeltFeature.Attributes.geom.getName(), GEOMETRY.createPoint(new Coordinate(lon, lat)));
+		return builder.buildFeature(String.valueOf(id));
+	}
+
+	private static Date addDays(Date day, int days) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(day);
+		calendar.add(Calendar.DAY_OF_MONTH, days);
+		return calendar.getTime();
+	}
+
+	/**
+	 * Ergebnis einer Abfrage aus einer Liste
+	 */
+	private static class FeatureList implements SimpleFeatureIterator {
+
+		private final Iterator<SimpleFeature> features;
+		protected boolean fed = false;
+		private boolean closed = false;
+
+		FeatureList(List<SimpleFeature> features) {
+			this.features = features.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return features.hasNext();
+		}
+
+		@Override
+		public SimpleFeature next() {
+			return features.next();
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+}
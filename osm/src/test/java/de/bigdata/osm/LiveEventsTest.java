@@ -0,0 +1,123 @@
+package de.bigdata.osm;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Verteilung neuer Features an die angemeldeten Clients
+ */
+public class LiveEventsTest extends TestCase {
+
+	private static final GeometryFactory GEOMETRY = JTSFactoryFinder.getGeometryFactory();
+
+	private SimpleFeatureType featureType;
+	private Date day;
+
+	@Override
+	protected void setUp() throws Exception {
+		featureType = GdeltFeature.buildGdeltFeatureType("event");
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2016, Calendar.MARCH, 1);
+		day = calendar.getTime();
+	}
+
+	public void testPublishMatchesBoundsAndKeywords() throws Exception {
+		LiveEvents live = new LiveEvents(10, 60000);
+		live.register("client", EventFilter.matcher(request("BARACK OBAMA"), true));
+		LiveEvents.Subscription subscription = live.subscribe("client");
+		assertNotNull(subscription);
+
+		live.publish(feature(1, 52.5, 13.4, "BARACK OBAMA", "GERMANY"));
+		// ausserhalb der BBox
+		live.publish(feature(2, 40.7, -74.0, "BARACK OBAMA", null));
+		// Woerter auf zwei Akteure verteilt
+		live.publish(feature(3, 52.5, 13.4, "BARACK SMITH", "MICHELLE OBAMA"));
+
+		Event event = subscription.poll(0, TimeUnit.MILLISECONDS);
+		assertNotNull(event);
+		assertEquals("BARACK OBAMA", event.getActor1Name());
+		assertNull(subscription.poll(0, TimeUnit.MILLISECONDS));
+	}
+
+	public void testPublishWithoutActorTokens() throws Exception {
+		// Die Features der Quelle haben kein ActorTokens, trotzdem muss der Token-Filter greifen
+		LiveEvents live = new LiveEvents(10, 60000);
+		live.register("client", EventFilter.matcher(request("obam"), true));
+		SimpleFeature feature = feature(1, 52.5, 13.4, null, "Barack Obama");
+		assertNull(feature.getAttribute(GdeltFeature.ACTOR_TOKENS));
+
+		live.publish(feature);
+
+		Event event = live.subscribe("client").poll(0, TimeUnit.MILLISECONDS);
+		assertNotNull(event);
+		assertEquals("Barack Obama", event.getActor2Name());
+	}
+
+	public void testOverflow() throws Exception {
+		LiveEvents live = new LiveEvents(1, 60000);
+		live.register("client", EventFilter.matcher(request(), false));
+		LiveEvents.Subscription subscription = live.subscribe("client");
+
+		live.publish(feature(1, 52.5, 13.4, "A", null));
+		live.publish(feature(2, 52.5, 13.4, "B", null));
+
+		assertTrue(subscription.takeOverflow());
+		assertFalse(subscription.takeOverflow());
+		assertEquals("A", subscription.poll(0, TimeUnit.MILLISECONDS).getActor1Name());
+	}
+
+	public void testCloseEndsConnection() throws Exception {
+		LiveEvents live = new LiveEvents(10, 60000);
+		live.register("client", EventFilter.matcher(request(), false));
+		LiveEvents.Subscription subscription = live.subscribe("client");
+		int connection = subscription.connect();
+
+		live.close();
+
+		assertFalse(subscription.isCurrent(connection));
+		assertFalse(subscription.isConnected());
+		// Eine wartende Verbindung wird sofort geweckt
+		long start = System.currentTimeMillis();
+		assertNull(subscription.poll(10, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertNull(live.subscribe("client"));
+	}
+
+	private Events request(String... keywords) {
+		Bounds bounds = new Bounds();
+		bounds.setTop(55);
+		bounds.setBottom(47);
+		bounds.setLeft(5);
+		bounds.setRight(15);
+		Events events = new Events();
+		events.setBounds(bounds);
+		events.setDateFrom(day);
+		events.setDateTo(day);
+		events.setKeywords(Arrays.asList(keywords));
+		return events;
+	}
+
+	private SimpleFeature feature(int id, double lat, double lon, String actor1, String actor2) {
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+		builder.set(GdeltFeature.Attributes.GLOBALEVENTID.getName(), Integer.valueOf(id));
+		builder.set(GdeltFeature.Attributes.SQLDATE.getName(), day);
+		builder.set(GdeltFeature.Attributes.EventCode.getName(), "010");
+		builder.set(GdeltFeature.Attributes.Actor1Name.getName(), actor1);
+		builder.set(GdeltFeature.Attributes.Actor2Name.getName(), actor2);
+		builder.set(GdeltFeature.Attributes.geom.getName(), GEOMETRY.createPoint(new Coordinate(lon, lat)));
+		return builder.buildFeature(String.valueOf(id));
+	}
+}
@@ -0,0 +1,164 @@
+package de.bigdata.osm;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Zeilen des Ingests ueber den StreamDataStore mit generischer Netty-Quelle bis zu den Clients und dem HotTier
+ */
+public class LiveSourceTest extends TestCase {
+
+	private static final GeometryFactory GEOMETRY = JTSFactoryFinder.getGeometryFactory();
+
+	// Wartezeit, bis die Quelle lauscht bzw. ein Event durch den StreamDataStore gelaufen ist
+	private static final long WAIT_MILLIS = 30000;
+
+	private SimpleFeatureType featureType;
+	private Date day;
+	private String address;
+	private LiveEvents live;
+
+	@Override
+	protected void setUp() throws Exception {
+		featureType = GdeltFeature.buildGdeltFeatureType("event");
+		day = PageCursor.startOfDay(new Date());
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			address = "localhost:" + socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+		live = new LiveEvents(10, 60000);
+		live.connect(LiveSource.config("event_live", LiveSource.host(address), LiveSource.port(address)), 60);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		live.close();
+	}
+
+	public void testFormat() throws Exception {
+		SimpleFeature feature = feature(7, 52.5, 13.4, "BARACK\tOBAMA", null);
+		assertEquals("7\t" + day.getTime() + "\t52.5\t13.4\t010\t010\t01\tBARACK OBAMA\t\tBERLIN\t",
+				LiveSource.format(feature));
+		feature.setAttribute(GdeltFeature.Attributes.SQLDATE.getName(), null);
+		assertNull(LiveSource.format(feature));
+	}
+
+	public void testStreamDeliversSentEvents() throws Exception {
+		live.register("client", EventFilter.matcher(request("OBAMA"), true));
+		LiveEvents.Subscription subscription = live.subscribe("client");
+		HotTier hot = new HotTier(1, 60000);
+		hot.startLoad();
+		hot.load(new EmptyIterator(), System.currentTimeMillis());
+		live.setHotTier(hot);
+
+		LiveSource source = connect();
+		try {
+			source.send(Arrays.asList(
+					// ausserhalb der BBox, erreicht nur den HotTier
+					feature(1, 40.7, -74.0, "BARACK OBAMA", null),
+					feature(2, 52.5, 13.4, "BARACK OBAMA", "http://example.org/a?b=c")));
+		} finally {
+			source.close();
+		}
+
+		Event event = subscription.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		assertNotNull(event);
+		assertEquals(52.5, event.getLat(), 0);
+		assertEquals(13.4, event.getLon(), 0);
+		assertEquals(day, event.getSqlDate());
+		assertEquals("010", event.getEventCode());
+		assertEquals("BARACK OBAMA", event.getActor1Name());
+		assertNull(event.getActor2Name());
+		assertEquals("BERLIN", event.getGeoName());
+		assertEquals("http://example.org/a?b=c", event.getSourceURL());
+		assertNull(subscription.poll(0, TimeUnit.MILLISECONDS));
+
+		Events world = request();
+		world.getBounds().setLeft(-180);
+		world.getBounds().setBottom(-90);
+		world.getBounds().setRight(180);
+		world.getBounds().setTop(90);
+		assertEquals(2, hot.query(world, false, 100).size());
+	}
+
+	// Die Quelle lauscht erst, wenn die Camel-Route gestartet ist
+	private LiveSource connect() throws Exception {
+		long until = System.currentTimeMillis() + WAIT_MILLIS;
+		while (true) {
+			try {
+				return new LiveSource(address);
+			} catch (IOException e) {
+				if (System.currentTimeMillis() > until) {
+					throw e;
+				}
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	private Events request(String... keywords) {
+		Bounds bounds = new Bounds();
+		bounds.setTop(55);
+		bounds.setBottom(47);
+		bounds.setLeft(5);
+		bounds.setRight(15);
+		Events events = new Events();
+		events.setBounds(bounds);
+		events.setDateFrom(day);
+		events.setDateTo(day);
+		events.setEventIDs(Arrays.<String>asList());
+		events.setKeywords(Arrays.asList(keywords));
+		return events;
+	}
+
+	private SimpleFeature feature(int id, double lat, double lon, String actor1, String sourceUrl) {
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+		builder.set(GdeltFeature.Attributes.GLOBALEVENTID.getName(), Integer.valueOf(id));
+		builder.set(GdeltFeature.Attributes.SQLDATE.getName(), day);
+		builder.set(GdeltFeature.Attributes.EventCode.getName(), "010");
+		builder.set(GdeltFeature.Attributes.EventBaseCode.getName(), "010");
+		builder.set(GdeltFeature.Attributes.EventRootCode.getName(), "01");
+		builder.set(GdeltFeature.Attributes.Actor1Name.getName(), actor1);
+		builder.set(GdeltFeature.Attributes.ActionGeo_FullName.getName(), "BERLIN");
+		builder.set(GdeltFeature.Attributes.SOURCEURL.getName(), sourceUrl);
+		builder.set(GdeltFeature.Attributes.geom.getName(), GEOMETRY.createPoint(new Coordinate(lon, lat)));
+		return builder.buildFeature(String.valueOf(id));
+	}
+
+	/**
+	 * Leeres Ergebnis fuer das erste Laden des HotTiers
+	 */
+	private static class EmptyIterator implements SimpleFeatureIterator {
+
+		@Override
+		public boolean hasNext() {
+			return false;
+		}
+
+		@Override
+		public SimpleFeature next() {
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package de.bigdata.osm;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.ws.rs.WebApplicationException;
+import javax.xml.bind.DatatypeConverter;
+
+import junit.framework.TestCase;
+
+/**
+ * Kodierung des Cursors fuer das seitenweise Laden
+ */
+public class PageCursorTest extends TestCase {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public void testEncodeDecode() {
+		Events events = request();
+		Date next = PageCursor.nextDay(events.getDateFrom());
+		events.setCursor(PageCursor.encode(events, next));
+
+		assertEquals(next, PageCursor.decode(events));
+		assertNull(PageCursor.decodeSampling(events));
+	}
+
+	public void testEncodeDecodeSampling() {
+		Events events = request();
+		Date next = PageCursor.nextDay(events.getDateFrom());
+		events.setCursor(PageCursor.encode(events, next, Sampling.withRate(0.125, 123456789012L)));
+
+		assertEquals(next, PageCursor.decode(events));
+		Sampling sampling = PageCursor.decodeSampling(events);
+		assertEquals(0.125, sampling.getRate());
+		assertEquals(123456789012L, sampling.getTotal());
+	}
+
+	public void testRejectsCursorOfOtherFilter() {
+		Events events = request();
+		String cursor = PageCursor.encode(events, PageCursor.nextDay(events.getDateFrom()));
+
+		Events other = request();
+		other.setKeywords(Arrays.asList("OBAMA"));
+		other.setCursor(cursor);
+		assertBadRequest(other);
+	}
+
+	public void testRejectsInvalidCursor() {
+		Events events = request();
+		events.setCursor(DatatypeConverter.printBase64Binary("unsinn".getBytes(UTF8)));
+		assertBadRequest(events);
+		// passender Fingerabdruck, aber der Tag ist keine Zahl
+		String valid = new String(DatatypeConverter.parseBase64Binary(
+				PageCursor.encode(events, events.getDateTo())), UTF8);
+		String invalid = "x" + valid.substring(valid.indexOf(':'));
+		events.setCursor(DatatypeConverter.printBase64Binary(invalid.getBytes(UTF8)));
+		assertBadRequest(events);
+	}
+
+	public void testStartOfDayAndNextDay() {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2016, Calendar.MARCH, 1, 17, 45, 12);
+		Date start = PageCursor.startOfDay(calendar.getTime());
+
+		calendar.clear();
+		calendar.set(2016, Calendar.MARCH, 1);
+		assertEquals(calendar.getTime(), start);
+		calendar.set(2016, Calendar.MARCH, 2);
+		assertEquals(calendar.getTime(), PageCursor.nextDay(start));
+	}
+
+	private static void assertBadRequest(Events events) {
+		try {
+			PageCursor.decode(events);
+			fail("Cursor wurde nicht abgelehnt");
+		} catch (WebApplicationException e) {
+			assertEquals(400, e.getResponse().getStatus());
+		}
+	}
+
+	private static Events request() {
+		Bounds bounds = new Bounds();
+		bounds.setLeft(5);
+		bounds.setBottom(47);
+		bounds.setRight(15);
+		bounds.setTop(55);
+		Events events = new Events();
+		events.setBounds(bounds);
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2016, Calendar.MARCH, 1);
+		events.setDateFrom(calendar.getTime());
+		calendar.set(2016, Calendar.MARCH, 10);
+		events.setDateTo(calendar.getTime());
+		return events;
+	}
+}
@@ -0,0 +1,116 @@
+package de.bigdata.osm;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+/**
+ * Normalisierung der Anfragen und Verdraengung im Ergebniscache
+ */
+public class QueryCacheTest extends TestCase {
+
+	public void testNormalizeSnapsBoundsToGrid() {
+		Events events = request(13.3, 52.4, 13.6, 52.6);
+		Events normalized = QueryCache.normalize(events);
+
+		Bounds snapped = normalized.getBounds();
+		assertTrue(snapped.getLeft() <= 13.3 && snapped.getRight() >= 13.6);
+		assertTrue(snapped.getBottom() <= 52.4 && snapped.getTop() >= 52.6);
+		// leicht verschobene Ansicht faellt auf denselben Schluessel
+		Events shifted = request(13.301, 52.401, 13.601, 52.601);
+		assertEquals(QueryCache.key(normalized), QueryCache.key(QueryCache.normalize(shifted)));
+	}
+
+	public void testNormalizeClampsToWorld() {
+		Bounds world = QueryCache.normalize(request(-179.9, -89.9, 179.9, 89.9)).getBounds();
+		assertEquals(-180.0, world.getLeft());
+		assertEquals(-90.0, world.getBottom());
+		assertEquals(180.0, world.getRight());
+		assertEquals(90.0, world.getTop());
+	}
+
+	public void testNormalizeSortsFiltersAndDropsTime() {
+		Events events = request(0, 0, 10, 10);
+		events.setEventIDs(Arrays.asList("19", "010"));
+		events.setKeywords(Arrays.asList("OBAMA", "MERKEL"));
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(events.getDateFrom());
+		calendar.set(Calendar.HOUR_OF_DAY, 15);
+		events.setDateFrom(calendar.getTime());
+
+		Events normalized = QueryCache.normalize(events);
+		assertEquals(Arrays.asList("010", "19"), normalized.getEventIDs());
+		assertEquals(Arrays.asList("MERKEL", "OBAMA"), normalized.getKeywords());
+		assertEquals(PageCursor.startOfDay(events.getDateFrom()), normalized.getDateFrom());
+		// die Anfrage selbst bleibt unveraendert
+		assertEquals(Arrays.asList("19", "010"), events.getEventIDs());
+
+		Events reordered = request(0, 0, 10, 10);
+		reordered.setEventIDs(Arrays.asList("010", "19"));
+		reordered.setKeywords(Arrays.asList("MERKEL", "OBAMA"));
+		assertEquals(QueryCache.key(normalized), QueryCache.key(QueryCache.normalize(reordered)));
+	}
+
+	public void testEvictsLeastRecentlyUsed() {
+		QueryCache cache = new QueryCache(800, 60000);
+		for (int i = 0; i < 8; i++) {
+			cache.put("key" + i, Collections.<Event>emptyList(), 100);
+		}
+		assertNotNull(cache.get("key0"));
+
+		cache.put("key8", Collections.<Event>emptyList(), 100);
+
+		assertNotNull(cache.get("key0"));
+		assertNull(cache.get("key1"));
+		assertNotNull(cache.get("key8"));
+		assertEquals(1, cache.getStats().getEvictions());
+		assertEquals(800, cache.getStats().getBytes());
+	}
+
+	public void testReplacesEntryWithSameKey() {
+		QueryCache cache = new QueryCache(800, 60000);
+		cache.put("key", Collections.<Event>emptyList(), 100);
+		cache.put("key", Collections.singletonList(new Event(1, 2)), 50);
+
+		assertEquals(1, cache.get("key").size());
+		assertEquals(50, cache.getStats().getBytes());
+	}
+
+	public void testSkipsLargeEntries() {
+		QueryCache cache = new QueryCache(800, 60000);
+		cache.put("key", Collections.<Event>emptyList(), cache.getMaxEntryBytes() + 1);
+		assertNull(cache.get("key"));
+		assertEquals(0, cache.getStats().getEntries());
+	}
+
+	public void testExpiredEntriesAreDropped() {
+		QueryCache cache = new QueryCache(800, -1);
+		cache.put("key", Collections.<Event>emptyList(), 100);
+		assertNull(cache.get("key"));
+		assertEquals(0, cache.getStats().getBytes());
+	}
+
+	public void testDisabledCache() {
+		QueryCache cache = new QueryCache(0, 60000);
+		cache.put("key", Collections.<Event>emptyList(), 1);
+		assertFalse(cache.isEnabled());
+		assertNull(cache.get("key"));
+	}
+
+	private static Events request(double left, double bottom, double right, double top) {
+		Bounds bounds = new Bounds();
+		bounds.setLeft(left);
+		bounds.setBottom(bottom);
+		bounds.setRight(right);
+		bounds.setTop(top);
+		Events events = new Events();
+		events.setBounds(bounds);
+		Date day = PageCursor.startOfDay(new Date());
+		events.setDateFrom(day);
+		events.setDateTo(day);
+		return events;
+	}
+}
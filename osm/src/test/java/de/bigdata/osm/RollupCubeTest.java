@@ -0,0 +1,70 @@
+package de.bigdata.osm;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import junit.framework.TestCase;
+
+/**
+ * Geohash-Zellen und Abfragen des Tageswuerfels
+ */
+public class RollupCubeTest extends TestCase {
+
+	public void testGeohash() {
+		assertEquals("u4pr", RollupCube.geohash(57.64911, 10.40744, 4));
+		assertEquals("u4pruydqqvj", RollupCube.geohash(57.64911, 10.40744, 11));
+		assertEquals("s000", RollupCube.geohash(0, 0, 4));
+		assertEquals("zzzz", RollupCube.geohash(89.999, 179.999, 4));
+		assertEquals("0000", RollupCube.geohash(-90, -180, 4));
+	}
+
+	public void testCenterLiesInCell() {
+		double[][] points = { { 57.64911, 10.40744 }, { -33.86, 151.21 }, { 40.71, -74.01 }, { 0, 0 } };
+		for (double[] point : points) {
+			String hash = RollupCube.geohash(point[0], point[1], RollupCube.GEOHASH_PRECISION);
+			double[] center = RollupCube.center(hash);
+			assertEquals(point[0], center[0], RollupCube.CELL_HEIGHT / 2);
+			assertEquals(point[1], center[1], RollupCube.CELL_WIDTH / 2);
+			assertEquals(hash, RollupCube.geohash(center[0], center[1], RollupCube.GEOHASH_PRECISION));
+		}
+	}
+
+	public void testCellSize() {
+		// 4 Zeichen = 10 Bit Laenge und 10 Bit Breite
+		assertEquals(360.0 / 1024, RollupCube.CELL_WIDTH);
+		assertEquals(180.0 / 1024, RollupCube.CELL_HEIGHT);
+	}
+
+	public void testCanAnswer() {
+		Events events = new Events();
+		assertTrue(RollupCube.canAnswer(events));
+		events.setEventIDs(Arrays.asList("19", "01"));
+		assertTrue(RollupCube.canAnswer(events));
+		events.setEventIDs(Arrays.asList("19", "010"));
+		assertFalse(RollupCube.canAnswer(events));
+		events.setEventIDs(Arrays.asList("19"));
+		events.setKeywords(Arrays.asList("OBAMA"));
+		assertFalse(RollupCube.canAnswer(events));
+	}
+
+	public void testCreateQuery() {
+		Bounds bounds = new Bounds();
+		bounds.setLeft(5);
+		bounds.setBottom(47);
+		bounds.setRight(15);
+		bounds.setTop(55);
+		Events events = new Events();
+		events.setBounds(bounds);
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2016, Calendar.MARCH, 1);
+		events.setDateFrom(calendar.getTime());
+		events.setDateTo(calendar.getTime());
+		events.setEventIDs(Arrays.asList("19"));
+
+		String[] properties = RollupCube.createQuery("event_daily", events).getPropertyNames();
+		assertEquals(Arrays.asList(RollupCube.GEOM, RollupCube.COUNT, RollupCube.GOLDSTEIN_SUM, RollupCube.TONE_SUM),
+				Arrays.asList(properties));
+		assertEquals("event_daily", RollupCube.createQuery("event_daily", events).getTypeName());
+	}
+}
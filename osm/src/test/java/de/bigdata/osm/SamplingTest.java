@@ -0,0 +1,58 @@
+package de.bigdata.osm;
+
+import junit.framework.TestCase;
+
+import org.opengis.filter.Filter;
+
+/**
+ * Teiler und Gesamtzahl der Stichprobe
+ */
+public class SamplingTest extends TestCase {
+
+	public void testModulusIsPowerOfTwoBelowRate() {
+		assertEquals(1, Sampling.modulus(1));
+		assertEquals(2, Sampling.modulus(0.5));
+		assertEquals(4, Sampling.modulus(0.3));
+		assertEquals(4, Sampling.modulus(0.25));
+		assertEquals(1024, Sampling.modulus(0.001));
+	}
+
+	public void testModulusLimits() {
+		assertEquals(1, Sampling.modulus(2));
+		assertEquals(1, Sampling.modulus(Double.NaN));
+		assertEquals(1 << 20, Sampling.modulus(0));
+		assertEquals(1 << 20, Sampling.modulus(-1));
+		assertEquals(1 << 20, Sampling.modulus(1e-9));
+	}
+
+	public void testWithRateKeepsTotal() {
+		Sampling sampling = Sampling.withRate(0.3, 5000);
+		assertEquals(0.25, sampling.getRate());
+		assertEquals(5000, sampling.getTotal());
+	}
+
+	public void testRateForSampleSize() {
+		// 1000 von 100000 Events: 1/128 ist die groesste Zweierpotenz, die hoechstens 1% liefert
+		Sampling sampling = Sampling.forSize(1000, 100000);
+		assertEquals(1.0 / 128, sampling.getRate());
+		assertEquals(100000, sampling.getTotal());
+		assertTrue(sampling.getRate() * sampling.getTotal() <= 1000);
+		assertTrue(2 * sampling.getRate() * sampling.getTotal() > 1000);
+	}
+
+	public void testRateForSampleSizeAboveTotal() {
+		Sampling sampling = Sampling.forSize(1000, 800);
+		assertEquals(1.0, sampling.getRate());
+		assertEquals(800, sampling.getTotal());
+		// keine Events, die Stichprobe ist die ganze (leere) Menge
+		sampling = Sampling.forSize(1000, 0);
+		assertEquals(1.0, sampling.getRate());
+		assertEquals(0, sampling.getTotal());
+	}
+
+	public void testApplyWithoutSampleKeepsFilter() {
+		Filter filter = Filter.INCLUDE;
+		assertSame(filter, Sampling.forSize(1000, 10).apply(filter));
+		assertNotSame(filter, Sampling.forSize(10, 1000).apply(filter));
+	}
+}
@@ -0,0 +1,104 @@
+package de.bigdata.osm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.DatatypeConverter;
+
+import junit.framework.TestCase;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.geomesa.accumulo.iterators.TemporalDensityIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Dekodieren der Zeitreihen des TemporalDensityIterators
+ */
+public class TemporalHistogramTest extends TestCase {
+
+	private static final long DAY = TemporalHistogram.DAY_MILLIS;
+
+	private SimpleFeatureType featureType;
+	private Date from;
+	private Date to;
+
+	@Override
+	protected void setUp() throws Exception {
+		featureType = DataUtilities.createType("density", TemporalDensityIterator.TIME_SERIES() + ":String");
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		// ohne Umstellung der Sommerzeit, damit jeder Tag 24 Stunden hat
+		calendar.set(2016, Calendar.JUNE, 1);
+		from = calendar.getTime();
+		calendar.set(2016, Calendar.JUNE, 3);
+		to = calendar.getTime();
+	}
+
+	public void testAggregateSumsTabletServers() throws IOException {
+		long start = from.getTime();
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		features.add(feature(new long[] { start, 5, start + DAY, 7 }));
+		features.add(feature(new long[] { start + 2 * DAY + 1000, 3, start, 1 }));
+
+		Histogram histogram = new TemporalHistogram(from, to, DAY).aggregate(
+				DataUtilities.collection(features).features());
+
+		assertEquals(start, histogram.getStart());
+		assertEquals(DAY, histogram.getBucketMillis());
+		assertEquals(3, histogram.getCounts().length);
+		assertEquals(6, histogram.getCounts()[0]);
+		assertEquals(7, histogram.getCounts()[1]);
+		assertEquals(3, histogram.getCounts()[2]);
+		assertEquals(16, histogram.getTotal());
+	}
+
+	public void testIgnoresValuesOutsideTheRange() throws IOException {
+		long start = from.getTime();
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		features.add(feature(new long[] { start - 1, 4, start + 3 * DAY, 2, start, 1 }));
+
+		Histogram histogram = new TemporalHistogram(from, to, DAY).aggregate(
+				DataUtilities.collection(features).features());
+
+		assertEquals(1, histogram.getTotal());
+		assertEquals(1, histogram.getCounts()[0]);
+	}
+
+	public void testHourBuckets() throws IOException {
+		long hour = TemporalHistogram.HOUR_MILLIS;
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		features.add(feature(new long[] { from.getTime() + 25 * hour + 59000, 2 }));
+
+		Histogram histogram = new TemporalHistogram(from, from, hour).aggregate(
+				DataUtilities.collection(features).features());
+
+		assertEquals(24, histogram.getCounts().length);
+		assertEquals(0, histogram.getTotal());
+
+		histogram = new TemporalHistogram(from, to, hour).aggregate(DataUtilities.collection(features).features());
+		assertEquals(72, histogram.getCounts().length);
+		assertEquals(2, histogram.getCounts()[25]);
+	}
+
+	// Paare aus Beginn und Anzahl, Base64 URL-safe ohne Padding wie vom Iterator geliefert
+	private SimpleFeature feature(long[] pairs) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (long value : pairs) {
+			out.writeLong(value);
+		}
+		out.close();
+		String encoded = DatatypeConverter.printBase64Binary(bytes.toByteArray())
+				.replace('+', '-').replace('/', '_').replace("=", "");
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+		builder.set(TemporalDensityIterator.TIME_SERIES(), encoded);
+		return builder.buildFeature(null);
+	}
+}